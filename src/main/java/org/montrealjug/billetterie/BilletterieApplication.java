@@ -6,10 +6,12 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableConfigurationProperties(BilletterieProperties.class)
 @EnableJpaRepositories(basePackages = "org.montrealjug.billetterie.repository")
+@EnableScheduling
 public class BilletterieApplication {
 
     public static void main(String[] args) {
@@ -1,10 +1,30 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.config;
 
+import java.time.Duration;
+import java.util.Map;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 
 /**
  * Configuration properties for the billetterie application.
+ * `baseUrl` is only needed to build links when there is no request to get it from (scheduled jobs).
+ * `participantsChangesEmailDelay` is the window in which the participants changes of a booker are coalesced
+ * into one email.
+ * `knownBookersFalsePositiveRate` is the rate of lookups of unknown bookers still querying the DB.
  */
 @ConfigurationProperties(prefix = "app")
-public record BilletterieProperties(String rsaKey) {}
+public record BilletterieProperties(
+    String rsaKey,
+    String baseUrl,
+    @DefaultValue("1m") Duration participantsChangesEmailDelay,
+    @DefaultValue("0.01") double knownBookersFalsePositiveRate,
+    @DefaultValue CheckInProperties checkIn
+) {
+    /**
+     * HMAC keys of the check-in tokens, Base64 encoded, by id.
+     * Tokens are signed with the `keyId` key, and verified with the key they name: to rotate, add a key and switch
+     * `keyId` to it, then remove the old key once the events of its tokens are over.
+     */
+    public record CheckInProperties(String keyId, @DefaultValue Map<String, String> keys) {}
+}
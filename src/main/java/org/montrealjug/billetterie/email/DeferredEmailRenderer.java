@@ -0,0 +1,21 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.email;
+
+import java.util.Optional;
+import org.montrealjug.billetterie.email.EmailModel.Email;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+
+/**
+ * Renders the emails of a type queued with `EmailService.sendLater`, when the outbox sends them: they show the state
+ * at that time, not at the time they were queued.
+ */
+public interface DeferredEmailRenderer {
+    EmailType type();
+
+    /**
+     * Called by the outbox workers, outside any transaction.
+     *
+     * @return the email of this key, or empty if there is nothing to send anymore
+     */
+    Optional<Email> render(String coalescingKey);
+}
@@ -2,15 +2,27 @@
 package org.montrealjug.billetterie.email;
 
 import gg.jte.TemplateEngine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.mail.internet.InternetAddress;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import org.montrealjug.billetterie.email.EmailModel.Priority;
+import org.montrealjug.billetterie.entity.EmailOutboxMessage;
+import org.montrealjug.billetterie.repository.EmailOutboxMessageRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -20,12 +32,12 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.support.ResourceBundleMessageSource;
 import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.validation.annotation.Validated;
 
 @Configuration(proxyBeanMethods = false)
 @EnableConfigurationProperties(EmailConfiguration.EmailProperties.class)
-@EnableAsync
 class EmailConfiguration {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EmailConfiguration.class);
@@ -36,7 +48,9 @@ class EmailConfiguration {
         EmailProperties emailProperties
     ) {
         final EmailSender emailSender;
-        if (javaMailSender != null && emailProperties.mode != EmailMode.NO_OP) {
+        if (javaMailSender instanceof JavaMailSenderImpl impl && emailProperties.mode != EmailMode.NO_OP) {
+            emailSender = new PooledSmtpEmailSender(impl, emailProperties, emailProperties.smtpPool());
+        } else if (javaMailSender != null && emailProperties.mode != EmailMode.NO_OP) {
             emailSender = new SmtpEmailSender(javaMailSender, emailProperties);
         } else {
             LOGGER.warn("no-op EmailSender configured, emails will be sent to the console as logs");
@@ -46,13 +60,81 @@ class EmailConfiguration {
     }
 
     @Bean
-    EmailService emailService(
+    EmailRateLimiter emailRateLimiter(EmailProperties emailProperties, EmailOutboxMessageRepository repository) {
+        var rateLimit = emailProperties.rateLimit();
+        var clock = Clock.systemUTC();
+        // the quota is the relay's, it is not reset by a restart
+        var sentInLastHour = repository.countBySentTimeAfter(clock.instant().minus(Duration.ofHours(1)));
+        return new EmailRateLimiter(
+            rateLimit.burst(),
+            rateLimit.perSecond(),
+            rateLimit.perHour(),
+            rateLimit.transactionalReserve(),
+            sentInLastHour,
+            clock
+        );
+    }
+
+    @Bean
+    EmailWriter emailWriter(TemplateEngine templateEngine, ResourceBundleMessageSource messageSource) {
+        return new EmailWriter(templateEngine, messageSource);
+    }
+
+    @Bean
+    EmailOutbox emailOutbox(
         EmailSender emailSender,
-        TemplateEngine templateEngine,
-        ResourceBundleMessageSource messageSource
+        EmailWriter emailWriter,
+        // the renderers use `EmailService`, they are only looked up when sending
+        ObjectProvider<DeferredEmailRenderer> deferredEmailRenderers,
+        EmailRateLimiter emailRateLimiter,
+        EmailOutboxMessageRepository emailOutboxMessageRepository,
+        TransactionTemplate transactionTemplate,
+        EmailProperties emailProperties,
+        ObjectProvider<MeterRegistry> meterRegistry
     ) {
-        var emailWriter = new EmailWriter(templateEngine, messageSource);
-        return new EmailService(emailSender, emailWriter);
+        return new EmailOutbox(
+            emailSender,
+            emailWriter,
+            deferredEmailRenderers,
+            emailRateLimiter,
+            emailOutboxMessageRepository,
+            transactionTemplate,
+            emailProperties.outbox(),
+            meterRegistry.getIfAvailable(SimpleMeterRegistry::new), // useful for tests
+            Clock.systemUTC()
+        );
+    }
+
+    @Bean
+    EmailService emailService(EmailOutbox emailOutbox, EmailWriter emailWriter) {
+        return new EmailService(emailWriter, emailOutbox);
+    }
+
+    @Bean
+    MeterBinder emailMetrics(EmailRateLimiter emailRateLimiter, EmailOutboxMessageRepository repository) {
+        return registry -> {
+            Gauge
+                .builder("billetterie.mail.rate.limiter.tokens", emailRateLimiter, EmailRateLimiter::tokensPerSecond)
+                .description("Tokens currently available to send emails")
+                .tag("window", "second")
+                .register(registry);
+            Gauge
+                .builder("billetterie.mail.rate.limiter.tokens", emailRateLimiter, EmailRateLimiter::tokensPerHour)
+                .description("Tokens currently available to send emails")
+                .tag("window", "hour")
+                .register(registry);
+            for (var priority : Priority.values()) {
+                Gauge
+                    .builder(
+                        "billetterie.mail.outbox.pending",
+                        repository,
+                        r -> r.countByStatusAndPriority(EmailOutboxMessage.Status.PENDING, priority)
+                    )
+                    .description("Emails waiting in the outbox")
+                    .tag("priority", priority.name())
+                    .register(registry);
+            }
+        };
     }
 
     @Validated
@@ -60,9 +142,44 @@ class EmailConfiguration {
     record EmailProperties(
         @DefaultValue("SMTP") EmailMode mode,
         @Valid @NotNull @NestedConfigurationProperty EmailAddress from,
-        @Valid @NotNull @NestedConfigurationProperty EmailAddress replyTo
+        @Valid @NotNull @NestedConfigurationProperty EmailAddress replyTo,
+        @Valid @DefaultValue @NestedConfigurationProperty OutboxProperties outbox,
+        @Valid @DefaultValue @NestedConfigurationProperty SmtpPoolProperties smtpPool,
+        @Valid @DefaultValue @NestedConfigurationProperty RateLimitProperties rateLimit
+    ) {}
+
+    record OutboxProperties(
+        @DefaultValue("2") @Min(0) int workers, // `0` to only queue emails, e.g. in tests
+        @DefaultValue("1") @Min(0) int transactionalWorkers, // part of `workers` not sending bulk emails
+        @DefaultValue("10") @Min(1) int batchSize,
+        @DefaultValue("1s") Duration pollInterval,
+        @DefaultValue("8") @Min(1) int maxAttempts,
+        @DefaultValue("30s") Duration initialBackoff,
+        @DefaultValue("1h") Duration maxBackoff,
+        @DefaultValue("5m") Duration lease,
+        @DefaultValue("30d") Duration retention,
+        @DefaultValue("500") @Min(1) int maxPendingBulk // campaigns wait above it
+    ) {}
+
+    record SmtpPoolProperties(
+        @DefaultValue("2") @Min(1) int size, // at least `outbox.workers`, as each worker uses a connection
+        @DefaultValue("100") @Min(1) int maxMessagesPerConnection
     ) {}
 
+    record RateLimitProperties(
+        @DefaultValue("10") @Min(1) int burst,
+        @DefaultValue("5") @Min(1) int perSecond,
+        @DefaultValue("1000") @Min(1) int perHour,
+        // part of `perHour` kept for the transactional emails, i.e. registration confirmations
+        @DefaultValue("200") @Min(0) int transactionalReserve
+    ) {
+        // otherwise the bulk emails, i.e. reminder campaigns, are never sent
+        @AssertTrue(message = "must be less than perHour")
+        boolean isTransactionalReserve() {
+            return transactionalReserve < perHour;
+        }
+    }
+
     enum EmailMode {
         NO_OP,
         SMTP,
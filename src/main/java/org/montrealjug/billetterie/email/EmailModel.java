@@ -11,6 +11,7 @@ import java.util.*;
 import org.montrealjug.billetterie.entity.ActivityParticipant;
 import org.montrealjug.billetterie.entity.Booker;
 import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.entity.LotteryEntry;
 import org.montrealjug.billetterie.ui.PresentationActivityParticipant;
 
 public class EmailModel {
@@ -36,13 +37,30 @@ public class EmailModel {
         // model class
     }
 
+    // transactional emails answer an action of a booker, and go before bulk ones when sending is throttled
+    public enum Priority {
+        TRANSACTIONAL,
+        BULK,
+    }
+
     public enum EmailType {
-        AFTER_BOOKING,
-        AFTER_REGISTRATION,
-        AFTER_PARTICIPANTS_CHANGES,
-        PARTICIPANT_UPGRADED,
-        RETURNING_BOOKER,
-        LAST_REMINDER;
+        AFTER_BOOKING(Priority.TRANSACTIONAL),
+        AFTER_REGISTRATION(Priority.TRANSACTIONAL),
+        AFTER_PARTICIPANTS_CHANGES(Priority.TRANSACTIONAL),
+        PARTICIPANT_UPGRADED(Priority.TRANSACTIONAL),
+        RETURNING_BOOKER(Priority.TRANSACTIONAL),
+        LOTTERY_RESULT(Priority.TRANSACTIONAL),
+        LAST_REMINDER(Priority.BULK);
+
+        private final Priority priority;
+
+        EmailType(Priority priority) {
+            this.priority = priority;
+        }
+
+        public Priority priority() {
+            return priority;
+        }
 
         public String subjectKey() {
             return this.name().toLowerCase();
@@ -119,6 +137,17 @@ public class EmailModel {
             return new ReturningBookingEmail(booker, baseUrl);
         }
 
+        static Email lotteryResult(
+            Booker booker,
+            List<PresentationActivityParticipant> participants,
+            List<LotteryEntry> lostEntries,
+            Event event,
+            String baseUrl,
+            Optional<byte[]> qrCode
+        ) {
+            return new LotteryResultEmail(booker, participants, lostEntries, event, baseUrl, qrCode);
+        }
+
         static Email lastReminder(
             Booker booker,
             List<PresentationActivityParticipant> participants,
@@ -244,6 +273,31 @@ public class EmailModel {
         }
     }
 
+    // no QR code for a booker without any seat or waiting list spot
+    public record LotteryResultEmail(
+        Booker booker,
+        List<PresentationActivityParticipant> participants,
+        List<LotteryEntry> lostEntries,
+        Event event,
+        String baseUrl,
+        Optional<byte[]> qrCode
+    )
+        implements Email {
+        @Override
+        public EmailType type() {
+            return EmailType.LOTTERY_RESULT;
+        }
+
+        @Override
+        public InternetAddress to() {
+            return Email.fromBooker(booker);
+        }
+
+        public String registrationLink() {
+            return baseUrl + "/bookings/" + booker.getEmailSignature();
+        }
+    }
+
     public record LastReminderEmail(
         Booker booker,
         List<PresentationActivityParticipant> participants,
@@ -0,0 +1,395 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.email;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.internet.InternetAddress;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.montrealjug.billetterie.email.EmailConfiguration.OutboxProperties;
+import org.montrealjug.billetterie.email.EmailModel.Email;
+import org.montrealjug.billetterie.email.EmailModel.EmailToSend;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailModel.Priority;
+import org.montrealjug.billetterie.entity.EmailOutboxMessage;
+import org.montrealjug.billetterie.entity.EmailOutboxMessage.Status;
+import org.montrealjug.billetterie.repository.EmailOutboxMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Durable queue of the emails to send.
+ * <p>
+ * Rendered emails are stored in the `email_outbox_message` table, in the transaction of the change they notify:
+ * an email is queued if and only if the change is committed, and a restart does not lose it.
+ * <p>
+ * Deferred emails are queued with a coalescing key instead of their content, and rendered from it by the
+ * `DeferredEmailRenderer` of their type at each attempt: the changes queued until a worker claims one are coalesced
+ * into it, and it shows the state at the time it is sent.
+ * <p>
+ * A pool of workers claims the due messages with `FOR UPDATE SKIP LOCKED` and sends them outside any transaction.
+ * A claimed message is leased: if its worker dies before recording the result, it becomes due again.
+ * Failed messages are retried with an exponential backoff, and marked `DEAD` after `maxAttempts`.
+ * <p>
+ * Messages are only claimed when the `EmailRateLimiter` grants tokens for them, `TRANSACTIONAL` ones first.
+ * `transactionalWorkers` of the workers only send `TRANSACTIONAL` messages, so they never wait behind a batch of
+ * `BULK` ones being sent. The time spent by the messages in the outbox is recorded by priority.
+ */
+class EmailOutbox implements SmartLifecycle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmailOutbox.class);
+
+    private final EmailSender emailSender;
+    private final EmailWriter emailWriter;
+    private final ObjectProvider<DeferredEmailRenderer> deferredEmailRenderers;
+    private final EmailRateLimiter rateLimiter;
+    private final EmailOutboxMessageRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxProperties properties;
+    private final Clock clock;
+    private final Map<Priority, Timer> queueWaitTimers = new EnumMap<>(Priority.class);
+    private final Object signal = new Object();
+
+    private volatile boolean running;
+    private volatile Instant lastPurgeTime = Instant.EPOCH;
+    private ExecutorService workers;
+
+    EmailOutbox(
+        EmailSender emailSender,
+        EmailWriter emailWriter,
+        ObjectProvider<DeferredEmailRenderer> deferredEmailRenderers,
+        EmailRateLimiter rateLimiter,
+        EmailOutboxMessageRepository repository,
+        TransactionTemplate transactionTemplate,
+        OutboxProperties properties,
+        MeterRegistry meterRegistry,
+        Clock clock
+    ) {
+        this.emailSender = emailSender;
+        this.emailWriter = emailWriter;
+        this.deferredEmailRenderers = deferredEmailRenderers;
+        this.rateLimiter = rateLimiter;
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = properties;
+        this.clock = clock;
+        for (var priority : Priority.values()) {
+            queueWaitTimers.put(
+                priority,
+                Timer
+                    .builder("billetterie.mail.queue.wait")
+                    .description("Time between the queueing of an email and its sending")
+                    .tag("priority", priority.name())
+                    .register(meterRegistry)
+            );
+        }
+    }
+
+    /**
+     * Stores the email, joining the current transaction if any.
+     * The workers are woken up once the transaction is committed.
+     */
+    void enqueue(EmailToSend emailToSend, EmailType emailType) {
+        var message = new EmailOutboxMessage();
+        message.setEmailType(emailType);
+        message.setPriority(emailType.priority());
+        message.setRecipient(emailToSend.to().toString());
+        message.setSubject(emailToSend.subject());
+        message.setPlainText(emailToSend.plainText());
+        message.setHtml(emailToSend.html());
+        message.setAttachment(emailToSend.attachment().orElse(null));
+        message.setNextAttemptTime(clock.instant());
+        repository.save(message);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        wakeUp();
+                    }
+                }
+            );
+        } else {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Stores the deferred email, joining the current transaction if any, unless one with the same type and key is
+     * pending and not claimed yet. No need to wake up the workers, it is only due at `sendTime`.
+     */
+    void enqueueDeferred(EmailType emailType, String coalescingKey, Instant sendTime) {
+        var inserted = repository.insertDeferredIfAbsent(
+            emailType.name(),
+            emailType.priority().name(),
+            coalescingKey,
+            clock.instant(),
+            sendTime
+        );
+        if (inserted == 0) {
+            LOGGER.debug("{} email {} coalesced into the pending one", emailType, coalescingKey);
+        }
+    }
+
+    /**
+     * Blocks while `maxPendingBulk` `BULK` messages are pending, so a campaign queues its emails at the pace they are
+     * sent (or not sent, while the SMTP server is down), instead of piling them up in the outbox.
+     */
+    void awaitBulkCapacity() throws InterruptedException {
+        while (repository.countByStatusAndPriority(Status.PENDING, Priority.BULK) >= properties.maxPendingBulk()) {
+            if (!running) {
+                // no worker to send them
+                return;
+            }
+            Thread.sleep(properties.pollInterval().toMillis());
+        }
+    }
+
+    int drain() {
+        return drain(List.of(Priority.values()));
+    }
+
+    /**
+     * Claims and sends one batch of due messages of these priorities.
+     *
+     * @return the number of claimed messages
+     */
+    int drain(List<Priority> priorities) {
+        var now = clock.instant();
+        List<EmailOutboxMessage> claimed = transactionTemplate.execute(status -> {
+            var due = new ArrayList<EmailOutboxMessage>();
+            // bulk messages only get the tokens left by the transactional ones
+            for (var priority : priorities) {
+                var tokens = rateLimiter.acquireUpTo(priority, properties.batchSize() - due.size());
+                if (tokens > 0) {
+                    var dueForPriority = repository.findDueForUpdate(priority, now, tokens);
+                    rateLimiter.release(tokens - dueForPriority.size());
+                    due.addAll(dueForPriority);
+                }
+            }
+            for (var message : due) {
+                message.setAttempts(message.getAttempts() + 1);
+                message.setNextAttemptTime(now.plus(properties.lease()));
+            }
+            return due;
+        });
+        if (claimed == null || claimed.isEmpty()) {
+            return 0;
+        }
+
+        var messages = new ArrayList<EmailOutboxMessage>();
+        var emailsToSend = new ArrayList<EmailToSend>();
+        var nothingToSendIds = new ArrayList<Long>();
+        for (var message : claimed) {
+            try {
+                var emailToSend = toEmailToSend(message);
+                if (emailToSend.isEmpty()) {
+                    nothingToSendIds.add(message.getId());
+                    continue;
+                }
+                emailsToSend.add(emailToSend.get());
+                messages.add(message);
+            } catch (Exception e) {
+                // a deferred email failing to render is retried like a failed sending
+                failed(message, e);
+            }
+        }
+        if (!nothingToSendIds.isEmpty()) {
+            LOGGER.info("{} deferred emails had nothing to send anymore", nothingToSendIds.size());
+            transactionTemplate.executeWithoutResult(status -> repository.markSent(nothingToSendIds, clock.instant()));
+        }
+        // the whole batch goes over one SMTP connection, when the sender supports it
+        var failures = emailSender.sendAll(emailsToSend);
+        var sentTime = clock.instant();
+        var sentIds = new ArrayList<Long>();
+        for (int i = 0; i < messages.size(); i++) {
+            var message = messages.get(i);
+            var failure = failures.get(i);
+            if (failure == null) {
+                sentIds.add(message.getId());
+                queueWaitTimers
+                    .get(message.getPriority())
+                    .record(Duration.between(message.getCreationTime(), sentTime));
+            } else {
+                failed(message, failure);
+            }
+        }
+        if (!sentIds.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> repository.markSent(sentIds, sentTime));
+        }
+        return claimed.size();
+    }
+
+    private void failed(EmailOutboxMessage message, Exception e) {
+        var error = e.getClass().getName() + ": " + e.getMessage();
+        if (message.getAttempts() >= properties.maxAttempts()) {
+            LOGGER.error(
+                "giving up on email {} to {} after {} attempts: {}",
+                message.getId(),
+                recipient(message),
+                message.getAttempts(),
+                error
+            );
+            transactionTemplate.executeWithoutResult(status ->
+                repository.markFailed(message.getId(), Status.DEAD, clock.instant(), error)
+            );
+        } else {
+            var nextAttemptTime = clock.instant().plus(backoff(message.getAttempts()));
+            LOGGER.warn(
+                "error while sending email {}, attempt {} failed, retrying at {}: {}",
+                message.getId(),
+                message.getAttempts(),
+                nextAttemptTime,
+                error
+            );
+            transactionTemplate.executeWithoutResult(status ->
+                repository.markFailed(message.getId(), Status.PENDING, nextAttemptTime, error)
+            );
+        }
+    }
+
+    // not known for a deferred email failing to render
+    private static String recipient(EmailOutboxMessage message) {
+        return message.getRecipient() != null
+            ? message.getRecipient()
+            : message.getEmailType() + " " + message.getCoalescingKey();
+    }
+
+    Duration backoff(int attempts) {
+        // capped before shifting, so the multiplication never overflows
+        var exponent = Math.min(attempts - 1, 20);
+        var backoff = properties.initialBackoff().multipliedBy(1L << exponent);
+        return backoff.compareTo(properties.maxBackoff()) > 0 ? properties.maxBackoff() : backoff;
+    }
+
+    private Optional<EmailToSend> toEmailToSend(EmailOutboxMessage message) throws Exception {
+        if (message.getCoalescingKey() != null) {
+            Optional<Email> email = deferredEmailRenderers
+                .orderedStream()
+                .filter(renderer -> renderer.type() == message.getEmailType())
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("no renderer of " + message.getEmailType() + " emails"))
+                .render(message.getCoalescingKey());
+            var emailToSend = email.map(emailWriter::write);
+            // only for the logs, the content of a deferred email is not stored
+            emailToSend.ifPresent(rendered -> message.setRecipient(rendered.to().toString()));
+            return emailToSend;
+        }
+        return Optional.of(
+            new EmailToSend(
+                new InternetAddress(message.getRecipient()),
+                message.getSubject(),
+                message.getPlainText(),
+                message.getHtml(),
+                Optional.ofNullable(message.getAttachment())
+            )
+        );
+    }
+
+    /**
+     * Deletes the messages sent for longer than the retention, at most once per hour.
+     */
+    void purgeSent() {
+        var now = clock.instant();
+        if (lastPurgeTime.plus(Duration.ofHours(1)).isAfter(now)) {
+            return;
+        }
+        lastPurgeTime = now;
+        var before = now.minus(properties.retention());
+        var purged = transactionTemplate.execute(status -> repository.deleteSentBefore(before));
+        if (purged != null && purged > 0) {
+            LOGGER.info("{} sent emails purged from the outbox", purged);
+        }
+    }
+
+    void wakeUp() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private void work(List<Priority> priorities) {
+        while (running) {
+            try {
+                if (drain(priorities) > 0) {
+                    continue;
+                }
+                purgeSent();
+            } catch (Exception e) {
+                LOGGER.error("error while draining the email outbox", e);
+            }
+            try {
+                synchronized (signal) {
+                    if (running) {
+                        signal.wait(properties.pollInterval().toMillis());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running || properties.workers() == 0) {
+            return;
+        }
+        running = true;
+        // at least one worker sends the bulk messages
+        var transactionalWorkers = Math.min(properties.transactionalWorkers(), properties.workers() - 1);
+        workers = Executors.newFixedThreadPool(
+            properties.workers(),
+            Thread.ofPlatform().name("email-outbox-", 0).daemon(true).factory()
+        );
+        for (int i = 0; i < properties.workers(); i++) {
+            var priorities = i < transactionalWorkers ? List.of(Priority.TRANSACTIONAL) : List.of(Priority.values());
+            workers.execute(() -> work(priorities));
+        }
+        LOGGER.info(
+            "email outbox started with {} workers, {} of them only for transactional emails",
+            properties.workers(),
+            transactionalWorkers
+        );
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        wakeUp();
+        workers.shutdown();
+        try {
+            // an email being sent is left to finish, unsent ones will be picked up after the restart
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
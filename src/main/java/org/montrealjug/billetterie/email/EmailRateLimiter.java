@@ -0,0 +1,97 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.email;
+
+import java.time.Clock;
+import java.time.Duration;
+import org.montrealjug.billetterie.email.EmailModel.Priority;
+
+/**
+ * Token buckets shaping the outbound emails to the quotas of the SMTP relay: one bucket per second, one per hour.
+ * <p>
+ * An email takes a token from both buckets. `transactionalReserve` tokens of the hourly bucket can only be taken
+ * by `TRANSACTIONAL` emails, so a reminder campaign never starves the registration confirmations.
+ * <p>
+ * The hourly bucket starts without the tokens of the `sentInLastHour` emails, so a restart does not give a full
+ * quota again.
+ */
+class EmailRateLimiter {
+
+    private final TokenBucket perSecond;
+    private final TokenBucket perHour;
+    private final int transactionalReserve;
+    private final Clock clock;
+
+    EmailRateLimiter(
+        int burst,
+        int perSecond,
+        int perHour,
+        int transactionalReserve,
+        long sentInLastHour,
+        Clock clock
+    ) {
+        this.clock = clock;
+        var now = clock.millis();
+        this.perSecond = new TokenBucket(burst, perSecond / 1000.0, burst, now);
+        this.perHour = new TokenBucket(
+            perHour,
+            perHour / (double) Duration.ofHours(1).toMillis(),
+            Math.max(0, perHour - sentInLastHour),
+            now
+        );
+        this.transactionalReserve = transactionalReserve;
+    }
+
+    /**
+     * Takes up to `wanted` tokens, which must be given back with `release` if not used.
+     *
+     * @return the number of tokens taken, `0` if the quota is exhausted for this priority
+     */
+    synchronized int acquireUpTo(Priority priority, int wanted) {
+        var now = clock.millis();
+        perSecond.refill(now);
+        perHour.refill(now);
+        var reserve = priority == Priority.TRANSACTIONAL ? 0 : transactionalReserve;
+        var available = (int) Math.min(Math.floor(perSecond.tokens), Math.floor(perHour.tokens - reserve));
+        var granted = Math.max(0, Math.min(wanted, available));
+        perSecond.tokens -= granted;
+        perHour.tokens -= granted;
+        return granted;
+    }
+
+    synchronized void release(int tokens) {
+        perSecond.tokens = Math.min(perSecond.capacity, perSecond.tokens + tokens);
+        perHour.tokens = Math.min(perHour.capacity, perHour.tokens + tokens);
+    }
+
+    synchronized double tokensPerSecond() {
+        perSecond.refill(clock.millis());
+        return perSecond.tokens;
+    }
+
+    synchronized double tokensPerHour() {
+        perHour.refill(clock.millis());
+        return perHour.tokens;
+    }
+
+    private static final class TokenBucket {
+
+        private final double capacity;
+        private final double tokensPerMilli;
+        private double tokens;
+        private long lastRefill;
+
+        private TokenBucket(double capacity, double tokensPerMilli, double tokens, long now) {
+            this.capacity = capacity;
+            this.tokensPerMilli = tokensPerMilli;
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        private void refill(long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+                lastRefill = now;
+            }
+        }
+    }
+}
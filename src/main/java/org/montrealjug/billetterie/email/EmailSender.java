@@ -5,6 +5,9 @@ import static org.montrealjug.billetterie.email.EmailModel.EmailToSend;
 
 import jakarta.mail.MessagingException;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,5 +16,22 @@ interface EmailSender {
 
     void send(EmailToSend emailToSend) throws MessagingException, IOException;
 
+    /**
+     * Sends the emails one by one, implementations can reuse resources (i.e. connections) between them.
+     *
+     * @return the failures by index of the failed email in `emailsToSend`, empty if all emails were sent
+     */
+    default Map<Integer, Exception> sendAll(List<EmailToSend> emailsToSend) {
+        var failures = new HashMap<Integer, Exception>();
+        for (int i = 0; i < emailsToSend.size(); i++) {
+            try {
+                send(emailsToSend.get(i));
+            } catch (Exception e) {
+                failures.put(i, e);
+            }
+        }
+        return failures;
+    }
+
     EmailSender NO_OP = emailToSend -> LOGGER.info("sending email: {}", emailToSend);
 }
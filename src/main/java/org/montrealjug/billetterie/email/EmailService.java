@@ -1,35 +1,52 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.email;
 
+import java.time.Instant;
 import java.util.Collection;
 import org.montrealjug.billetterie.email.EmailModel.Email;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.springframework.transaction.annotation.Transactional;
 
 public class EmailService {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(EmailService.class);
-
-    private final EmailSender emailSender;
     private final EmailWriter emailWriter;
+    private final EmailOutbox emailOutbox;
 
-    EmailService(EmailSender emailSender, EmailWriter emailWriter) {
-        this.emailSender = emailSender;
+    EmailService(EmailWriter emailWriter, EmailOutbox emailOutbox) {
         this.emailWriter = emailWriter;
+        this.emailOutbox = emailOutbox;
     }
 
-    @Async
+    /**
+     * Renders the email and queues it in the outbox, in the current transaction if any:
+     * the email is only sent if this transaction is committed.
+     * An exception while rendering is thrown, so it rolls back the transaction instead of losing the email.
+     */
+    @Transactional
     public void sendEmail(Email email) {
-        try {
-            var emailToSend = this.emailWriter.write(email);
-            this.emailSender.send(emailToSend);
-        } catch (Exception e) {
-            LOGGER.error("error while sending email", e);
-        }
+        var emailToSend = this.emailWriter.write(email);
+        this.emailOutbox.enqueue(emailToSend, email.type());
+    }
+
+    /**
+     * Queues an email rendered when it is sent, at `sendTime`, by the `DeferredEmailRenderer` of its type, in the
+     * current transaction if any. The email is coalesced into a pending one with the same type and key, if it is not
+     * being sent yet.
+     */
+    @Transactional
+    public void sendLater(EmailType type, String coalescingKey, Instant sendTime) {
+        this.emailOutbox.enqueueDeferred(type, coalescingKey, sendTime);
+    }
+
+    /**
+     * Waits until the outbox can take more bulk emails: to call before queueing a batch of bulk emails,
+     * outside any transaction.
+     */
+    public void awaitBulkCapacity() throws InterruptedException {
+        this.emailOutbox.awaitBulkCapacity();
     }
 
-    @Async
+    @Transactional
     public void sendEmails(Collection<? extends Email> emails) {
         for (Email context : emails) {
             this.sendEmail(context);
@@ -0,0 +1,195 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.email;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import org.montrealjug.billetterie.email.EmailConfiguration.EmailProperties;
+import org.montrealjug.billetterie.email.EmailConfiguration.SmtpPoolProperties;
+import org.montrealjug.billetterie.email.EmailModel.EmailToSend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+/**
+ * `SmtpEmailSender` keeping `size` SMTP connections open, instead of a connection (with its STARTTLS and AUTH
+ * handshakes) per email.
+ * <p>
+ * A connection is closed and reopened on the next email after an error, after `maxMessagesPerConnection` emails
+ * (servers often limit it), or when the server closed it while idle: a connection unused for `IDLE_CHECK` is checked
+ * with a NOOP at the start of a batch, rather than before each email.
+ */
+class PooledSmtpEmailSender extends SmtpEmailSender implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledSmtpEmailSender.class);
+
+    // well below the 5 minutes a server should wait before closing an idle connection (RFC 5321)
+    static final Duration IDLE_CHECK = Duration.ofSeconds(10);
+
+    private final JavaMailSenderImpl javaMailSender;
+    private final int maxMessagesPerConnection;
+    private final long idleCheckNanos;
+    // the slots hold the connections, an empty slot is connected when used
+    // used as a stack, so the most recently used connections are reused first
+    private final BlockingDeque<Connection> connections;
+
+    private static final class Connection {
+
+        private Transport transport;
+        private int sentMessages;
+        private long lastUseNanos;
+    }
+
+    PooledSmtpEmailSender(
+        JavaMailSenderImpl javaMailSender,
+        EmailProperties emailProperties,
+        SmtpPoolProperties smtpPoolProperties
+    ) {
+        this(javaMailSender, emailProperties, smtpPoolProperties, IDLE_CHECK);
+    }
+
+    PooledSmtpEmailSender(
+        JavaMailSenderImpl javaMailSender,
+        EmailProperties emailProperties,
+        SmtpPoolProperties smtpPoolProperties,
+        Duration idleCheck
+    ) {
+        super(javaMailSender, emailProperties);
+        this.javaMailSender = javaMailSender;
+        this.maxMessagesPerConnection = smtpPoolProperties.maxMessagesPerConnection();
+        this.idleCheckNanos = idleCheck.toNanos();
+        this.connections = new LinkedBlockingDeque<>(smtpPoolProperties.size());
+        for (int i = 0; i < smtpPoolProperties.size(); i++) {
+            this.connections.add(new Connection());
+        }
+    }
+
+    @Override
+    public void send(EmailToSend email) throws MessagingException, IOException {
+        var failure = sendAll(List.of(email)).get(0);
+        if (failure instanceof MessagingException e) {
+            throw e;
+        } else if (failure instanceof IOException e) {
+            throw e;
+        } else if (failure instanceof RuntimeException e) {
+            throw e;
+        } else if (failure != null) {
+            // i.e. interrupted while waiting for a connection: the email was not sent
+            throw new MessagingException("email not sent: " + failure, failure);
+        }
+    }
+
+    /**
+     * Sends all the emails over one connection of the pool.
+     */
+    @Override
+    public Map<Integer, Exception> sendAll(List<EmailToSend> emailsToSend) {
+        var failures = new HashMap<Integer, Exception>();
+        Connection connection;
+        try {
+            connection = connections.takeFirst();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int i = 0; i < emailsToSend.size(); i++) {
+                failures.put(i, e);
+            }
+            return failures;
+        }
+        try {
+            disconnectIfClosedWhileIdle(connection);
+            for (int i = 0; i < emailsToSend.size(); i++) {
+                try {
+                    sendOver(connection, createMimeMessage(emailsToSend.get(i)));
+                } catch (SendFailedException e) {
+                    // rejected by the server (i.e. invalid recipient), the connection is still usable,
+                    // unless the server closed it
+                    failures.put(i, e);
+                    disconnectIfClosed(connection);
+                } catch (Exception e) {
+                    failures.put(i, e);
+                    LOGGER.warn("SMTP connection recycled after an error: {}", e.getMessage());
+                    disconnect(connection);
+                }
+            }
+        } finally {
+            connections.addFirst(connection);
+        }
+        return failures;
+    }
+
+    private void sendOver(Connection connection, MimeMessage message) throws MessagingException {
+        if (connection.transport != null && connection.sentMessages >= maxMessagesPerConnection) {
+            disconnect(connection);
+        }
+        if (connection.transport == null) {
+            connect(connection);
+        }
+        if (message.getSentDate() == null) {
+            message.setSentDate(new Date());
+        }
+        message.saveChanges();
+        connection.transport.sendMessage(message, message.getAllRecipients());
+        connection.sentMessages++;
+        connection.lastUseNanos = System.nanoTime();
+    }
+
+    // `isConnected` sends a NOOP, a round trip only worth it after the connection was idle
+    private void disconnectIfClosedWhileIdle(Connection connection) {
+        if (System.nanoTime() - connection.lastUseNanos >= idleCheckNanos) {
+            disconnectIfClosed(connection);
+        }
+    }
+
+    private static void disconnectIfClosed(Connection connection) {
+        if (connection.transport != null && !connection.transport.isConnected()) {
+            disconnect(connection);
+        }
+    }
+
+    private void connect(Connection connection) throws MessagingException {
+        // same protocol resolution as `JavaMailSenderImpl`
+        var session = javaMailSender.getSession();
+        var protocol = javaMailSender.getProtocol();
+        if (protocol == null) {
+            protocol = session.getProperty("mail.transport.protocol");
+        }
+        var transport = session.getTransport(protocol != null ? protocol : JavaMailSenderImpl.DEFAULT_PROTOCOL);
+        transport.connect(
+            javaMailSender.getHost(),
+            javaMailSender.getPort(),
+            javaMailSender.getUsername(),
+            javaMailSender.getPassword()
+        );
+        connection.transport = transport;
+        connection.sentMessages = 0;
+        connection.lastUseNanos = System.nanoTime();
+    }
+
+    private static void disconnect(Connection connection) {
+        if (connection.transport != null) {
+            try {
+                connection.transport.close();
+            } catch (MessagingException e) {
+                LOGGER.debug("error while closing SMTP connection", e);
+            }
+        }
+        connection.transport = null;
+        connection.sentMessages = 0;
+    }
+
+    @Override
+    public void close() {
+        for (var connection : connections) {
+            disconnect(connection);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.montrealjug.billetterie.email;
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -24,6 +25,10 @@ class SmtpEmailSender implements EmailSender {
     }
 
     public void send(EmailToSend email) throws MessagingException, IOException {
+        this.javaMailSender.send(createMimeMessage(email));
+    }
+
+    MimeMessage createMimeMessage(EmailToSend email) throws MessagingException {
         var msg = this.javaMailSender.createMimeMessage();
         var helper = new MimeMessageHelper(msg, true, StandardCharsets.UTF_8.name());
         helper.setTo(email.to());
@@ -33,8 +38,8 @@ class SmtpEmailSender implements EmailSender {
         helper.setText(email.plainText(), email.html());
         if (email.attachment().isPresent()) {
             var attachment = email.attachment().get();
-            helper.addAttachment("qrCode.jpg", () -> new ByteArrayInputStream(attachment), "image/jpeg");
+            helper.addAttachment("qrCode.png", () -> new ByteArrayInputStream(attachment), "image/png");
         }
-        this.javaMailSender.send(msg);
+        return msg;
     }
 }
@@ -83,7 +83,7 @@ public class TestMailController {
 
         var testEmail = "booker@test.org";
         var booker = bookerRepository
-            .findById(testEmail)
+            .findByEmail(testEmail)
             .orElseGet(() -> {
                 var newBooker = new Booker();
                 newBooker.setFirstName("Booker First Name");
@@ -104,7 +104,7 @@ public class TestMailController {
                 bookerRepository.save(newBooker);
                 // to get the ids in the created Participants
                 return bookerRepository
-                    .findById(testEmail)
+                    .findByEmail(testEmail)
                     .orElseThrow(() -> new IllegalStateException("we should have found the just" + " created booker!"));
             });
 
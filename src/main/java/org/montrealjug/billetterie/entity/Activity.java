@@ -1,15 +1,21 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.entity;
 
+import static org.montrealjug.billetterie.ui.Utils.markdownToHtml;
+
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import org.montrealjug.billetterie.service.ActiveEventService;
 
 @Entity
+@EntityListeners(ActiveEventService.ChangeListener.class)
 public class Activity implements Comparable<Activity> {
 
+    // ids are taken from the sequence by blocks of 50, so the inserts can be batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "activity_seq")
+    @SequenceGenerator(name = "activity_seq", allocationSize = 50)
     private long id;
 
     private LocalDateTime startTime;
@@ -18,9 +24,18 @@ public class Activity implements Comparable<Activity> {
     @Column(columnDefinition = "TEXT")
     private String description;
 
+    // `description` rendered as HTML when saved, so the pages don't render the markdown on each view
+    @Column(columnDefinition = "TEXT")
+    private String descriptionHtml;
+
     private int maxParticipants;
     private int maxWaitingQueue;
 
+    // number of `ActivityParticipant` rows, maintained by `SeatReservationService` with conditional updates
+    // never written by entity saves, so a stale instance can't overwrite a concurrent reservation
+    @Column(insertable = false, updatable = false, columnDefinition = "integer not null default 0")
+    private int registeredParticipants;
+
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "activity", orphanRemoval = true)
     private SortedSet<ActivityParticipant> participants = new TreeSet<>();
 
@@ -59,6 +74,21 @@ public class Activity implements Comparable<Activity> {
         this.description = description;
     }
 
+    public String getDescriptionHtml() {
+        return descriptionHtml;
+    }
+
+    public void setDescriptionHtml(String descriptionHtml) {
+        this.descriptionHtml = descriptionHtml;
+    }
+
+    // whatever saves the activity, its HTML is rendered from its description
+    @PrePersist
+    @PreUpdate
+    void renderDescriptionHtml() {
+        descriptionHtml = description != null ? markdownToHtml(description) : null;
+    }
+
     public int getMaxParticipants() {
         return maxParticipants;
     }
@@ -75,6 +105,14 @@ public class Activity implements Comparable<Activity> {
         this.maxWaitingQueue = maxWaitingQueue;
     }
 
+    public int getRegisteredParticipants() {
+        return registeredParticipants;
+    }
+
+    public void setRegisteredParticipants(int registeredParticipants) {
+        this.registeredParticipants = registeredParticipants;
+    }
+
     public Set<ActivityParticipant> getParticipants() {
         return participants;
     }
@@ -116,11 +154,15 @@ public class Activity implements Comparable<Activity> {
     @Transient
     public RegistrationStatus getRegistrationStatus() {
         // ensure that we will lazy-load ActivityParticipant if needed
-        var nbParticipants = getParticipants().size();
+        return registrationStatus(getParticipants().size(), this.maxParticipants, this.maxWaitingQueue);
+    }
+
+    public static RegistrationStatus registrationStatus(int nbParticipants, int maxParticipants, int maxWaitingQueue) {
         final RegistrationStatus registrationStatus;
-        if (nbParticipants <= this.maxParticipants) {
+        // the status tells where the next registration would go
+        if (nbParticipants < maxParticipants) {
             registrationStatus = RegistrationStatus.OPEN;
-        } else if (nbParticipants <= this.maxParticipants + this.maxWaitingQueue) {
+        } else if (nbParticipants < maxParticipants + maxWaitingQueue) {
             registrationStatus = RegistrationStatus.WAITING_LIST;
         } else {
             registrationStatus = RegistrationStatus.CLOSED;
@@ -4,13 +4,16 @@ package org.montrealjug.billetterie.entity;
 import jakarta.persistence.Column;
 import jakarta.persistence.EmbeddedId;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.MapsId;
 import java.time.Instant;
 import java.util.Objects;
+import org.montrealjug.billetterie.service.ActiveEventService;
 
 @Entity
+@EntityListeners(ActiveEventService.ChangeListener.class)
 public class ActivityParticipant implements Comparable<ActivityParticipant> {
 
     @EmbeddedId
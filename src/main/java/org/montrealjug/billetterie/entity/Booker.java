@@ -4,13 +4,22 @@ package org.montrealjug.billetterie.entity;
 import jakarta.persistence.*;
 import java.time.Instant;
 import java.util.HashSet;
-import java.util.Objects;
 import java.util.Set;
+import org.montrealjug.billetterie.service.BookerCache;
+import org.montrealjug.billetterie.service.KnownBookers;
 
 @Entity
+@EntityListeners({ KnownBookers.PersistListener.class, BookerCache.ChangeListener.class })
 public class Booker {
 
+    // ids are taken from the sequence by blocks of 50, so the inserts can be batched
     @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "booker_seq")
+    @SequenceGenerator(name = "booker_seq", allocationSize = 50)
+    private long id;
+
+    // not the id, so it can be changed without updating the participants
+    @Column(nullable = false, unique = true)
     private String email;
 
     private String firstName;
@@ -27,6 +36,14 @@ public class Booker {
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "booker")
     private Set<Participant> participants = new HashSet<>();
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getEmail() {
         return email;
     }
@@ -83,15 +100,18 @@ public class Booker {
         this.emailSignature = emailSignature;
     }
 
+    // by id, as the email can be changed by an admin: transient bookers (id 0) are only equal to themselves
     @Override
     public boolean equals(Object o) {
+        if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Booker booker = (Booker) o;
-        return Objects.equals(email, booker.email);
+        return id != 0 && id == booker.id;
     }
 
+    // constant, so a booker keeps its hash when it is persisted
     @Override
     public int hashCode() {
-        return Objects.hash(email);
+        return Booker.class.hashCode();
     }
 }
@@ -0,0 +1,201 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.entity;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.Objects;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailModel.Priority;
+
+/**
+ * An email waiting in the outbox to be sent by the workers of the email module: already rendered, or rendered when it
+ * is sent from its `coalescingKey`
+ */
+@Entity
+public class EmailOutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private EmailType emailType;
+
+    // from the `EmailType`, stored to claim the messages by priority
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Priority priority;
+
+    // null for the emails rendered when they are sent
+    private String recipient;
+
+    // what the emails rendered when they are sent are rendered from, unique among the ones not claimed yet
+    private String coalescingKey;
+
+    private String subject;
+
+    @Column(columnDefinition = "TEXT")
+    private String plainText;
+
+    @Column(columnDefinition = "TEXT")
+    private String html;
+
+    private byte[] attachment;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status = Status.PENDING;
+
+    private int attempts;
+
+    // also used as a lease while a worker is sending the message
+    @Column(nullable = false)
+    private Instant nextAttemptTime = Instant.now();
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(nullable = false, updatable = false)
+    private Instant creationTime = Instant.now();
+
+    private Instant sentTime;
+
+    public enum Status {
+        PENDING,
+        SENT,
+        DEAD,
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public EmailType getEmailType() {
+        return emailType;
+    }
+
+    public void setEmailType(EmailType emailType) {
+        this.emailType = emailType;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+
+    public String getCoalescingKey() {
+        return coalescingKey;
+    }
+
+    public void setCoalescingKey(String coalescingKey) {
+        this.coalescingKey = coalescingKey;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getPlainText() {
+        return plainText;
+    }
+
+    public void setPlainText(String plainText) {
+        this.plainText = plainText;
+    }
+
+    public String getHtml() {
+        return html;
+    }
+
+    public void setHtml(String html) {
+        this.html = html;
+    }
+
+    public byte[] getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(byte[] attachment) {
+        this.attachment = attachment;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Instant getNextAttemptTime() {
+        return nextAttemptTime;
+    }
+
+    public void setNextAttemptTime(Instant nextAttemptTime) {
+        this.nextAttemptTime = nextAttemptTime;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public Instant getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(Instant creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    public Instant getSentTime() {
+        return sentTime;
+    }
+
+    public void setSentTime(Instant sentTime) {
+        this.sentTime = sentTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        EmailOutboxMessage that = (EmailOutboxMessage) o;
+        return id == that.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
@@ -1,15 +1,23 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.entity;
 
+import static org.montrealjug.billetterie.ui.Utils.markdownToHtml;
+
 import jakarta.persistence.*;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import org.montrealjug.billetterie.service.ActiveEventService;
 
 @Entity
+@EntityListeners(ActiveEventService.ChangeListener.class)
 public class Event {
 
+    // ids are taken from the sequence by blocks of 50, so the inserts can be batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "event_seq")
+    @SequenceGenerator(name = "event_seq", allocationSize = 50)
     private long id;
 
     private LocalDate date;
@@ -19,8 +27,20 @@ public class Event {
     @Column(columnDefinition = "TEXT")
     private String description;
 
+    // `description` rendered as HTML when saved, so the pages don't render the markdown on each view
+    @Column(columnDefinition = "TEXT")
+    private String descriptionHtml;
+
     private String location;
 
+    // `null` for events created before the lottery existed
+    @Enumerated(EnumType.STRING)
+    private RegistrationMode registrationMode;
+
+    // end of the entry window of a lottery, the draw happens right after
+    private LocalDateTime lotteryDrawTime;
+    private Instant lotteryDrawnTime;
+
     @OneToMany(mappedBy = "event", cascade = CascadeType.ALL, orphanRemoval = true)
     private SortedSet<Activity> activities = new TreeSet<>();
 
@@ -56,6 +76,21 @@ public class Event {
         this.description = description;
     }
 
+    public String getDescriptionHtml() {
+        return descriptionHtml;
+    }
+
+    public void setDescriptionHtml(String descriptionHtml) {
+        this.descriptionHtml = descriptionHtml;
+    }
+
+    // whatever saves the event, its HTML is rendered from its description
+    @PrePersist
+    @PreUpdate
+    void renderDescriptionHtml() {
+        descriptionHtml = description != null ? markdownToHtml(description) : null;
+    }
+
     public SortedSet<Activity> getActivities() {
         return activities;
     }
@@ -84,6 +119,42 @@ public class Event {
         this.location = location;
     }
 
+    public RegistrationMode getRegistrationMode() {
+        return registrationMode != null ? registrationMode : RegistrationMode.FIRST_COME_FIRST_SERVED;
+    }
+
+    public void setRegistrationMode(RegistrationMode registrationMode) {
+        this.registrationMode = registrationMode;
+    }
+
+    public LocalDateTime getLotteryDrawTime() {
+        return lotteryDrawTime;
+    }
+
+    public void setLotteryDrawTime(LocalDateTime lotteryDrawTime) {
+        this.lotteryDrawTime = lotteryDrawTime;
+    }
+
+    public Instant getLotteryDrawnTime() {
+        return lotteryDrawnTime;
+    }
+
+    public void setLotteryDrawnTime(Instant lotteryDrawnTime) {
+        this.lotteryDrawnTime = lotteryDrawnTime;
+    }
+
+    // until the draw, registrations are only entries to the lottery
+    // once drawn, the remaining seats are given on a first come, first served basis
+    @Transient
+    public boolean isLotteryPending() {
+        return getRegistrationMode() == RegistrationMode.LOTTERY && lotteryDrawnTime == null;
+    }
+
+    @Transient
+    public boolean isLotteryOpen(LocalDateTime now) {
+        return isLotteryPending() && (lotteryDrawTime == null || now.isBefore(lotteryDrawTime));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
@@ -104,4 +175,9 @@ public class Event {
             return "";
         }
     }
+
+    public enum RegistrationMode {
+        FIRST_COME_FIRST_SERVED,
+        LOTTERY,
+    }
 }
@@ -0,0 +1,82 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.MapsId;
+import java.time.Instant;
+import java.util.Objects;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+/**
+ * An entry of a `Participant` to the lottery of an `Activity`, turned into an `ActivityParticipant` by the draw
+ */
+@Entity
+public class LotteryEntry {
+
+    @EmbeddedId
+    private ActivityParticipantKey activityParticipantKey = new ActivityParticipantKey();
+
+    // entries are never navigated from their activity or participant, let the DB clean them up
+    @ManyToOne(fetch = FetchType.LAZY)
+    @MapsId("activityId")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Activity activity;
+
+    @ManyToOne
+    @MapsId("participantId")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Participant participant;
+
+    @Column(nullable = false, updatable = false)
+    private Instant entryTime = Instant.now();
+
+    public ActivityParticipantKey getActivityParticipantKey() {
+        return activityParticipantKey;
+    }
+
+    public void setActivityParticipantKey(ActivityParticipantKey activityParticipantKey) {
+        this.activityParticipantKey = activityParticipantKey;
+    }
+
+    public Activity getActivity() {
+        return activity;
+    }
+
+    public void setActivity(Activity activity) {
+        this.activity = activity;
+    }
+
+    public Participant getParticipant() {
+        return participant;
+    }
+
+    public void setParticipant(Participant participant) {
+        this.participant = participant;
+    }
+
+    public Instant getEntryTime() {
+        return entryTime;
+    }
+
+    public void setEntryTime(Instant entryTime) {
+        this.entryTime = entryTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LotteryEntry that)) {
+            return false;
+        }
+        return Objects.equals(activityParticipantKey, that.activityParticipantKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(activityParticipantKey);
+    }
+}
@@ -4,12 +4,16 @@ package org.montrealjug.billetterie.entity;
 import jakarta.persistence.*;
 import java.time.Year;
 import java.util.Objects;
+import org.montrealjug.billetterie.service.ActiveEventService;
 
 @Entity
+@EntityListeners(ActiveEventService.ChangeListener.class)
 public class Participant {
 
+    // ids are taken from the sequence by blocks of 50, so the inserts can be batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "participant_seq")
+    @SequenceGenerator(name = "participant_seq", allocationSize = 50)
     private long id;
 
     private String firstName;
@@ -17,7 +21,7 @@ public class Participant {
     private int yearOfBirth;
 
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
-    @JoinColumn(name = "booker_email", nullable = false)
+    @JoinColumn(name = "booker_id", nullable = false)
     private Booker booker;
 
     public long getId() {
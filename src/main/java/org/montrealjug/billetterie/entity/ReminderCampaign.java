@@ -0,0 +1,165 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.entity;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.Objects;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+/**
+ * A reminder email sent in the background to the bookers of an `Event`, or to a segment of them.
+ * <p>
+ * Bookers are processed in the order of their id, and `lastBookerId` is the checkpoint,
+ * saved in the same transaction as the queued emails: a resumed campaign never sends twice to a booker.
+ */
+@Entity
+public class ReminderCampaign {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Event event;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Segment segment;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status = Status.RUNNING;
+
+    // used for the links in the emails
+    @Column(nullable = false)
+    private String baseUrl;
+
+    private Long lastBookerId;
+
+    private int totalBookers;
+
+    private int processedBookers;
+
+    private int failedBookers;
+
+    @Column(nullable = false, updatable = false)
+    private Instant creationTime = Instant.now();
+
+    private Instant completionTime;
+
+    public enum Segment {
+        ALL,
+        // bookers with at least one participant on a waiting list
+        WAITING_LIST_ONLY,
+        // bookers with at least one participant not checked in yet
+        NOT_CHECKED_IN,
+    }
+
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED,
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public void setEvent(Event event) {
+        this.event = event;
+    }
+
+    public Segment getSegment() {
+        return segment;
+    }
+
+    public void setSegment(Segment segment) {
+        this.segment = segment;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public Long getLastBookerId() {
+        return lastBookerId;
+    }
+
+    public void setLastBookerId(Long lastBookerId) {
+        this.lastBookerId = lastBookerId;
+    }
+
+    public int getTotalBookers() {
+        return totalBookers;
+    }
+
+    public void setTotalBookers(int totalBookers) {
+        this.totalBookers = totalBookers;
+    }
+
+    public int getProcessedBookers() {
+        return processedBookers;
+    }
+
+    public void setProcessedBookers(int processedBookers) {
+        this.processedBookers = processedBookers;
+    }
+
+    public int getFailedBookers() {
+        return failedBookers;
+    }
+
+    public void setFailedBookers(int failedBookers) {
+        this.failedBookers = failedBookers;
+    }
+
+    public Instant getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(Instant creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    public Instant getCompletionTime() {
+        return completionTime;
+    }
+
+    public void setCompletionTime(Instant completionTime) {
+        this.completionTime = completionTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        ReminderCampaign that = (ReminderCampaign) o;
+        return id == that.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
@@ -1,9 +1,12 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.repository;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import org.montrealjug.billetterie.entity.ActivityParticipant;
 import org.montrealjug.billetterie.entity.ActivityParticipantKey;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
@@ -15,10 +18,77 @@ public interface ActivityParticipantRepository extends CrudRepository<ActivityPa
         "LEFT JOIN FETCH a.event e " +
         "LEFT JOIN FETCH ap.participant p " +
         "LEFT JOIN FETCH p.booker b " +
-        "WHERE e.id = :eventId AND b.email = :bookerEmail"
+        "WHERE e.id = :eventId AND b.id = :bookerId"
     )
-    List<ActivityParticipant> findAllActivityParticipantByEventIdAndBookerEmail(
+    List<ActivityParticipant> findAllActivityParticipantByEventIdAndBookerId(
         @Param("eventId") long eventId,
-        @Param("bookerEmail") String bookerEmail
+        @Param("bookerId") long bookerId
+    );
+
+    // all the bookings of an event in one query, grouped by booker
+    @Query(
+        "SELECT ap FROM ActivityParticipant ap " +
+        "LEFT JOIN FETCH ap.activity a " +
+        "LEFT JOIN FETCH a.event e " +
+        "LEFT JOIN FETCH ap.participant p " +
+        "LEFT JOIN FETCH p.booker b " +
+        "WHERE e.id = :eventId " +
+        "ORDER BY b.id, ap.registrationTime"
+    )
+    List<ActivityParticipant> findAllActivityParticipantByEventId(@Param("eventId") long eventId);
+
+    // inserts the registration row directly, without loading the `Activity` aggregate
+    // returns 0 if the participant is already registered to the activity
+    @Modifying
+    @Query(
+        value = "INSERT INTO activity_participant (activity_id, participant_id, registration_time) " +
+        "VALUES (:activityId, :participantId, :registrationTime) ON CONFLICT DO NOTHING",
+        nativeQuery = true
+    )
+    int insertIfAbsent(
+        @Param("activityId") long activityId,
+        @Param("participantId") long participantId,
+        @Param("registrationTime") Instant registrationTime
+    );
+
+    @Query(
+        "SELECT ap.registrationTime FROM ActivityParticipant ap " +
+        "WHERE ap.activityParticipantKey.activityId = :activityId " +
+        "AND ap.activityParticipantKey.participantId = :participantId"
+    )
+    Optional<Instant> findRegistrationTime(
+        @Param("activityId") long activityId,
+        @Param("participantId") long participantId
+    );
+
+    // the participant at the last seat, `maxParticipants - 1` in the registration order, if registered after a removed
+    // participant registered at `registrationTime`: the removed one had a seat, and this one took it from the waiting
+    // queue. Only consistent with the other removals under the row lock of the activity.
+    @Query(
+        value = "SELECT ap.participant_id FROM (" +
+        "SELECT participant_id, registration_time FROM activity_participant " +
+        "WHERE activity_id = :activityId " +
+        "ORDER BY registration_time " +
+        "LIMIT (SELECT LEAST(max_participants, 1) FROM activity WHERE id = :activityId) " +
+        "OFFSET (SELECT GREATEST(max_participants - 1, 0) FROM activity WHERE id = :activityId)" +
+        ") ap " +
+        "WHERE ap.registration_time > :registrationTime",
+        nativeQuery = true
+    )
+    Optional<Long> findParticipantIdUpgradedAfter(
+        @Param("activityId") long activityId,
+        @Param("registrationTime") Instant registrationTime
+    );
+
+    // clears the persistence context, so `Activity.participants` loaded before are read again afterward
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(
+        "DELETE FROM ActivityParticipant ap " +
+        "WHERE ap.activityParticipantKey.activityId = :activityId " +
+        "AND ap.activityParticipantKey.participantId = :participantId"
+    )
+    int deleteByActivityIdAndParticipantId(
+        @Param("activityId") long activityId,
+        @Param("participantId") long participantId
     );
 }
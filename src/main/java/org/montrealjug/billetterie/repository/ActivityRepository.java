@@ -1,7 +1,44 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.repository;
 
+import java.util.List;
 import org.montrealjug.billetterie.entity.Activity;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
-public interface ActivityRepository extends CrudRepository<Activity, Long> {}
+public interface ActivityRepository extends CrudRepository<Activity, Long> {
+    // takes a seat only if one is left: concurrent calls wait on the row lock and re-check the condition
+    @Modifying
+    @Query(
+        "UPDATE Activity a SET a.registeredParticipants = a.registeredParticipants + 1 " +
+        "WHERE a.id = :activityId AND a.registeredParticipants < a.maxParticipants + a.maxWaitingQueue"
+    )
+    int reserveSeat(@Param("activityId") long activityId);
+
+    @Modifying
+    @Query(
+        "UPDATE Activity a SET a.registeredParticipants = a.registeredParticipants - 1 " +
+        "WHERE a.id = :activityId AND a.registeredParticipants > 0"
+    )
+    int releaseSeat(@Param("activityId") long activityId);
+
+    // recomputes every counter from the `ActivityParticipant` rows
+    @Modifying
+    @Query(
+        "UPDATE Activity a SET a.registeredParticipants = " +
+        "(SELECT COUNT(ap) FROM ActivityParticipant ap WHERE ap.activity.id = a.id)"
+    )
+    int resyncRegisteredParticipants();
+
+    @Modifying(flushAutomatically = true)
+    @Query(
+        "UPDATE Activity a SET a.registeredParticipants = " +
+        "(SELECT COUNT(ap) FROM ActivityParticipant ap WHERE ap.activity.id = a.id) " +
+        "WHERE a.event.id = :eventId"
+    )
+    int resyncRegisteredParticipants(@Param("eventId") long eventId);
+
+    List<Activity> findAllByDescriptionHtmlIsNullAndDescriptionIsNotNull();
+}
@@ -1,10 +1,22 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.repository;
 
+import java.util.List;
 import java.util.Optional;
 import org.montrealjug.billetterie.entity.Booker;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
-public interface BookerRepository extends CrudRepository<Booker, String> {
+public interface BookerRepository extends CrudRepository<Booker, Long> {
+    Optional<Booker> findByEmail(String email);
+
+    boolean existsByEmail(String email);
+
     Optional<Booker> findByEmailSignature(String emailSignature);
+
+    @Query("select b.email from Booker b")
+    List<String> findAllEmails();
+
+    @Query("select b.emailSignature from Booker b")
+    List<String> findAllEmailSignatures();
 }
@@ -0,0 +1,73 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import org.montrealjug.billetterie.email.EmailModel.Priority;
+import org.montrealjug.billetterie.entity.EmailOutboxMessage;
+import org.montrealjug.billetterie.entity.EmailOutboxMessage.Status;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface EmailOutboxMessageRepository extends CrudRepository<EmailOutboxMessage, Long> {
+    // rows locked by another worker are skipped, so concurrent workers never claim the same message
+    @Query(
+        value = "SELECT * FROM email_outbox_message " +
+        "WHERE status = 'PENDING' AND priority = :#{#priority.name()} AND next_attempt_time <= :now " +
+        "ORDER BY next_attempt_time LIMIT :limit FOR UPDATE SKIP LOCKED",
+        nativeQuery = true
+    )
+    List<EmailOutboxMessage> findDueForUpdate(
+        @Param("priority") Priority priority,
+        @Param("now") Instant now,
+        @Param("limit") int limit
+    );
+
+    // the email rendered when it is sent, returns 0 if one with the same key is pending and not claimed yet:
+    // the changes until it is claimed are coalesced into it
+    @Modifying
+    @Query(
+        value = "INSERT INTO email_outbox_message " +
+        "(email_type, priority, coalescing_key, status, attempts, creation_time, next_attempt_time) " +
+        "VALUES (:emailType, :priority, :coalescingKey, 'PENDING', 0, :creationTime, :sendTime) " +
+        "ON CONFLICT (email_type, coalescing_key) WHERE status = 'PENDING' AND attempts = 0 DO NOTHING",
+        nativeQuery = true
+    )
+    int insertDeferredIfAbsent(
+        @Param("emailType") String emailType,
+        @Param("priority") String priority,
+        @Param("coalescingKey") String coalescingKey,
+        @Param("creationTime") Instant creationTime,
+        @Param("sendTime") Instant sendTime
+    );
+
+    // targeted updates, so the rendered content is not written back
+    @Modifying
+    @Query(
+        "UPDATE EmailOutboxMessage m SET m.status = SENT, m.sentTime = :sentTime, m.lastError = NULL WHERE m.id IN :ids"
+    )
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentTime") Instant sentTime);
+
+    @Modifying
+    @Query(
+        "UPDATE EmailOutboxMessage m SET m.status = :status, m.nextAttemptTime = :nextAttemptTime, " +
+        "m.lastError = :lastError WHERE m.id = :id"
+    )
+    int markFailed(
+        @Param("id") long id,
+        @Param("status") Status status,
+        @Param("nextAttemptTime") Instant nextAttemptTime,
+        @Param("lastError") String lastError
+    );
+
+    long countByStatusAndPriority(Status status, Priority priority);
+
+    long countBySentTimeAfter(Instant after);
+
+    @Modifying
+    @Query("DELETE FROM EmailOutboxMessage m WHERE m.status = SENT AND m.sentTime < :before")
+    int deleteSentBefore(@Param("before") Instant before);
+}
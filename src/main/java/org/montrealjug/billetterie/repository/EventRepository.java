@@ -1,13 +1,26 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import org.montrealjug.billetterie.entity.Event;
 import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 public interface EventRepository extends CrudRepository<Event, Long> {
     // Eager fetch activities, as we will always access them
     @EntityGraph(attributePaths = { "activities" })
     Optional<Event> findByActiveIsTrue();
+
+    @Query(
+        "SELECT e FROM Event e " +
+        "WHERE e.registrationMode = LOTTERY " +
+        "AND e.lotteryDrawnTime IS NULL AND e.lotteryDrawTime <= :now"
+    )
+    List<Event> findAllLotteriesToDraw(@Param("now") LocalDateTime now);
+
+    List<Event> findAllByDescriptionHtmlIsNullAndDescriptionIsNotNull();
 }
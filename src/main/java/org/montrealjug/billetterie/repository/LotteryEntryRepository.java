@@ -0,0 +1,68 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.repository;
+
+import java.time.Instant;
+import java.util.List;
+import org.montrealjug.billetterie.entity.ActivityParticipantKey;
+import org.montrealjug.billetterie.entity.LotteryEntry;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface LotteryEntryRepository extends CrudRepository<LotteryEntry, ActivityParticipantKey> {
+    // append-only during the entry window, returns 0 if the participant already entered
+    @Modifying
+    @Query(
+        value = "INSERT INTO lottery_entry (activity_id, participant_id, entry_time) " +
+        "VALUES (:activityId, :participantId, :entryTime) ON CONFLICT DO NOTHING",
+        nativeQuery = true
+    )
+    int insertIfAbsent(
+        @Param("activityId") long activityId,
+        @Param("participantId") long participantId,
+        @Param("entryTime") Instant entryTime
+    );
+
+    @Modifying
+    @Query(
+        "DELETE FROM LotteryEntry le " +
+        "WHERE le.activityParticipantKey.activityId = :activityId " +
+        "AND le.activityParticipantKey.participantId = :participantId"
+    )
+    int deleteByActivityIdAndParticipantId(
+        @Param("activityId") long activityId,
+        @Param("participantId") long participantId
+    );
+
+    @Query(
+        "SELECT le FROM LotteryEntry le " +
+        "JOIN FETCH le.participant p " +
+        "JOIN FETCH p.booker b " +
+        "WHERE le.activityParticipantKey.activityId = :activityId"
+    )
+    List<LotteryEntry> findAllByActivityId(@Param("activityId") long activityId);
+
+    @Query(
+        "SELECT le FROM LotteryEntry le " +
+        "JOIN FETCH le.activity a " +
+        "JOIN FETCH le.participant p " +
+        "WHERE a.event.id = :eventId AND p.booker.id = :bookerId " +
+        "ORDER BY le.entryTime"
+    )
+    List<LotteryEntry> findAllByEventIdAndBookerId(
+        @Param("eventId") long eventId,
+        @Param("bookerId") long bookerId
+    );
+
+    // the entries left after the draw are the ones without a seat, listed by the result email
+    @Modifying(flushAutomatically = true)
+    @Query(
+        value = "DELETE FROM lottery_entry le USING activity a " +
+        "WHERE le.activity_id = a.id AND a.event_id = :eventId AND EXISTS (" +
+        "SELECT 1 FROM activity_participant ap " +
+        "WHERE ap.activity_id = le.activity_id AND ap.participant_id = le.participant_id)",
+        nativeQuery = true
+    )
+    int deleteAllRegisteredByEventId(@Param("eventId") long eventId);
+}
@@ -0,0 +1,16 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.repository;
+
+import java.util.List;
+import java.util.Optional;
+import org.montrealjug.billetterie.entity.ReminderCampaign;
+import org.montrealjug.billetterie.entity.ReminderCampaign.Status;
+import org.springframework.data.repository.CrudRepository;
+
+public interface ReminderCampaignRepository extends CrudRepository<ReminderCampaign, Long> {
+    List<ReminderCampaign> findAllByStatus(Status status);
+
+    boolean existsByEventIdAndStatus(long eventId, Status status);
+
+    Optional<ReminderCampaign> findFirstByEventIdOrderByCreationTimeDesc(long eventId);
+}
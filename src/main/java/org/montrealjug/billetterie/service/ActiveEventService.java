@@ -0,0 +1,416 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.montrealjug.billetterie.ui.Utils.descriptionHtml;
+import static org.montrealjug.billetterie.ui.Utils.toPresentationActivities;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import org.montrealjug.billetterie.entity.Activity;
+import org.montrealjug.billetterie.entity.ActivityParticipant;
+import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.entity.Participant;
+import org.montrealjug.billetterie.repository.EventRepository;
+import org.montrealjug.billetterie.ui.PresentationActivity;
+import org.montrealjug.billetterie.ui.PresentationEvent;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service holding an immutable snapshot of the active event, its activities and their registrations, shared by the
+ * public pages: they are rendered without querying the event.
+ * <p>
+ * The snapshot is copy-on-write: the writes `invalidate` it, and the next read builds a new one, while the current one
+ * stays valid for the threads using it. The JPA listener of the event entities invalidates it for the writes through
+ * entities (admin pages, check-in, lottery draw).
+ * <p>
+ * The registrations don't build it again: when committed, the seats reservations are applied to a copy of the current
+ * snapshot (`registered`, `unregistered`), and the lottery entries, not part of it, only change its version (`touch`).
+ * A patch that can't be applied (a build in progress, a concurrent patch) leaves the snapshot invalidated, built again
+ * on the next read. The `version` of the writes is the ETag of the pages rendered from the snapshot.
+ */
+@Service
+public class ActiveEventService {
+
+    /**
+     * @param event the active event, without its activities
+     * @param presentationEvent the active event, with the markdown rendered as HTML
+     */
+    public record Snapshot(Event event, PresentationEvent presentationEvent) {
+        /**
+         * @return the active event, with the registrations limited to the participants of a booker
+         */
+        public PresentationEvent limitedToBooker(Set<Participant> bookerParticipants) {
+            var activities = presentationEvent
+                .activities()
+                .stream()
+                .map(activity ->
+                    new PresentationActivity(
+                        activity.id(),
+                        activity.title(),
+                        activity.description(),
+                        activity.maxParticipants(),
+                        activity.maxWaitingQueue(),
+                        activity.totalParticipants(),
+                        activity.totalWaitingQueue(),
+                        limitedToBooker(activity.waitingParticipants(), bookerParticipants),
+                        limitedToBooker(activity.participants(), bookerParticipants),
+                        activity.registrationStatus(),
+                        activity.time(),
+                        activity.imagePath()
+                    )
+                )
+                .toList();
+            return withActivities(presentationEvent, activities);
+        }
+
+        private static List<ActivityParticipant> limitedToBooker(
+            List<ActivityParticipant> registrations,
+            Set<Participant> bookerParticipants
+        ) {
+            return registrations.stream().filter(ap -> bookerParticipants.contains(ap.getParticipant())).toList();
+        }
+    }
+
+    // `version` of the writes the snapshot was built after
+    private record VersionedSnapshot(long version, Optional<Snapshot> snapshot) {}
+
+    private final EventRepository eventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicLong version = new AtomicLong();
+    // the versions restart at each startup, so they are prefixed by the startup time
+    private final String instance = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicReference<VersionedSnapshot> current = new AtomicReference<>(
+        new VersionedSnapshot(-1, Optional.empty())
+    );
+    private final Object buildLock = new Object();
+    // the snapshots are only replaced with the lock, after checking they are not newer
+    private final Object replaceLock = new Object();
+
+    public ActiveEventService(EventRepository eventRepository, TransactionTemplate transactionTemplate) {
+        this.eventRepository = eventRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * @return the snapshot of the active event, or empty if there is no active event
+     */
+    public Optional<Snapshot> snapshot() {
+        var versioned = current.get();
+        if (versioned.version() == version.get()) {
+            return versioned.snapshot();
+        }
+        // one build at a time, the waiting threads get its result
+        synchronized (buildLock) {
+            var writes = version.get();
+            versioned = current.get();
+            if (versioned.version() != writes) {
+                // writes during the build leave it stale, it will be built again on the next read
+                versioned = new VersionedSnapshot(writes, transactionTemplate.execute(status -> build()));
+                synchronized (replaceLock) {
+                    // unless patched in the meantime
+                    if (current.get().version() < writes) {
+                        current.set(versioned);
+                    }
+                }
+            }
+            return versioned.snapshot();
+        }
+    }
+
+    /**
+     * @return the version of the active event, changed by every write to it: read before the snapshot, so the pages
+     * rendered from it are never older than their version
+     */
+    public String version() {
+        return instance + "-" + version.get();
+    }
+
+    /**
+     * Invalidates the snapshot now, and again after the commit of the current transaction if any, so a read
+     * during the transaction can't keep the state before the commit.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        version.incrementAndGet();
+                    }
+                }
+            );
+        }
+    }
+
+    /**
+     * Adds the registration of the participant to the activity in the snapshot, at the commit of the current
+     * transaction if any.
+     */
+    public void registered(long activityId, Participant participant, Instant registrationTime) {
+        var registration = copy(activityId, participant, registrationTime);
+        atCommit(() ->
+            patch(activityId, registrations -> {
+                if (registrations.stream().anyMatch(ap -> ap.getParticipant().getId() == participant.getId())) {
+                    // already in a snapshot built after the insert
+                    return registrations;
+                }
+                var patched = new ArrayList<>(registrations);
+                patched.add(registration);
+                patched.sort(Comparator.comparing(ActivityParticipant::getRegistrationTime));
+                return patched;
+            })
+        );
+    }
+
+    /**
+     * Removes the registration of the participant from the activity in the snapshot, at the commit of the current
+     * transaction if any.
+     */
+    public void unregistered(long activityId, long participantId) {
+        atCommit(() ->
+            patch(activityId, registrations ->
+                registrations.stream().filter(ap -> ap.getParticipant().getId() != participantId).toList()
+            )
+        );
+    }
+
+    /**
+     * Changes the version of the snapshot, at the commit of the current transaction if any, for the writes shown with
+     * the active event but not part of the snapshot (lottery entries).
+     */
+    public void touch() {
+        atCommit(() -> replace(Optional::of));
+    }
+
+    // right before the commit, while the row of the activity is still locked by the seat reservation: the patches of an
+    // activity are applied in the order of the commits. A rollback after that invalidates the snapshot.
+    private void atCommit(Runnable patch) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void beforeCommit(boolean readOnly) {
+                        patch.run();
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status != STATUS_COMMITTED) {
+                            version.incrementAndGet();
+                        }
+                    }
+                }
+            );
+        } else {
+            patch.run();
+        }
+    }
+
+    // the registrations of an activity are the non-waiting participants, then the waiting ones
+    private void patch(long activityId, UnaryOperator<List<ActivityParticipant>> registrationsPatch) {
+        replace(snapshot -> {
+            var activities = new ArrayList<PresentationActivity>();
+            for (var activity : snapshot.presentationEvent().activities()) {
+                if (activity.id() != activityId) {
+                    activities.add(activity);
+                    continue;
+                }
+                var registrations = new ArrayList<>(activity.participants());
+                registrations.addAll(activity.waitingParticipants());
+                if (registrations.size() != activity.totalParticipants()) {
+                    // more registrations than seats (added by an admin), not all in the snapshot
+                    return Optional.empty();
+                }
+                activities.add(withRegistrations(activity, registrationsPatch.apply(registrations)));
+            }
+            return Optional.of(new Snapshot(snapshot.event(), withActivities(snapshot.presentationEvent(), activities)));
+        });
+    }
+
+    // replaces the snapshot with the patched one and a new version, or leaves it invalidated if it's not up to date
+    private void replace(Function<Snapshot, Optional<Snapshot>> snapshotPatch) {
+        synchronized (replaceLock) {
+            var versioned = current.get();
+            var patchedVersion = version.incrementAndGet();
+            if (versioned.version() != patchedVersion - 1) {
+                return;
+            }
+            if (versioned.snapshot().isEmpty()) {
+                // no active event to patch
+                current.set(new VersionedSnapshot(patchedVersion, versioned.snapshot()));
+                return;
+            }
+            snapshotPatch
+                .apply(versioned.snapshot().get())
+                .ifPresent(patched -> current.set(new VersionedSnapshot(patchedVersion, Optional.of(patched))));
+        }
+    }
+
+    private static PresentationActivity withRegistrations(
+        PresentationActivity activity,
+        List<ActivityParticipant> registrations
+    ) {
+        var participants = registrations.stream().limit(activity.maxParticipants()).toList();
+        var waitingParticipants = registrations
+            .stream()
+            .skip(activity.maxParticipants())
+            .limit(activity.maxWaitingQueue())
+            .toList();
+        return new PresentationActivity(
+            activity.id(),
+            activity.title(),
+            activity.description(),
+            activity.maxParticipants(),
+            activity.maxWaitingQueue(),
+            registrations.size(),
+            waitingParticipants.size(),
+            waitingParticipants,
+            participants,
+            Activity.registrationStatus(registrations.size(), activity.maxParticipants(), activity.maxWaitingQueue()),
+            activity.time(),
+            activity.imagePath()
+        );
+    }
+
+    private Optional<Snapshot> build() {
+        return eventRepository
+            .findByActiveIsTrue()
+            .map(event -> {
+                var activities = toPresentationActivities(event.getActivities())
+                    .stream()
+                    .map(activity ->
+                        new PresentationActivity(
+                            activity.id(),
+                            activity.title(),
+                            activity.description(),
+                            activity.maxParticipants(),
+                            activity.maxWaitingQueue(),
+                            activity.totalParticipants(),
+                            activity.totalWaitingQueue(),
+                            copy(activity.waitingParticipants()),
+                            copy(activity.participants()),
+                            activity.registrationStatus(),
+                            activity.time(),
+                            activity.imagePath()
+                        )
+                    )
+                    .toList();
+                var presentationEvent = new PresentationEvent(
+                    event.getId(),
+                    event.getTitle(),
+                    descriptionHtml(event),
+                    event.getDate(),
+                    activities,
+                    event.isActive(),
+                    event.getImagePath(),
+                    event.getLocation(),
+                    event.getRegistrationMode(),
+                    event.getLotteryDrawTime()
+                );
+                return new Snapshot(copy(event), presentationEvent);
+            });
+    }
+
+    private static PresentationEvent withActivities(PresentationEvent event, List<PresentationActivity> activities) {
+        return new PresentationEvent(
+            event.id(),
+            event.title(),
+            event.description(),
+            event.date(),
+            activities,
+            event.active(),
+            event.imagePath(),
+            event.location(),
+            event.registrationMode(),
+            event.lotteryDrawTime()
+        );
+    }
+
+    // the snapshot holds copies of the entities, not attached to any session, so it is shared by all threads
+    private static Event copy(Event event) {
+        var copy = new Event();
+        copy.setId(event.getId());
+        copy.setDate(event.getDate());
+        copy.setTitle(event.getTitle());
+        copy.setActive(event.isActive());
+        copy.setDescription(event.getDescription());
+        copy.setDescriptionHtml(event.getDescriptionHtml());
+        copy.setLocation(event.getLocation());
+        copy.setRegistrationMode(event.getRegistrationMode());
+        copy.setLotteryDrawTime(event.getLotteryDrawTime());
+        copy.setLotteryDrawnTime(event.getLotteryDrawnTime());
+        return copy;
+    }
+
+    private static List<ActivityParticipant> copy(List<ActivityParticipant> registrations) {
+        return registrations
+            .stream()
+            .map(registration -> {
+                var copy = copy(
+                    registration.getActivityParticipantKey().getActivityId(),
+                    registration.getParticipant(),
+                    registration.getRegistrationTime()
+                );
+                copy.setConfirmationTime(registration.getConfirmationTime());
+                copy.setCheckInTime(registration.getCheckInTime());
+                return copy;
+            })
+            .toList();
+    }
+
+    private static ActivityParticipant copy(long activityId, Participant participant, Instant registrationTime) {
+        var participantCopy = new Participant();
+        participantCopy.setId(participant.getId());
+        participantCopy.setFirstName(participant.getFirstName());
+        participantCopy.setLastName(participant.getLastName());
+        participantCopy.setYearOfBirth(participant.getYearOfBirth());
+        var copy = new ActivityParticipant();
+        copy.getActivityParticipantKey().setActivityId(activityId);
+        copy.getActivityParticipantKey().setParticipantId(participantCopy.getId());
+        copy.setParticipant(participantCopy);
+        copy.setRegistrationTime(registrationTime);
+        return copy;
+    }
+
+    /**
+     * JPA listener of the entities of the active event, invalidating the snapshot on their writes.
+     */
+    public static class ChangeListener {
+
+        private final ObjectProvider<ActiveEventService> activeEventService;
+
+        public ChangeListener(ObjectProvider<ActiveEventService> activeEventService) {
+            this.activeEventService = activeEventService;
+        }
+
+        @PostPersist
+        void postPersist(Object entity) {
+            // a new participant is not registered to any activity yet
+            if (!(entity instanceof Participant)) {
+                activeEventService.ifAvailable(ActiveEventService::invalidate);
+            }
+        }
+
+        @PostUpdate
+        @PostRemove
+        void postChange(Object entity) {
+            activeEventService.ifAvailable(ActiveEventService::invalidate);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter of strings, sized for `capacity` elements at the `falsePositiveRate`.
+ * <p>
+ * `mightContain` never returns `false` for an added string. Adds and lookups are lock free.
+ */
+class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long capacity;
+    private final LongAdder size = new LongAdder();
+
+    BloomFilter(long capacity, double falsePositiveRate) {
+        if (capacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("invalid capacity or false positive rate");
+        }
+        // optimal sizes, see https://en.wikipedia.org/wiki/Bloom_filter#Optimal_number_of_hash_functions
+        var optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new AtomicLongArray(Math.toIntExact((optimalBits + 63) / 64));
+        this.bitCount = bits.length() * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        this.capacity = capacity;
+    }
+
+    void add(String value) {
+        var hash = hash(value);
+        // double hashing: the positions are h1 + i * h2
+        var h1 = (int) hash;
+        var h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            var index = Math.floorMod(h1 + (long) i * h2, bitCount);
+            var mask = 1L << index;
+            bits.getAndUpdate((int) (index >>> 6), word -> word | mask);
+        }
+        size.increment();
+    }
+
+    boolean mightContain(String value) {
+        var hash = hash(value);
+        var h1 = (int) hash;
+        var h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            var index = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of added strings, counting the duplicates
+     */
+    long size() {
+        return size.sum();
+    }
+
+    /**
+     * @return the false positive rate expected with the strings added so far
+     */
+    double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-hashCount * (double) size() / bitCount), hashCount);
+    }
+
+    // 64 bits FNV-1a of the chars, with the MurmurHash3 finalizer to spread the bits
+    private static long hash(String value) {
+        var hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
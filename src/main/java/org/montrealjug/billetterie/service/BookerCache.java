@@ -0,0 +1,205 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.Participant;
+import org.montrealjug.billetterie.repository.BookerRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Read-through cache of the bookers and their participants, by email signature, for the pages a booker reloads
+ * during a session.
+ * <p>
+ * The cached bookers are snapshots, not attached to any persistence context: they must not be modified, nor saved.
+ * The writes go through `BookerRepository`, then `invalidate` the snapshot: the registrations are not part of it, so
+ * only new participants and booker updates invalidate it. Entries expire after `TTL`, as a safety net for the writes
+ * not invalidating them, and the least recently used are evicted beyond `MAX_ENTRIES`. Hits and misses are exposed
+ * as metrics.
+ * <p>
+ * Each invalidation bumps the generation of the booker: a booker read from the DB is only cached if its generation
+ * did not change during the read, so a read racing with a write never caches the state before the write.
+ */
+@Service
+public class BookerCache implements MeterBinder {
+
+    static final int MAX_ENTRIES = 1_000;
+    static final Duration TTL = Duration.ofMinutes(5);
+
+    private record Entry(Booker booker, Instant expiry) {}
+
+    private final BookerRepository bookerRepository;
+    private final int maxEntries;
+    private final Clock clock;
+    // access ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    // the generations of the least recently invalidated bookers are dropped, and replaced by the latest dropped one
+    private final LinkedHashMap<String, Long> generations = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            if (size() <= maxEntries) {
+                return false;
+            }
+            droppedGeneration = Math.max(droppedGeneration, eldest.getValue());
+            return true;
+        }
+    };
+    // guarded by `cache`, as `generations`
+    private long lastGeneration;
+    private long droppedGeneration;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public BookerCache(BookerRepository bookerRepository) {
+        this(bookerRepository, MAX_ENTRIES, Clock.systemUTC());
+    }
+
+    BookerCache(BookerRepository bookerRepository, int maxEntries, Clock clock) {
+        this.bookerRepository = bookerRepository;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    /**
+     * @return a snapshot of the booker and its participants
+     */
+    public Optional<Booker> findByEmailSignature(String emailSignature) {
+        Entry entry;
+        long generation;
+        synchronized (cache) {
+            entry = cache.get(emailSignature);
+            generation = generation(emailSignature);
+        }
+        if (entry != null && entry.expiry().isAfter(clock.instant())) {
+            hits.increment();
+            return Optional.of(entry.booker());
+        }
+        misses.increment();
+        var booker = bookerRepository.findByEmailSignature(emailSignature).map(BookerCache::snapshot);
+        booker.ifPresent(snapshot -> {
+            synchronized (cache) {
+                // invalidated during the read, the snapshot may be older than the write
+                if (generation(emailSignature) == generation) {
+                    cache.put(emailSignature, new Entry(snapshot, clock.instant().plus(TTL)));
+                }
+            }
+        });
+        return booker;
+    }
+
+    /**
+     * Evicts the booker now, and again after the commit of the current transaction if any, so a concurrent read
+     * can't cache the state before the commit.
+     */
+    public void invalidate(String emailSignature) {
+        evict(emailSignature);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        evict(emailSignature);
+                    }
+                }
+            );
+        }
+    }
+
+    /**
+     * JPA listener of `Booker`, invalidating the updated and removed bookers, whatever updates them.
+     */
+    public static class ChangeListener {
+
+        private final ObjectProvider<BookerCache> bookerCache;
+
+        public ChangeListener(ObjectProvider<BookerCache> bookerCache) {
+            this.bookerCache = bookerCache;
+        }
+
+        @PostUpdate
+        @PostRemove
+        void postChange(Booker booker) {
+            bookerCache.ifAvailable(cache -> cache.invalidate(booker.getEmailSignature()));
+        }
+    }
+
+    private void evict(String emailSignature) {
+        synchronized (cache) {
+            cache.remove(emailSignature);
+            generations.put(emailSignature, ++lastGeneration);
+        }
+    }
+
+    // a dropped generation is at most `droppedGeneration`, so a booker invalidated then dropped still changed
+    private long generation(String emailSignature) {
+        return generations.getOrDefault(emailSignature, droppedGeneration);
+    }
+
+    // copies, so the lazy associations are loaded now and the snapshot is shared by all threads without any session
+    private static Booker snapshot(Booker booker) {
+        var snapshot = new Booker();
+        snapshot.setId(booker.getId());
+        snapshot.setEmail(booker.getEmail());
+        snapshot.setFirstName(booker.getFirstName());
+        snapshot.setLastName(booker.getLastName());
+        snapshot.setCreationTime(booker.getCreationTime());
+        snapshot.setEmailSignature(booker.getEmailSignature());
+        snapshot.setValidationTime(booker.getValidationTime());
+        for (var participant : booker.getParticipants()) {
+            var participantSnapshot = new Participant();
+            participantSnapshot.setId(participant.getId());
+            participantSnapshot.setFirstName(participant.getFirstName());
+            participantSnapshot.setLastName(participant.getLastName());
+            participantSnapshot.setYearOfBirth(participant.getYearOfBirth());
+            participantSnapshot.setBooker(snapshot);
+            snapshot.getParticipants().add(participantSnapshot);
+        }
+        return snapshot;
+    }
+
+    private int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter
+            .builder("billetterie.booker.cache", hits, LongAdder::sum)
+            .description("Bookers found in the cache")
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter
+            .builder("billetterie.booker.cache", misses, LongAdder::sum)
+            .description("Bookers read from the DB, as not found in the cache")
+            .tag("result", "miss")
+            .register(registry);
+        Gauge
+            .builder("billetterie.booker.cache.size", this, BookerCache::size)
+            .description("Number of cached bookers")
+            .register(registry);
+    }
+}
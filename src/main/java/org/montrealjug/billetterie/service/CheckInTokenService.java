@@ -0,0 +1,138 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.montrealjug.billetterie.config.BilletterieProperties;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service issuing and verifying the check-in tokens encoded in the QR codes of the bookers.
+ * <p>
+ * A token is `keyId.eventId.expiry.bookerId.mac`, where `mac` is a truncated HMAC-SHA256 of the rest:
+ * it is verified without any query, so forged or expired QR codes are rejected at the door before reaching the DB.
+ * The expiry only depends on the date of the event (or the issuing day, for an event without a date), and the booker
+ * is referenced by its id, so the token (and its QR code) of a booker is stable, even when an admin changes its email.
+ */
+@Service
+public class CheckInTokenService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CheckInTokenService.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    // 128 bits
+    private static final int MAC_LENGTH = 16;
+    // the event day, and the next one, whatever the time zone
+    private static final int VALIDITY_DAYS = 2;
+    // for an event without a date yet, from the day the token is issued: stable for the day, as the QR codes cache
+    private static final int UNDATED_VALIDITY_DAYS = 30;
+
+    public record CheckInToken(long eventId, long bookerId) {}
+
+    private final String keyId;
+    private final Map<String, SecretKeySpec> keys = new HashMap<>();
+    private final Clock clock;
+
+    @Autowired
+    public CheckInTokenService(BilletterieProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    CheckInTokenService(BilletterieProperties properties, Clock clock) {
+        this.clock = clock;
+        var checkIn = properties.checkIn();
+        checkIn
+            .keys()
+            .forEach((id, key) -> {
+                if (id.contains(".")) {
+                    throw new IllegalArgumentException("invalid check-in key id: " + id);
+                }
+                // an unset secret, such as `CHECK_IN_KEY`
+                if (key == null || key.isBlank()) {
+                    return;
+                }
+                keys.put(id, new SecretKeySpec(Base64.getDecoder().decode(key), ALGORITHM));
+            });
+        if (checkIn.keyId() != null && keys.containsKey(checkIn.keyId())) {
+            this.keyId = checkIn.keyId();
+        } else {
+            LOGGER.warn("no check-in key configured (CHECK_IN_KEY), QR codes will not be valid after a restart");
+            var key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            this.keyId = "ephemeral";
+            keys.put(keyId, new SecretKeySpec(key, ALGORITHM));
+        }
+    }
+
+    public String issue(Event event, Booker booker) {
+        var expiryDate = event.getDate() != null
+            ? event.getDate().plusDays(VALIDITY_DAYS)
+            : LocalDate.ofInstant(clock.instant(), ZoneOffset.UTC).plusDays(UNDATED_VALIDITY_DAYS);
+        var expiry = expiryDate.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        var payload = keyId + "." + event.getId() + "." + expiry + "." + booker.getId();
+        return payload + "." + mac(keys.get(keyId), payload);
+    }
+
+    /**
+     * @return the URL of the check-in page, encoded in the QR codes
+     */
+    public String checkInUrl(String baseUrl, Event event, Booker booker) {
+        return baseUrl + "/admin/check-in/" + issue(event, booker);
+    }
+
+    /**
+     * @return the content of the token, or empty if it is malformed, forged, signed by an unknown key or expired
+     */
+    public Optional<CheckInToken> verify(String token) {
+        var parts = token.split("\\.");
+        if (parts.length != 5) {
+            return Optional.empty();
+        }
+        var key = keys.get(parts[0]);
+        if (key == null) {
+            return Optional.empty();
+        }
+        var payload = token.substring(0, token.lastIndexOf('.'));
+        var expectedMac = mac(key, payload).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expectedMac, parts[4].getBytes(StandardCharsets.US_ASCII))) {
+            return Optional.empty();
+        }
+        try {
+            if (Long.parseLong(parts[2]) < clock.instant().getEpochSecond()) {
+                return Optional.empty();
+            }
+            return Optional.of(new CheckInToken(Long.parseLong(parts[1]), Long.parseLong(parts[3])));
+        } catch (NumberFormatException e) {
+            // only possible with a leaked key
+            return Optional.empty();
+        }
+    }
+
+    private static String mac(SecretKeySpec key, String payload) {
+        try {
+            var mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            var bytes = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(bytes, MAC_LENGTH));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.montrealjug.billetterie.ui.Utils.markdownToHtml;
+
+import org.montrealjug.billetterie.repository.ActivityRepository;
+import org.montrealjug.billetterie.repository.EventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Service rendering at startup the HTML of the events and activities descriptions saved before it was stored.
+ */
+@Service
+public class DescriptionsBackfill {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DescriptionsBackfill.class);
+
+    private final EventRepository eventRepository;
+    private final ActivityRepository activityRepository;
+
+    public DescriptionsBackfill(EventRepository eventRepository, ActivityRepository activityRepository) {
+        this.eventRepository = eventRepository;
+        this.activityRepository = activityRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void renderMissingDescriptionsHtml() {
+        var events = eventRepository.findAllByDescriptionHtmlIsNullAndDescriptionIsNotNull();
+        events.forEach(event -> event.setDescriptionHtml(markdownToHtml(event.getDescription())));
+        var activities = activityRepository.findAllByDescriptionHtmlIsNullAndDescriptionIsNotNull();
+        activities.forEach(activity -> activity.setDescriptionHtml(markdownToHtml(activity.getDescription())));
+        if (!events.isEmpty() || !activities.isEmpty()) {
+            LOGGER.info(
+                "Descriptions HTML rendered for {} events and {} activities",
+                events.size(),
+                activities.size()
+            );
+        }
+    }
+}
@@ -0,0 +1,205 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.montrealjug.billetterie.config.BilletterieProperties;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.repository.BookerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Bloom filters of the emails and email signatures of the bookers, so the lookups of unknown bookers (random
+ * signatures from a scanner, typos) are answered without querying the DB.
+ * <p>
+ * The filters are built at startup and rebuilt, twice as large, when the bookers outgrow them. Until they are built,
+ * every booker might exist. New bookers are added after the commit of their insert: a rebuild reading the bookers
+ * meanwhile either sees the insert, or gets the booker added after it. The updated bookers are added the same way,
+ * for their changed email, the old one stays in the filters until the next rebuild.
+ */
+@Service
+public class KnownBookers implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KnownBookers.class);
+
+    static final int MIN_CAPACITY = 1_000;
+
+    private record Filters(BloomFilter emails, BloomFilter emailSignatures) {}
+
+    private record Keys(String email, String emailSignature) {}
+
+    private final ObjectProvider<BookerRepository> bookerRepository;
+    private final double falsePositiveRate;
+    private final Object lock = new Object();
+    // null until built
+    private volatile Filters filters;
+    // guarded by `lock`, the bookers added during a rebuild, null otherwise
+    private List<Keys> addedDuringRebuild;
+    private final LongAdder rejectedLookups = new LongAdder();
+
+    // the repository is only used after startup: this service is needed by the JPA listener of `Booker`
+    public KnownBookers(ObjectProvider<BookerRepository> bookerRepository, BilletterieProperties properties) {
+        this.bookerRepository = bookerRepository;
+        this.falsePositiveRate = properties.knownBookersFalsePositiveRate();
+    }
+
+    /**
+     * @return `false` if no booker has this email, `true` if one might
+     */
+    public boolean mightExistByEmail(String email) {
+        return mightContain(email, Filters::emails);
+    }
+
+    /**
+     * @return `false` if no booker has this email signature, `true` if one might
+     */
+    public boolean mightExistByEmailSignature(String emailSignature) {
+        return mightContain(emailSignature, Filters::emailSignatures);
+    }
+
+    private boolean mightContain(String value, Function<Filters, BloomFilter> filter) {
+        var current = filters;
+        if (current == null || filter.apply(current).mightContain(value)) {
+            return true;
+        }
+        rejectedLookups.increment();
+        return false;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (lock) {
+            if (addedDuringRebuild != null) {
+                return;
+            }
+            addedDuringRebuild = new ArrayList<>();
+        }
+        try {
+            var repository = bookerRepository.getObject();
+            var emails = repository.findAllEmails();
+            var emailSignatures = repository.findAllEmailSignatures();
+            synchronized (lock) {
+                var capacity = Math.max(MIN_CAPACITY, 2L * (emails.size() + addedDuringRebuild.size()));
+                var rebuilt = new Filters(
+                    new BloomFilter(capacity, falsePositiveRate),
+                    new BloomFilter(capacity, falsePositiveRate)
+                );
+                emails.forEach(rebuilt.emails()::add);
+                emailSignatures.forEach(rebuilt.emailSignatures()::add);
+                addedDuringRebuild.forEach(keys -> add(rebuilt, keys));
+                filters = rebuilt;
+                LOGGER.info("Known bookers filters built for {} bookers, capacity {}", emails.size(), capacity);
+            }
+        } catch (RuntimeException e) {
+            // the previous filters, if any, are still valid
+            LOGGER.warn("Error building the known bookers filters: {}", e.getMessage());
+        } finally {
+            synchronized (lock) {
+                addedDuringRebuild = null;
+            }
+        }
+    }
+
+    void add(Booker booker) {
+        var keys = new Keys(booker.getEmail(), booker.getEmailSignature());
+        boolean full;
+        synchronized (lock) {
+            if (addedDuringRebuild != null) {
+                addedDuringRebuild.add(keys);
+            }
+            var current = filters;
+            // already added, most updates don't change the email
+            if (current == null || contains(current, keys)) {
+                return;
+            }
+            add(current, keys);
+            full = current.emails().size() > current.emails().capacity();
+        }
+        if (full) {
+            Thread.ofVirtual().name("known-bookers-rebuild").start(this::rebuild);
+        }
+    }
+
+    private static boolean contains(Filters filters, Keys keys) {
+        return (
+            filters.emails().mightContain(keys.email()) &&
+            filters.emailSignatures().mightContain(keys.emailSignature())
+        );
+    }
+
+    private static void add(Filters filters, Keys keys) {
+        filters.emails().add(keys.email());
+        filters.emailSignatures().add(keys.emailSignature());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge
+            .builder("billetterie.known.bookers.false.positive.rate", this, knownBookers -> falsePositiveRate)
+            .description("Configured false positive rate of the known bookers filters, when full")
+            .tag("rate", "configured")
+            .register(registry);
+        Gauge
+            .builder("billetterie.known.bookers.false.positive.rate", this, KnownBookers::expectedFalsePositiveRate)
+            .description("False positive rate of the known bookers filters, with the bookers added so far")
+            .tag("rate", "expected")
+            .register(registry);
+        FunctionCounter
+            .builder("billetterie.known.bookers.rejected.lookups", rejectedLookups, LongAdder::sum)
+            .description("Lookups of unknown bookers answered without querying the DB")
+            .register(registry);
+    }
+
+    private double expectedFalsePositiveRate() {
+        var current = filters;
+        return current == null ? Double.NaN : current.emails().expectedFalsePositiveRate();
+    }
+
+    /**
+     * JPA listener of `Booker`, adding the new and updated bookers to the filters.
+     */
+    public static class PersistListener {
+
+        private final ObjectProvider<KnownBookers> knownBookers;
+
+        public PersistListener(ObjectProvider<KnownBookers> knownBookers) {
+            this.knownBookers = knownBookers;
+        }
+
+        @PostPersist
+        @PostUpdate
+        void postWrite(Booker booker) {
+            var current = knownBookers.getIfAvailable();
+            if (current == null) {
+                return;
+            }
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            current.add(booker);
+                        }
+                    }
+                );
+            } else {
+                current.add(booker);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.montrealjug.billetterie.ui.Utils.toPresentationActivityParticipants;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.montrealjug.billetterie.config.BilletterieProperties;
+import org.montrealjug.billetterie.email.DeferredEmailRenderer;
+import org.montrealjug.billetterie.email.EmailModel.Email;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailService;
+import org.montrealjug.billetterie.entity.Activity;
+import org.montrealjug.billetterie.entity.ActivityParticipant;
+import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.entity.LotteryEntry;
+import org.montrealjug.billetterie.repository.ActivityParticipantRepository;
+import org.montrealjug.billetterie.repository.ActivityRepository;
+import org.montrealjug.billetterie.repository.BookerRepository;
+import org.montrealjug.billetterie.repository.EventRepository;
+import org.montrealjug.billetterie.repository.LotteryEntryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service for the `LOTTERY` registration mode of an `Event`.
+ * <p>
+ * During the entry window, registrations are only appended as `LotteryEntry`.
+ * Once the draw time is passed, the entries of each `Activity` are shuffled, and the draw order
+ * becomes the registration order: the first ones get the seats, the next ones the waiting list,
+ * and the remaining ones are out of luck: their entries are kept, to list them in the `lotteryResult` email queued
+ * for each booker in the transaction of the draw, and rendered by the outbox workers.
+ */
+@Service
+public class LotteryService implements DeferredEmailRenderer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LotteryService.class);
+
+    private final EventRepository eventRepository;
+    private final ActivityRepository activityRepository;
+    private final ActivityParticipantRepository activityParticipantRepository;
+    private final LotteryEntryRepository lotteryEntryRepository;
+    private final BookerRepository bookerRepository;
+    private final EmailService emailService;
+    private final QrCodeService qrCodeService;
+    private final CheckInTokenService checkInTokenService;
+    private final BilletterieProperties billetterieProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final ActiveEventService activeEventService;
+    private final SecureRandom random = new SecureRandom();
+
+    public LotteryService(
+        EventRepository eventRepository,
+        ActivityRepository activityRepository,
+        ActivityParticipantRepository activityParticipantRepository,
+        LotteryEntryRepository lotteryEntryRepository,
+        BookerRepository bookerRepository,
+        EmailService emailService,
+        QrCodeService qrCodeService,
+        CheckInTokenService checkInTokenService,
+        BilletterieProperties billetterieProperties,
+        TransactionTemplate transactionTemplate,
+        ActiveEventService activeEventService
+    ) {
+        this.eventRepository = eventRepository;
+        this.activityRepository = activityRepository;
+        this.activityParticipantRepository = activityParticipantRepository;
+        this.lotteryEntryRepository = lotteryEntryRepository;
+        this.bookerRepository = bookerRepository;
+        this.emailService = emailService;
+        this.qrCodeService = qrCodeService;
+        this.checkInTokenService = checkInTokenService;
+        this.billetterieProperties = billetterieProperties;
+        this.transactionTemplate = transactionTemplate;
+        this.activeEventService = activeEventService;
+    }
+
+    /**
+     * @return `false` if the participant already entered the lottery for this activity
+     */
+    @Transactional
+    public boolean enter(long activityId, long participantId) {
+        if (lotteryEntryRepository.insertIfAbsent(activityId, participantId, Instant.now()) == 0) {
+            return false;
+        }
+        // the entries are shown on the booker page, versioned with the active event
+        activeEventService.touch();
+        return true;
+    }
+
+    /**
+     * @return `false` if the participant did not enter the lottery for this activity
+     */
+    @Transactional
+    public boolean withdraw(long activityId, long participantId) {
+        if (lotteryEntryRepository.deleteByActivityIdAndParticipantId(activityId, participantId) == 0) {
+            return false;
+        }
+        activeEventService.touch();
+        return true;
+    }
+
+    public List<LotteryEntry> findEntries(long eventId, long bookerId) {
+        return lotteryEntryRepository.findAllByEventIdAndBookerId(eventId, bookerId);
+    }
+
+    @Scheduled(initialDelay = 1, fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void drawDueLotteries() {
+        for (Event event : eventRepository.findAllLotteriesToDraw(LocalDateTime.now())) {
+            try {
+                var bookerIds = transactionTemplate.execute(status -> draw(event.getId()));
+                LOGGER.info("Lottery drawn for event {}, notifying {} bookers", event.getId(), bookerIds.size());
+            } catch (Exception e) {
+                LOGGER.error("Error drawing the lottery for event {}: {}", event.getId(), e.getMessage());
+            }
+        }
+    }
+
+    // in one transaction, so the entries are never half allocated, and the results are queued with the draw
+    private Set<Long> draw(long eventId) {
+        var event = eventRepository.findById(eventId).orElseThrow();
+        if (!event.isLotteryPending()) {
+            return Set.of();
+        }
+        var bookerIds = new TreeSet<Long>();
+        var registrationTime = Instant.now();
+        for (Activity activity : event.getActivities()) {
+            var entries = new ArrayList<>(lotteryEntryRepository.findAllByActivityId(activity.getId()));
+            Collections.shuffle(entries, random);
+
+            // participants added by an admin during the entry window keep their seats
+            var alreadyRegistered = activity
+                .getParticipants()
+                .stream()
+                .map(ap -> ap.getActivityParticipantKey().getParticipantId())
+                .collect(Collectors.toSet());
+            var seats = activity.getMaxParticipants() + activity.getMaxWaitingQueue() - alreadyRegistered.size();
+            var drawn = 0;
+            for (var entry : entries) {
+                var participant = entry.getParticipant();
+                bookerIds.add(participant.getBooker().getId());
+                if (drawn >= seats || alreadyRegistered.contains(participant.getId())) {
+                    continue;
+                }
+                var activityParticipant = new ActivityParticipant();
+                activityParticipant.setActivity(activity);
+                activityParticipant.setParticipant(participant);
+                activityParticipant.getActivityParticipantKey().setActivityId(activity.getId());
+                activityParticipant.getActivityParticipantKey().setParticipantId(participant.getId());
+                // the draw order is kept through the registration time, used to sort `Activity.participants`
+                activityParticipant.setRegistrationTime(registrationTime.plusMillis(drawn));
+                activity.getParticipants().add(activityParticipant);
+                drawn++;
+            }
+        }
+        event.setLotteryDrawnTime(Instant.now());
+        eventRepository.save(event);
+
+        lotteryEntryRepository.deleteAllRegisteredByEventId(eventId);
+        activityRepository.resyncRegisteredParticipants(eventId);
+        // rendered by the outbox workers, which retry them until they are sent
+        var now = Instant.now();
+        bookerIds.forEach(bookerId -> emailService.sendLater(EmailType.LOTTERY_RESULT, eventId + ":" + bookerId, now));
+        return bookerIds;
+    }
+
+    @Override
+    public EmailType type() {
+        return EmailType.LOTTERY_RESULT;
+    }
+
+    @Override
+    public Optional<Email> render(String coalescingKey) {
+        var ids = coalescingKey.split(":");
+        var eventId = Long.parseLong(ids[0]);
+        var bookerId = Long.parseLong(ids[1]);
+        // lazy associations are read while mapping to the presentation records
+        return transactionTemplate.execute(status -> {
+            var event = eventRepository.findById(eventId).orElse(null);
+            var booker = bookerRepository.findById(bookerId).orElse(null);
+            if (event == null || booker == null) {
+                // deleted in the meantime, nobody to notify
+                return Optional.empty();
+            }
+            var participants = activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(
+                eventId,
+                bookerId
+            );
+            var lostEntries = lotteryEntryRepository.findAllByEventIdAndBookerId(eventId, bookerId);
+            if (participants.isEmpty() && lostEntries.isEmpty()) {
+                // removed by the booker or an admin in the meantime
+                return Optional.empty();
+            }
+            var baseUrl = billetterieProperties.baseUrl();
+            // the check-in QR code is only useful with a registration
+            Optional<byte[]> qrCode = Optional.empty();
+            if (!participants.isEmpty()) {
+                try {
+                    qrCode = Optional.of(
+                        qrCodeService.generateQrCode(checkInTokenService.checkInUrl(baseUrl, event, booker))
+                    );
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return Optional.of(
+                Email.lotteryResult(
+                    booker,
+                    toPresentationActivityParticipants(participants),
+                    lostEntries,
+                    event,
+                    baseUrl,
+                    qrCode
+                )
+            );
+        });
+    }
+}
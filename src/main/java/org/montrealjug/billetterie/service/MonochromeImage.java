@@ -0,0 +1,90 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Black and white image, stored as the scanlines of a 1-bit grayscale PNG and encoded without AWT.
+ * <p>
+ * See the <a href="https://www.w3.org/TR/png/">PNG specification</a>: each scanline is a filter type byte (`0`,
+ * none), then 8 pixels per byte, most significant bit first, `1` for white.
+ */
+final class MonochromeImage {
+
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+    private final int width;
+    private final int height;
+    // bytes per scanline, with its filter type byte
+    private final int stride;
+    private final byte[] scanlines;
+
+    MonochromeImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.stride = 1 + (width + 7) / 8;
+        this.scanlines = new byte[height * stride];
+        for (int y = 0; y < height; y++) {
+            // white, after the filter type byte
+            Arrays.fill(scanlines, y * stride + 1, (y + 1) * stride, (byte) 0xff);
+        }
+    }
+
+    void fillBlack(int x, int y, int w, int h) {
+        for (int row = y; row < y + h; row++) {
+            var offset = row * stride + 1;
+            for (int column = x; column < x + w; column++) {
+                scanlines[offset + (column >>> 3)] &= (byte) ~(0x80 >>> (column & 7));
+            }
+        }
+    }
+
+    byte[] toPng() throws IOException {
+        var deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        var compressed = new ByteArrayOutputStream(scanlines.length / 4);
+        try {
+            deflater.setInput(scanlines);
+            deflater.finish();
+            var buffer = new byte[4096];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        var png = new ByteArrayOutputStream(compressed.size() + 64);
+        var out = new DataOutputStream(png);
+        out.write(PNG_SIGNATURE);
+        var header = new ByteArrayOutputStream(13);
+        var headerOut = new DataOutputStream(header);
+        headerOut.writeInt(width);
+        headerOut.writeInt(height);
+        headerOut.writeByte(1); // bit depth
+        headerOut.writeByte(0); // color type: grayscale
+        headerOut.writeByte(0); // compression method: deflate
+        headerOut.writeByte(0); // filter method
+        headerOut.writeByte(0); // interlace method: none
+        writeChunk(out, "IHDR", header.toByteArray());
+        writeChunk(out, "IDAT", compressed.toByteArray());
+        writeChunk(out, "IEND", new byte[0]);
+        return png.toByteArray();
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        var typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        var crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+}
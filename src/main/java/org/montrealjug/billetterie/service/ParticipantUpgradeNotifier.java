@@ -0,0 +1,97 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.montrealjug.billetterie.ui.Utils.toPresentationParticipantActivity;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Optional;
+import org.montrealjug.billetterie.config.BilletterieProperties;
+import org.montrealjug.billetterie.email.DeferredEmailRenderer;
+import org.montrealjug.billetterie.email.EmailModel.Email;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailService;
+import org.montrealjug.billetterie.repository.ActivityRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Sends the `participantUpgraded` email of a participant who got a seat from the waiting queue.
+ * <p>
+ * The email is queued in the outbox in the transaction of the removal that freed the seat, and rendered (with its QR
+ * code) by the outbox workers: the activity row locked by the removal is not held while rendering.
+ * It is only rendered if the participant still has a seat at that time.
+ */
+@Service
+public class ParticipantUpgradeNotifier implements DeferredEmailRenderer {
+
+    private final ActivityRepository activityRepository;
+    private final EmailService emailService;
+    private final QrCodeService qrCodeService;
+    private final CheckInTokenService checkInTokenService;
+    private final TransactionTemplate transactionTemplate;
+    private final String baseUrl;
+
+    public ParticipantUpgradeNotifier(
+        ActivityRepository activityRepository,
+        EmailService emailService,
+        QrCodeService qrCodeService,
+        CheckInTokenService checkInTokenService,
+        TransactionTemplate transactionTemplate,
+        BilletterieProperties billetterieProperties
+    ) {
+        this.activityRepository = activityRepository;
+        this.emailService = emailService;
+        this.qrCodeService = qrCodeService;
+        this.checkInTokenService = checkInTokenService;
+        this.transactionTemplate = transactionTemplate;
+        this.baseUrl = billetterieProperties.baseUrl();
+    }
+
+    /**
+     * Queues the email, in the current transaction if any: it is only sent if the removal is committed.
+     */
+    public void participantUpgraded(long activityId, long participantId) {
+        emailService.sendLater(EmailType.PARTICIPANT_UPGRADED, activityId + ":" + participantId, Instant.now());
+    }
+
+    @Override
+    public EmailType type() {
+        return EmailType.PARTICIPANT_UPGRADED;
+    }
+
+    @Override
+    public Optional<Email> render(String coalescingKey) {
+        var ids = coalescingKey.split(":");
+        var activityId = Long.parseLong(ids[0]);
+        var participantId = Long.parseLong(ids[1]);
+        // lazy associations are read while mapping to the presentation records
+        return transactionTemplate.execute(status ->
+            activityRepository
+                .findById(activityId)
+                .stream()
+                .flatMap(activity -> activity.getNonWaitingParticipants().stream())
+                // left, or back in the waiting queue, in the meantime
+                .filter(activityParticipant -> activityParticipant.getParticipant().getId() == participantId)
+                .findFirst()
+                .map(activityParticipant -> {
+                    var booker = activityParticipant.getParticipant().getBooker();
+                    var event = activityParticipant.getActivity().getEvent();
+                    byte[] qrCode;
+                    try {
+                        qrCode = qrCodeService.generateQrCode(checkInTokenService.checkInUrl(baseUrl, event, booker));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return Email.participantUpgraded(
+                        booker,
+                        toPresentationParticipantActivity(activityParticipant),
+                        event,
+                        baseUrl,
+                        qrCode
+                    );
+                })
+        );
+    }
+}
@@ -0,0 +1,110 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.montrealjug.billetterie.ui.Utils.toPresentationActivityParticipants;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import org.montrealjug.billetterie.config.BilletterieProperties;
+import org.montrealjug.billetterie.email.DeferredEmailRenderer;
+import org.montrealjug.billetterie.email.EmailModel.Email;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailService;
+import org.montrealjug.billetterie.repository.ActivityParticipantRepository;
+import org.montrealjug.billetterie.repository.BookerRepository;
+import org.montrealjug.billetterie.repository.EventRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Sends the `afterParticipantsChanges` email of a booker once their changes settle.
+ * <p>
+ * The first change of a booker for an event queues a deferred email in the outbox, due after
+ * `participantsChangesEmailDelay`, in the transaction of the change: the next changes until it is sent are coalesced
+ * into it, and a restart does not lose it. The email (and its QR code) is rendered when it is sent, from the
+ * registrations at that time.
+ */
+@Service
+public class ParticipantsChangesNotifier implements DeferredEmailRenderer {
+
+    private final EventRepository eventRepository;
+    private final BookerRepository bookerRepository;
+    private final ActivityParticipantRepository activityParticipantRepository;
+    private final EmailService emailService;
+    private final QrCodeService qrCodeService;
+    private final CheckInTokenService checkInTokenService;
+    private final TransactionTemplate transactionTemplate;
+    private final String baseUrl;
+    private final Duration delay;
+
+    public ParticipantsChangesNotifier(
+        EventRepository eventRepository,
+        BookerRepository bookerRepository,
+        ActivityParticipantRepository activityParticipantRepository,
+        EmailService emailService,
+        QrCodeService qrCodeService,
+        CheckInTokenService checkInTokenService,
+        TransactionTemplate transactionTemplate,
+        BilletterieProperties billetterieProperties
+    ) {
+        this.eventRepository = eventRepository;
+        this.bookerRepository = bookerRepository;
+        this.activityParticipantRepository = activityParticipantRepository;
+        this.emailService = emailService;
+        this.qrCodeService = qrCodeService;
+        this.checkInTokenService = checkInTokenService;
+        this.transactionTemplate = transactionTemplate;
+        this.baseUrl = billetterieProperties.baseUrl();
+        this.delay = billetterieProperties.participantsChangesEmailDelay();
+    }
+
+    /**
+     * Queues the email, in the current transaction if any: it is only sent if the change is committed.
+     */
+    public void participantsChanged(long eventId, long bookerId) {
+        emailService.sendLater(EmailType.AFTER_PARTICIPANTS_CHANGES, eventId + ":" + bookerId, Instant.now().plus(delay));
+    }
+
+    @Override
+    public EmailType type() {
+        return EmailType.AFTER_PARTICIPANTS_CHANGES;
+    }
+
+    @Override
+    public Optional<Email> render(String coalescingKey) {
+        var ids = coalescingKey.split(":");
+        var eventId = Long.parseLong(ids[0]);
+        var bookerId = Long.parseLong(ids[1]);
+        // lazy associations are read while mapping to the presentation records
+        return transactionTemplate.execute(status -> {
+            var event = eventRepository.findById(eventId).orElse(null);
+            var booker = bookerRepository.findById(bookerId).orElse(null);
+            if (event == null || booker == null) {
+                // deleted in the meantime, nobody to notify
+                return Optional.empty();
+            }
+            var participants = activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(
+                eventId,
+                bookerId
+            );
+            byte[] qrCode;
+            try {
+                qrCode = qrCodeService.generateQrCode(checkInTokenService.checkInUrl(baseUrl, event, booker));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return Optional.of(
+                Email.afterParticipantsChanges(
+                    booker,
+                    toPresentationActivityParticipants(participants),
+                    event,
+                    baseUrl,
+                    qrCode
+                )
+            );
+        });
+    }
+}
@@ -1,53 +1,155 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.service;
 
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import org.springframework.stereotype.Service;
 import uk.org.okapibarcode.backend.QrCode;
-import uk.org.okapibarcode.graphics.Color;
-import uk.org.okapibarcode.output.Java2DRenderer;
 
 /**
- * Service for generating QrCodes from text / urls
+ * Service for generating QrCodes from text / urls, as black and white PNG images of about `SIZE` pixels,
+ * or as SVG images
+ * <p>
+ * The same booking URL is encoded for each email sent to a booker, so the generated images are kept in a LRU cache,
+ * bounded to `MAX_CACHE_BYTES`. Its hits, misses and size are exposed as metrics.
  */
 @Service
-public class QrCodeService {
+public class QrCodeService implements MeterBinder {
+
+    static final int SIZE = 300;
+    // in modules, as required by the QR code specification
+    static final int QUIET_ZONE = 4;
+    static final long MAX_CACHE_BYTES = 8 * 1024 * 1024;
+
+    // access ordered, so the eldest entry is the least recently used
+    private final long maxCacheBytes;
+    private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cacheBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public QrCodeService() {
+        this(MAX_CACHE_BYTES);
+    }
+
+    QrCodeService(long maxCacheBytes) {
+        this.maxCacheBytes = maxCacheBytes;
+    }
 
     public byte[] generateQrCode(String text) throws IOException {
+        byte[] image;
+        synchronized (cache) {
+            image = cache.get(text);
+        }
+        if (image != null) {
+            hits.increment();
+        } else {
+            // generated outside the lock, concurrent misses for the same text are harmless
+            misses.increment();
+            image = encode(text);
+            cache(text, image);
+        }
+        // the cached image is not shared with the caller
+        return image.clone();
+    }
+
+    /**
+     * Same QR code as `generateQrCode`, as a SVG image scaling to the size of its container, for web pages.
+     * Emails keep the PNG images, as most email clients do not display SVG.
+     */
+    public String generateSvgQrCode(String text) {
         QrCode qrCode = new QrCode();
         qrCode.setContent(text);
 
-        int width = qrCode.getWidth();
-        int height = qrCode.getHeight();
+        int size = qrCode.getWidth() + 2 * QUIET_ZONE;
+        // one subpath per dark rectangle, in modules
+        var path = new StringBuilder();
+        for (var rectangle : qrCode.getRectangles()) {
+            path
+                .append('M')
+                .append((int) rectangle.x + QUIET_ZONE)
+                .append(' ')
+                .append((int) rectangle.y + QUIET_ZONE)
+                .append('h')
+                .append((int) rectangle.width)
+                .append('v')
+                .append((int) rectangle.height)
+                .append('h')
+                .append(-(int) rectangle.width)
+                .append('z');
+        }
+        return (
+            "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 " +
+            size +
+            " " +
+            size +
+            "\" shape-rendering=\"crispEdges\">" +
+            "<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>" +
+            "<path fill=\"#000\" d=\"" +
+            path +
+            "\"/></svg>"
+        );
+    }
 
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-        Graphics2D g2d = image.createGraphics();
-        Java2DRenderer renderer = new Java2DRenderer(g2d, 1, Color.WHITE, Color.BLACK);
-        renderer.render(qrCode);
+    private void cache(String text, byte[] image) {
+        synchronized (cache) {
+            var previous = cache.put(text, image);
+            cacheBytes += image.length - (previous != null ? previous.length : 0);
+            var eldest = cache.entrySet().iterator();
+            while (cacheBytes > maxCacheBytes && eldest.hasNext()) {
+                cacheBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+    }
 
-        BufferedImage resizedImage = resizeImage(image, 300, 300);
+    long cacheBytes() {
+        synchronized (cache) {
+            return cacheBytes;
+        }
+    }
 
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        ImageIO.write(resizedImage, "jpeg", os);
-        return os.toByteArray();
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter
+            .builder("billetterie.qr.code.cache", hits, LongAdder::sum)
+            .description("QR codes found in the cache")
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter
+            .builder("billetterie.qr.code.cache", misses, LongAdder::sum)
+            .description("QR codes generated, as not found in the cache")
+            .tag("result", "miss")
+            .register(registry);
+        Gauge
+            .builder("billetterie.qr.code.cache.size", this, QrCodeService::cacheBytes)
+            .description("Size of the cached QR codes")
+            .baseUnit("bytes")
+            .register(registry);
     }
 
-    // from https://www.baeldung.com/java-resize-image
-    BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
-        Image resultingImage = originalImage.getScaledInstance(
-            targetWidth - 20,
-            targetHeight - 20,
-            Image.SCALE_DEFAULT
-        );
-        BufferedImage outputImage = new BufferedImage(targetWidth, targetHeight, originalImage.getType());
-        var g2d = outputImage.getGraphics();
-        g2d.setColor(java.awt.Color.WHITE);
-        g2d.fillRect(0, 0, targetWidth, targetHeight);
-        g2d.drawImage(resultingImage, 10, 10, null);
-        return outputImage;
+    private byte[] encode(String text) throws IOException {
+        QrCode qrCode = new QrCode();
+        qrCode.setContent(text);
+
+        // the modules are drawn at an integer scale, so they stay sharp
+        int modules = qrCode.getWidth();
+        int scale = Math.max(1, SIZE / (modules + 2 * QUIET_ZONE));
+        int size = (modules + 2 * QUIET_ZONE) * scale;
+        var image = new MonochromeImage(size, size);
+        for (var rectangle : qrCode.getRectangles()) {
+            image.fillBlack(
+                (int) (rectangle.x + QUIET_ZONE) * scale,
+                (int) (rectangle.y + QUIET_ZONE) * scale,
+                (int) rectangle.width * scale,
+                (int) rectangle.height * scale
+            );
+        }
+        return image.toPng();
     }
 }
@@ -0,0 +1,331 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.montrealjug.billetterie.ui.Utils.toPresentationActivityParticipants;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.montrealjug.billetterie.email.DeferredEmailRenderer;
+import org.montrealjug.billetterie.email.EmailModel.Email;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailService;
+import org.montrealjug.billetterie.entity.ActivityParticipant;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.entity.ReminderCampaign;
+import org.montrealjug.billetterie.entity.ReminderCampaign.Segment;
+import org.montrealjug.billetterie.entity.ReminderCampaign.Status;
+import org.montrealjug.billetterie.exception.EntityNotFoundException;
+import org.montrealjug.billetterie.repository.ActivityParticipantRepository;
+import org.montrealjug.billetterie.repository.EventRepository;
+import org.montrealjug.billetterie.repository.ReminderCampaignRepository;
+import org.montrealjug.billetterie.ui.PresentationActivityParticipant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service running the `ReminderCampaign`s in the background, one at a time.
+ * <p>
+ * The bookings of the event are read with one query, then the bookers are processed by chunks:
+ * the QR codes of a chunk are generated in parallel (bounded by `PARALLELISM`), and the emails are queued in the
+ * outbox with the checkpoint of the campaign, in one transaction. A chunk waits while the outbox is full of bulk
+ * emails.
+ * The emails failing to render are counted as failed, and queued as deferred emails instead: the outbox renders them
+ * again when sending them, with its retries.
+ * Campaigns still running when the application stopped are resumed at startup, from their checkpoint.
+ */
+@Service
+public class ReminderCampaignService implements DeferredEmailRenderer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReminderCampaignService.class);
+
+    static final int CHUNK_SIZE = 50;
+    // QR codes are CPU bound, and we run on a small VM
+    static final int PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private final ReminderCampaignRepository reminderCampaignRepository;
+    private final EventRepository eventRepository;
+    private final ActivityParticipantRepository activityParticipantRepository;
+    private final EmailService emailService;
+    private final QrCodeService qrCodeService;
+    private final CheckInTokenService checkInTokenService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService campaignExecutor = Executors.newSingleThreadExecutor(
+        Thread.ofPlatform().name("reminder-campaign").daemon(true).factory()
+    );
+    private final ExecutorService renderingExecutor = Executors.newFixedThreadPool(
+        PARALLELISM,
+        Thread.ofPlatform().name("reminder-campaign-rendering-", 0).daemon(true).factory()
+    );
+
+    public ReminderCampaignService(
+        ReminderCampaignRepository reminderCampaignRepository,
+        EventRepository eventRepository,
+        ActivityParticipantRepository activityParticipantRepository,
+        EmailService emailService,
+        QrCodeService qrCodeService,
+        CheckInTokenService checkInTokenService,
+        TransactionTemplate transactionTemplate
+    ) {
+        this.reminderCampaignRepository = reminderCampaignRepository;
+        this.eventRepository = eventRepository;
+        this.activityParticipantRepository = activityParticipantRepository;
+        this.emailService = emailService;
+        this.qrCodeService = qrCodeService;
+        this.checkInTokenService = checkInTokenService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * @return the started campaign, or empty if a campaign is already running for this event
+     */
+    public Optional<ReminderCampaign> start(long eventId, Segment segment, String baseUrl) {
+        var campaign = transactionTemplate.execute(status -> {
+            if (reminderCampaignRepository.existsByEventIdAndStatus(eventId, Status.RUNNING)) {
+                return null;
+            }
+            var event = eventRepository
+                .findById(eventId)
+                .orElseThrow(() -> new EntityNotFoundException("Event not found"));
+            var newCampaign = new ReminderCampaign();
+            newCampaign.setEvent(event);
+            newCampaign.setSegment(segment);
+            newCampaign.setBaseUrl(baseUrl);
+            return reminderCampaignRepository.save(newCampaign);
+        });
+        if (campaign == null) {
+            return Optional.empty();
+        }
+        LOGGER.info("Reminder campaign {} started for event {}, segment {}", campaign.getId(), eventId, segment);
+        submit(campaign.getId());
+        return Optional.of(campaign);
+    }
+
+    public Optional<ReminderCampaign> findLatest(long eventId) {
+        return reminderCampaignRepository.findFirstByEventIdOrderByCreationTimeDesc(eventId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeRunningCampaigns() {
+        for (var campaign : reminderCampaignRepository.findAllByStatus(Status.RUNNING)) {
+            LOGGER.info("Resuming reminder campaign {} after booker {}", campaign.getId(), campaign.getLastBookerId());
+            submit(campaign.getId());
+        }
+    }
+
+    private void submit(long campaignId) {
+        campaignExecutor.execute(() -> {
+            try {
+                run(campaignId);
+            } catch (InterruptedException e) {
+                // still `RUNNING`, resumed on the next start
+                LOGGER.info("Reminder campaign {} interrupted", campaignId);
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.error("Reminder campaign {} failed", campaignId, e);
+                transactionTemplate.executeWithoutResult(status ->
+                    reminderCampaignRepository
+                        .findById(campaignId)
+                        .ifPresent(campaign -> {
+                            campaign.setStatus(Status.FAILED);
+                            campaign.setCompletionTime(Instant.now());
+                        })
+                );
+            }
+        });
+    }
+
+    private record Recipient(Booker booker, List<PresentationActivityParticipant> participants) {}
+
+    private record Recipients(Event event, int total, List<Recipient> remaining) {}
+
+    private record Rendered(List<Email> emails, List<Recipient> failed) {}
+
+    private record DeferredRecipient(String baseUrl, Event event, Recipient recipient) {}
+
+    void run(long campaignId) throws InterruptedException {
+        var campaign = reminderCampaignRepository.findById(campaignId).orElseThrow();
+        if (campaign.getStatus() != Status.RUNNING) {
+            return;
+        }
+        var recipients = transactionTemplate.execute(status -> findRecipients(campaign));
+        if (campaign.getTotalBookers() == 0) {
+            campaign.setTotalBookers(recipients.total());
+        }
+
+        var remaining = recipients.remaining();
+        for (int from = 0; from < remaining.size(); from += CHUNK_SIZE) {
+            var chunk = remaining.subList(from, Math.min(from + CHUNK_SIZE, remaining.size()));
+            // the campaign goes at the pace of the sent emails
+            emailService.awaitBulkCapacity();
+            var rendered = buildEmails(campaign, recipients.event(), chunk);
+            var lastBookerId = chunk.getLast().booker().getId();
+            // the checkpoint moves with the queued emails, or not at all
+            transactionTemplate.executeWithoutResult(status -> {
+                emailService.sendEmails(rendered.emails());
+                for (var recipient : rendered.failed()) {
+                    emailService.sendLater(
+                        EmailType.LAST_REMINDER,
+                        campaign.getId() + ":" + recipient.booker().getId(),
+                        Instant.now()
+                    );
+                }
+                campaign.setLastBookerId(lastBookerId);
+                campaign.setProcessedBookers(campaign.getProcessedBookers() + chunk.size());
+                campaign.setFailedBookers(campaign.getFailedBookers() + rendered.failed().size());
+                reminderCampaignRepository.save(campaign);
+            });
+        }
+
+        campaign.setStatus(Status.COMPLETED);
+        campaign.setCompletionTime(Instant.now());
+        transactionTemplate.executeWithoutResult(status -> reminderCampaignRepository.save(campaign));
+        LOGGER.info(
+            "Reminder campaign {} completed: {} bookers, {} failed",
+            campaignId,
+            campaign.getProcessedBookers(),
+            campaign.getFailedBookers()
+        );
+    }
+
+    // lazy associations are read here, in the transaction, so the rendering threads only see loaded data
+    private Recipients findRecipients(ReminderCampaign campaign) {
+        var event = eventRepository.findById(campaign.getEvent().getId()).orElseThrow();
+        Map<Long, List<ActivityParticipant>> bookingsByBookerId = new TreeMap<>();
+        for (var booking : activityParticipantRepository.findAllActivityParticipantByEventId(event.getId())) {
+            bookingsByBookerId
+                .computeIfAbsent(booking.getParticipant().getBooker().getId(), id -> new ArrayList<>())
+                .add(booking);
+        }
+
+        var total = 0;
+        var remaining = new ArrayList<Recipient>();
+        for (var entry : bookingsByBookerId.entrySet()) {
+            var bookings = entry.getValue();
+            if (!isInSegment(bookings, campaign.getSegment())) {
+                continue;
+            }
+            total++;
+            var lastBookerId = campaign.getLastBookerId();
+            if (lastBookerId == null || entry.getKey() > lastBookerId) {
+                var booker = bookings.getFirst().getParticipant().getBooker();
+                remaining.add(new Recipient(booker, toPresentationActivityParticipants(bookings)));
+            }
+        }
+        return new Recipients(event, total, remaining);
+    }
+
+    static boolean isInSegment(List<ActivityParticipant> bookings, Segment segment) {
+        return switch (segment) {
+            case ALL -> true;
+            case WAITING_LIST_ONLY -> bookings
+                .stream()
+                .anyMatch(booking -> booking.getActivity().getWaitingParticipants().contains(booking));
+            case NOT_CHECKED_IN -> bookings.stream().anyMatch(booking -> booking.getCheckInTime() == null);
+        };
+    }
+
+    private Rendered buildEmails(ReminderCampaign campaign, Event event, List<Recipient> chunk)
+        throws InterruptedException {
+        var tasks = new ArrayList<Callable<Email>>();
+        for (var recipient : chunk) {
+            tasks.add(() -> lastReminder(campaign.getBaseUrl(), event, recipient));
+        }
+        var emails = new ArrayList<Email>();
+        var failed = new ArrayList<Recipient>();
+        List<Future<Email>> futures = renderingExecutor.invokeAll(tasks);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                emails.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                LOGGER.error(
+                    "Reminder campaign {}: error preparing the email of {}, deferred: {}",
+                    campaign.getId(),
+                    chunk.get(i).booker().getEmail(),
+                    e.getCause().getMessage()
+                );
+                failed.add(chunk.get(i));
+            }
+        }
+        return new Rendered(emails, failed);
+    }
+
+    private Email lastReminder(String baseUrl, Event event, Recipient recipient) throws IOException {
+        return Email.lastReminder(
+            recipient.booker(),
+            recipient.participants(),
+            event,
+            baseUrl,
+            qrCodeService.generateQrCode(checkInTokenService.checkInUrl(baseUrl, event, recipient.booker()))
+        );
+    }
+
+    @Override
+    public EmailType type() {
+        return EmailType.LAST_REMINDER;
+    }
+
+    /**
+     * Renders the email of a booker failing to render during its campaign, with its bookings at that time.
+     */
+    @Override
+    public Optional<Email> render(String coalescingKey) {
+        var ids = coalescingKey.split(":");
+        var campaignId = Long.parseLong(ids[0]);
+        var bookerId = Long.parseLong(ids[1]);
+        // lazy associations are read while mapping to the presentation records
+        var recipient = transactionTemplate.execute(status ->
+            reminderCampaignRepository
+                .findById(campaignId)
+                .flatMap(campaign -> {
+                    var event = eventRepository.findById(campaign.getEvent().getId()).orElseThrow();
+                    var bookings = activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(
+                        event.getId(),
+                        bookerId
+                    );
+                    // left the event, or the segment, in the meantime
+                    if (bookings.isEmpty() || !isInSegment(bookings, campaign.getSegment())) {
+                        return Optional.empty();
+                    }
+                    var booker = bookings.getFirst().getParticipant().getBooker();
+                    return Optional.of(
+                        new DeferredRecipient(
+                            campaign.getBaseUrl(),
+                            event,
+                            new Recipient(booker, toPresentationActivityParticipants(bookings))
+                        )
+                    );
+                })
+        );
+        return recipient.map(deferred -> {
+            try {
+                return lastReminder(deferred.baseUrl(), deferred.event(), deferred.recipient());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // an interrupted chunk is rolled back, and will be processed again on the next start
+        campaignExecutor.shutdownNow();
+        renderingExecutor.shutdownNow();
+    }
+}
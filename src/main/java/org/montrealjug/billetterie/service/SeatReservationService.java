@@ -0,0 +1,109 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import org.montrealjug.billetterie.entity.Participant;
+import org.montrealjug.billetterie.exception.EntityNotFoundException;
+import org.montrealjug.billetterie.repository.ActivityParticipantRepository;
+import org.montrealjug.billetterie.repository.ActivityRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Service for taking and giving back seats in an `Activity`, without loading its participants.
+ * <p>
+ * A seat is taken with a single conditional update on `Activity.registeredParticipants`:
+ * concurrent registrations are serialized by the row lock, so an activity never goes over
+ * `maxParticipants + maxWaitingQueue`.
+ * The bulk queries don't go through the JPA listeners, so the registration is applied to the snapshot of the active
+ * event here.
+ */
+@Service
+public class SeatReservationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SeatReservationService.class);
+
+    public enum Reservation {
+        RESERVED,
+        ALREADY_REGISTERED,
+        FULL,
+    }
+
+    private final ActivityRepository activityRepository;
+    private final ActivityParticipantRepository activityParticipantRepository;
+    private final ActiveEventService activeEventService;
+
+    public SeatReservationService(
+        ActivityRepository activityRepository,
+        ActivityParticipantRepository activityParticipantRepository,
+        ActiveEventService activeEventService
+    ) {
+        this.activityRepository = activityRepository;
+        this.activityParticipantRepository = activityParticipantRepository;
+        this.activeEventService = activeEventService;
+    }
+
+    @Transactional
+    public Reservation reserveSeat(long activityId, Participant participant) {
+        if (activityRepository.reserveSeat(activityId) == 0) {
+            // only look for the activity on the unhappy path
+            if (!activityRepository.existsById(activityId)) {
+                throw new EntityNotFoundException("Activity not found: " + activityId);
+            }
+            return Reservation.FULL;
+        }
+        // the precision of the DB, for the same order in the snapshot of the active event
+        var registrationTime = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        if (activityParticipantRepository.insertIfAbsent(activityId, participant.getId(), registrationTime) == 0) {
+            // the participant already had a seat, give back the one we just took
+            activityRepository.releaseSeat(activityId);
+            return Reservation.ALREADY_REGISTERED;
+        }
+        activeEventService.registered(activityId, participant, registrationTime);
+        return Reservation.RESERVED;
+    }
+
+    /**
+     * The result of `releaseSeat`, with the waiting participant who got the seat, if any.
+     */
+    public record Release(boolean released, Optional<Long> upgradedParticipantId) {
+        static final Release NOT_REGISTERED = new Release(false, Optional.empty());
+    }
+
+    /**
+     * Gives back the seat of the participant. The participant moved up from the waiting queue is looked up after the
+     * counter update, under the row lock of the activity: concurrent removals each see the roster left by the
+     * previous ones, and never pick the same participant.
+     */
+    @Transactional
+    public Release releaseSeat(long activityId, long participantId) {
+        // the registration time of a registration never changes, the delete below checks it is still there
+        var registrationTime = activityParticipantRepository.findRegistrationTime(activityId, participantId);
+        if (
+            registrationTime.isEmpty() ||
+            activityParticipantRepository.deleteByActivityIdAndParticipantId(activityId, participantId) == 0
+        ) {
+            return Release.NOT_REGISTERED;
+        }
+        activityRepository.releaseSeat(activityId);
+        activeEventService.unregistered(activityId, participantId);
+        return new Release(
+            true,
+            activityParticipantRepository.findParticipantIdUpgradedAfter(activityId, registrationTime.get())
+        );
+    }
+
+    // participants added or removed through the `Activity` aggregate (admin, test data) don't touch the counters
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void resyncRegisteredParticipants() {
+        var updated = activityRepository.resyncRegisteredParticipants();
+        LOGGER.info("Registered participants counters resynced for {} activities", updated);
+    }
+}
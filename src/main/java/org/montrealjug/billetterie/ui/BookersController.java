@@ -2,37 +2,41 @@
 package org.montrealjug.billetterie.ui;
 
 import static org.montrealjug.billetterie.ui.RegistrationController.retrieveBaseUrl;
-import static org.montrealjug.billetterie.ui.Utils.toPresentationActivityParticipants;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
-import java.io.IOException;
 import java.net.URI;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
-import org.montrealjug.billetterie.email.EmailModel;
+import org.montrealjug.billetterie.config.BilletterieProperties;
+import org.montrealjug.billetterie.email.EmailModel.Email;
 import org.montrealjug.billetterie.email.EmailService;
-import org.montrealjug.billetterie.entity.ActivityParticipant;
 import org.montrealjug.billetterie.entity.Booker;
 import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.entity.ReminderCampaign;
+import org.montrealjug.billetterie.entity.ReminderCampaign.Segment;
 import org.montrealjug.billetterie.exception.EntityNotFoundException;
 import org.montrealjug.billetterie.exception.RedirectableNotFoundException;
 import org.montrealjug.billetterie.repository.ActivityParticipantRepository;
 import org.montrealjug.billetterie.repository.BookerRepository;
 import org.montrealjug.billetterie.repository.EventRepository;
-import org.montrealjug.billetterie.service.QrCodeService;
+import org.montrealjug.billetterie.service.BookerCache;
+import org.montrealjug.billetterie.service.ReminderCampaignService;
 import org.montrealjug.billetterie.service.SignatureService;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
 @Controller
 @RequestMapping("admin/bookers")
@@ -42,23 +46,32 @@ public class BookersController {
     private final SignatureService signatureService;
     private final EventRepository eventRepository;
     private final ActivityParticipantRepository activityParticipantRepository;
-    private final QrCodeService qrCodeService;
+    private final ReminderCampaignService reminderCampaignService;
+    private final BookerCache bookerCache;
     private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final String baseUrl;
 
     public BookersController(
         BookerRepository bookerRepository,
         SignatureService signatureService,
         EventRepository eventRepository,
         ActivityParticipantRepository activityParticipantRepository,
+        ReminderCampaignService reminderCampaignService,
+        BookerCache bookerCache,
         EmailService emailService,
-        QrCodeService qrCodeService
+        TransactionTemplate transactionTemplate,
+        BilletterieProperties billetterieProperties
     ) {
         this.bookerRepository = bookerRepository;
-        this.qrCodeService = qrCodeService;
-        this.emailService = emailService;
+        this.reminderCampaignService = reminderCampaignService;
         this.signatureService = signatureService;
         this.eventRepository = eventRepository;
         this.activityParticipantRepository = activityParticipantRepository;
+        this.bookerCache = bookerCache;
+        this.emailService = emailService;
+        this.transactionTemplate = transactionTemplate;
+        this.baseUrl = billetterieProperties.baseUrl();
     }
 
     @GetMapping("")
@@ -71,6 +84,7 @@ public class BookersController {
                 .stream(bookers.spliterator(), false)
                 .map(booker ->
                     new PresentationBookerWithParticipants(
+                        booker.getId(),
                         booker.getFirstName(),
                         booker.getLastName(),
                         booker.getEmail(),
@@ -81,9 +95,9 @@ public class BookersController {
                                 Collectors.toMap(
                                     event -> event,
                                     event ->
-                                        activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerEmail(
+                                        activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(
                                             event.getId(),
-                                            booker.getEmail()
+                                            booker.getId()
                                         )
                                 )
                             )
@@ -93,6 +107,14 @@ public class BookersController {
 
         model.addAttribute("bookerList", presentationBookers);
         model.addAttribute("allEvents", StreamSupport.stream(allEvents.spliterator(), false).toList());
+        model.addAttribute(
+            "reminderCampaign",
+            eventRepository
+                .findByActiveIsTrue()
+                .flatMap(event -> reminderCampaignService.findLatest(event.getId()))
+                .map(ReminderCampaignProgress::of)
+                .orElse(null)
+        );
 
         return "bookers-list";
     }
@@ -103,7 +125,7 @@ public class BookersController {
 
         String email = booker.email().toLowerCase();
 
-        if (bookerRepository.existsById(email)) {
+        if (bookerRepository.existsByEmail(email)) {
             throw new RuntimeException("User with this email already exists");
         }
 
@@ -123,12 +145,12 @@ public class BookersController {
         return "bookers-create-update";
     }
 
-    @GetMapping("{email}")
-    public String showUpdateBookerPage(Model model, @PathVariable String email) {
-        Optional<Booker> optionalBooker = this.bookerRepository.findById(email);
+    @GetMapping("{id}")
+    public String showUpdateBookerPage(Model model, @PathVariable long id) {
+        Optional<Booker> optionalBooker = this.bookerRepository.findById(id);
 
         if (optionalBooker.isEmpty()) {
-            throw new EntityNotFoundException("Booker with email " + email + " not found", "bookers-create-update");
+            throw new EntityNotFoundException("Booker with id " + id + " not found", "bookers-create-update");
         }
 
         Booker booker = optionalBooker.get();
@@ -138,80 +160,127 @@ public class BookersController {
             booker.getEmail()
         );
         model.addAttribute("booker", presentationBooker);
+        model.addAttribute("bookerId", booker.getId());
 
         return "bookers-create-update";
     }
 
+    public record ReminderCampaignProgress(
+        long id,
+        Segment segment,
+        ReminderCampaign.Status status,
+        int totalBookers,
+        int processedBookers,
+        int failedBookers
+    ) {
+        static ReminderCampaignProgress of(ReminderCampaign campaign) {
+            return new ReminderCampaignProgress(
+                campaign.getId(),
+                campaign.getSegment(),
+                campaign.getStatus(),
+                campaign.getTotalBookers(),
+                campaign.getProcessedBookers(),
+                campaign.getFailedBookers()
+            );
+        }
+    }
+
     @PostMapping("/sendReminderEmail")
-    public ResponseEntity<Void> sendReminderEmail(HttpServletRequest request) {
-        eventRepository
+    public ResponseEntity<?> sendReminderEmail(
+        @RequestParam(defaultValue = "ALL") Segment segment,
+        HttpServletRequest request
+    ) {
+        var event = eventRepository.findByActiveIsTrue();
+        if (event.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("{\"message\":\"No active event\"}");
+        }
+        // the emails are prepared and queued in the background, see `ReminderCampaignService`
+        return reminderCampaignService
+            .start(event.get().getId(), segment, retrieveBaseUrl(request))
+            .<ResponseEntity<?>>map(campaign ->
+                ResponseEntity.status(HttpStatus.CREATED).body(ReminderCampaignProgress.of(campaign))
+            )
+            .orElseGet(() ->
+                ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .body("{\"message\":\"A reminder campaign is already running for this event\"}")
+            );
+    }
+
+    @GetMapping("/reminder-campaigns/latest")
+    public ResponseEntity<ReminderCampaignProgress> latestReminderCampaign() {
+        return eventRepository
             .findByActiveIsTrue()
-            .ifPresent(event ->
-                bookerRepository
-                    .findAll()
-                    .forEach(booker -> {
-                        List<ActivityParticipant> bookings =
-                            activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerEmail(
-                                event.getId(),
-                                booker.getEmail()
-                            );
-                        if (!bookings.isEmpty()) {
-                            try {
-                                emailService.sendEmail(
-                                    EmailModel.Email.lastReminder(
-                                        booker,
-                                        toPresentationActivityParticipants(bookings),
-                                        event,
-                                        retrieveBaseUrl(request),
-                                        qrCodeService.generateQrCode(
-                                            retrieveBaseUrl(request) + "/admin/bookings/" + booker.getEmailSignature()
-                                        )
-                                    )
-                                );
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    })
+            .flatMap(event -> reminderCampaignService.findLatest(event.getId()))
+            .map(campaign -> ResponseEntity.ok(ReminderCampaignProgress.of(campaign)))
+            .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    @PostMapping("{id}")
+    public ResponseEntity<Void> updateBooker(@PathVariable long id, @Valid PresentationBooker presentationBooker)
+        throws Exception {
+        String updatedEmail = null;
+        String updatedSignature = null;
+        if (presentationBooker.email() != null && !presentationBooker.email().isBlank()) {
+            updatedEmail = presentationBooker.email().toLowerCase().trim();
+            updatedSignature = signatureService.signAndTrim(updatedEmail);
+        }
+        var email = updatedEmail;
+        var signature = updatedSignature;
+        try {
+            // the change and the email to the new address are committed together
+            transactionTemplate.executeWithoutResult(status ->
+                applyBookerChanges(id, presentationBooker, email, signature)
             );
+        } catch (DataIntegrityViolationException e) {
+            // the email was taken by a concurrent change, after the check
+            throw new RuntimeException("User with this email already exists", e);
+        }
 
-        return ResponseEntity.status(HttpStatus.CREATED).build();
+        return ResponseEntity.status(HttpStatus.FOUND).location(URI.create("/admin/bookers")).build();
     }
 
-    @PostMapping("{email}")
-    public ResponseEntity<Void> updateBooker(@PathVariable String email, @Valid PresentationBooker presentationBooker) {
-        Optional<Booker> optionalBooker = bookerRepository.findById(email);
+    private void applyBookerChanges(
+        long id,
+        PresentationBooker presentationBooker,
+        String updatedEmail,
+        String updatedSignature
+    ) {
+        Optional<Booker> optionalBooker = bookerRepository.findById(id);
 
         if (optionalBooker.isEmpty()) {
-            throw new RedirectableNotFoundException(
-                "Booker with email " + email + " not found",
-                "/admin/bookers/" + email
-            );
+            throw new RedirectableNotFoundException("Booker with id " + id + " not found", "/admin/bookers/" + id);
         }
 
         Booker booker = optionalBooker.get();
 
+        // the email is not the id, its participants keep referencing the booker when it changes
+        var emailChanged = false;
+        if (updatedEmail != null) {
+            if (!booker.getEmail().equals(updatedEmail)) {
+                if (bookerRepository.existsByEmail(updatedEmail)) {
+                    throw new RuntimeException("User with this email already exists");
+                }
+
+                // the booking links sent to the previous email stop working with its signature,
+                // the check-in QR codes reference the booker by its id and keep working
+                bookerCache.invalidate(booker.getEmailSignature());
+                booker.setEmail(updatedEmail);
+                booker.setEmailSignature(updatedSignature);
+                // the admin vouches for the new email, as for the bookers they add
+                booker.setValidationTime(Instant.now());
+                emailChanged = true;
+            }
+        }
+
         booker.setFirstName(presentationBooker.firstName());
         booker.setLastName(presentationBooker.lastName());
 
-        //         TODO allow changing user's email address (currently unable since email is the
-        // primary key
-        //         of Booker)
-
-        //        String updatedEmail = presentationBooker.email();
-        //        if (!email.equals(updatedEmail)) {
-        //            if (bookerRepository.existsById(updatedEmail)) {
-        //                throw new RuntimeException("User with this email already exists");
-        //            }
-        //
-        //            booker.setEmail(updatedEmail);
-        //            booker.setEmailSignature(signatureService.signAndTrim(updatedEmail));
-        //            booker.setValidationTime(Instant.now());
-        //        }
-
         bookerRepository.save(booker);
-
-        // return to the new email as url path variable if changed
-        return ResponseEntity.status(HttpStatus.FOUND).location(URI.create("/admin/bookers")).build();
+        bookerCache.invalidate(booker.getEmailSignature());
+        if (emailChanged) {
+            // the new booking link, to the new email
+            emailService.sendEmail(Email.returningBooker(booker, baseUrl));
+        }
     }
 }
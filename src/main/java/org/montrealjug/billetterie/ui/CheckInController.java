@@ -1,8 +1,7 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.ui;
 
-import static org.montrealjug.billetterie.ui.Utils.*;
-
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.constraints.NotNull;
 import java.time.Instant;
 import java.util.Optional;
@@ -10,7 +9,11 @@ import org.montrealjug.billetterie.entity.*;
 import org.montrealjug.billetterie.exception.EntityNotFoundException;
 import org.montrealjug.billetterie.repository.ActivityRepository;
 import org.montrealjug.billetterie.repository.BookerRepository;
-import org.montrealjug.billetterie.repository.EventRepository;
+import org.montrealjug.billetterie.service.ActiveEventService;
+import org.montrealjug.billetterie.service.ActiveEventService.Snapshot;
+import org.montrealjug.billetterie.service.CheckInTokenService;
+import org.montrealjug.billetterie.service.KnownBookers;
+import org.montrealjug.billetterie.service.QrCodeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -25,54 +28,83 @@ public class CheckInController {
     private static final Logger LOGGER = LoggerFactory.getLogger(CheckInController.class.getName());
 
     private final BookerRepository bookerRepository;
-    private final EventRepository eventRepository;
     private final ActivityRepository activityRepository;
+    private final QrCodeService qrCodeService;
+    private final CheckInTokenService checkInTokenService;
+    private final KnownBookers knownBookers;
+    private final ActiveEventService activeEventService;
 
     public CheckInController(
         BookerRepository bookerRepository,
-        EventRepository eventRepository,
-        ActivityRepository activityRepository
+        ActivityRepository activityRepository,
+        QrCodeService qrCodeService,
+        CheckInTokenService checkInTokenService,
+        KnownBookers knownBookers,
+        ActiveEventService activeEventService
     ) {
         this.bookerRepository = bookerRepository;
-        this.eventRepository = eventRepository;
         this.activityRepository = activityRepository;
+        this.qrCodeService = qrCodeService;
+        this.checkInTokenService = checkInTokenService;
+        this.knownBookers = knownBookers;
+        this.activeEventService = activeEventService;
     }
 
     public record CheckInRequest(@NotNull Long activityId, @NotNull Long participantId, boolean checked) {}
 
+    /**
+     * Check-in page of the QR codes sent before the check-in tokens.
+     */
     @GetMapping("/admin/bookings/{signature}")
-    public String startCheckIn(@PathVariable String signature, Model model) {
+    public String startCheckIn(@PathVariable String signature, Model model, HttpServletRequest request) {
+        if (!knownBookers.mightExistByEmailSignature(signature)) {
+            throw new EntityNotFoundException("Booker or Event not found");
+        }
         Optional<Booker> optionalBooker = bookerRepository.findByEmailSignature(signature);
-        Optional<Event> optionalEvent = eventRepository.findByActiveIsTrue();
+        Optional<Snapshot> optionalEvent = activeEventService.snapshot();
 
         // we found the Booker, and there is an active Event, so admin can check in participants
         if (optionalBooker.isPresent() && optionalEvent.isPresent()) {
-            var booker = optionalBooker.get();
-            var bookerParticipants = booker.getParticipants();
-            var event = optionalEvent.get();
-            // Create presentation event
-            PresentationEvent presentationEvent = new PresentationEvent(
-                event.getId(),
-                event.getTitle(),
-                markdownToHtml(event.getDescription()),
-                event.getDate(),
-                toPresentationActivitiesLimitedToBooker(event.getActivities(), bookerParticipants),
-                event.isActive(),
-                event.getImagePath(),
-                event.getLocation()
-            );
-
-            // Add attributes to model
-            model.addAttribute("event", presentationEvent);
-            model.addAttribute("booker", booker);
-
-            // Return checkin template
-            return "checkin";
+            return checkIn(optionalBooker.get(), optionalEvent.get(), model, request);
         } else {
             throw new org.montrealjug.billetterie.exception.EntityNotFoundException("Booker or Event not found");
         }
     }
 
+    @GetMapping("/admin/check-in/{token}")
+    public String startCheckInWithToken(@PathVariable String token, Model model, HttpServletRequest request) {
+        // forged and expired tokens are rejected without any query
+        var checkInToken = checkInTokenService
+            .verify(token)
+            .orElseThrow(() -> new EntityNotFoundException("Invalid or expired check-in QR code"));
+        var booker = bookerRepository.findById(checkInToken.bookerId()).orElse(null);
+        var event = activeEventService.snapshot().orElse(null);
+        if (booker == null || event == null || event.event().getId() != checkInToken.eventId()) {
+            throw new EntityNotFoundException("Booker or Event not found");
+        }
+        return checkIn(booker, event, model, request);
+    }
+
+    private String checkIn(Booker booker, Snapshot activeEvent, Model model, HttpServletRequest request) {
+        // Add attributes to model
+        model.addAttribute("event", activeEvent.limitedToBooker(booker.getParticipants()));
+        model.addAttribute("booker", booker);
+        // the QR code of this page, as in the emails
+        model.addAttribute(
+            "qrCodeSvg",
+            qrCodeService.generateSvgQrCode(
+                checkInTokenService.checkInUrl(
+                    RegistrationController.retrieveBaseUrl(request),
+                    activeEvent.event(),
+                    booker
+                )
+            )
+        );
+
+        // Return checkin template
+        return "checkin";
+    }
+
     @PutMapping("/admin/bookings/checkin")
     public ResponseEntity<?> checkInParticipant(@RequestBody CheckInRequest checkInRequest) {
         try {
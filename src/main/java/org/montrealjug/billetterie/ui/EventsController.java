@@ -12,6 +12,7 @@ import org.montrealjug.billetterie.entity.Activity;
 import org.montrealjug.billetterie.entity.Event;
 import org.montrealjug.billetterie.exception.EntityNotFoundException;
 import org.montrealjug.billetterie.exception.RedirectableNotFoundException;
+import org.montrealjug.billetterie.exception.RequestException;
 import org.montrealjug.billetterie.repository.ActivityRepository;
 import org.montrealjug.billetterie.repository.EventRepository;
 import org.springframework.http.HttpStatus;
@@ -41,12 +42,14 @@ public class EventsController {
             PresentationEvent presentationEvent = new PresentationEvent(
                 event.getId(),
                 event.getTitle(),
-                markdownToHtml(event.getDescription()),
+                descriptionHtml(event),
                 event.getDate(),
                 toPresentationActivities(event.getActivities()),
                 event.isActive(),
                 event.getImagePath(),
-                event.getLocation()
+                event.getLocation(),
+                event.getRegistrationMode(),
+                event.getLotteryDrawTime()
             );
             presentationEvents.add(presentationEvent);
         });
@@ -57,11 +60,14 @@ public class EventsController {
 
     @PostMapping
     public ResponseEntity<Void> createEvents(@Valid PresentationEvent event) {
+        requireLotteryDrawTime(event);
         Event entity = new Event();
         entity.setDescription(event.description());
         entity.setTitle(event.title());
         entity.setDate(event.date());
         entity.setLocation(event.location());
+        entity.setRegistrationMode(event.registrationMode());
+        entity.setLotteryDrawTime(event.lotteryDrawTime());
         eventRepository.save(entity);
 
         return ResponseEntity.status(HttpStatus.FOUND).location(URI.create("/admin/events")).build();
@@ -82,7 +88,9 @@ public class EventsController {
                     Collections.emptyList(),
                     event.isActive(),
                     event.getImagePath(),
-                    event.getLocation()
+                    event.getLocation(),
+                    event.getRegistrationMode(),
+                    event.getLotteryDrawTime()
                 );
         } else {
             throw new EntityNotFoundException("Event with id " + id + " not found", "events-create-update");
@@ -93,6 +101,7 @@ public class EventsController {
 
     @PostMapping("{id}")
     public ResponseEntity<Void> updateEvent(@Valid PresentationEvent presentationEvent, @PathVariable long id) {
+        requireLotteryDrawTime(presentationEvent);
         Optional<Event> optionalEvent = this.eventRepository.findById(id);
 
         if (optionalEvent.isPresent()) {
@@ -102,6 +111,8 @@ public class EventsController {
             event.setDate(presentationEvent.date());
             event.setLocation(presentationEvent.location());
             event.setActive(presentationEvent.active() != null ? presentationEvent.active() : false);
+            event.setRegistrationMode(presentationEvent.registrationMode());
+            event.setLotteryDrawTime(presentationEvent.lotteryDrawTime());
             eventRepository.save(event);
         } else {
             throw new RedirectableNotFoundException("Event with id " + id + " not found", "/admin/events/" + id);
@@ -110,6 +121,17 @@ public class EventsController {
         return ResponseEntity.status(HttpStatus.FOUND).location(URI.create("/admin/events")).build();
     }
 
+    // a lottery without a draw time would never be drawn
+    private static void requireLotteryDrawTime(PresentationEvent event) {
+        if (event.registrationMode() == Event.RegistrationMode.LOTTERY && event.lotteryDrawTime() == null) {
+            throw new RequestException(
+                "A lottery event needs a draw time",
+                HttpStatus.BAD_REQUEST,
+                "events-create-update"
+            );
+        }
+    }
+
     @DeleteMapping("{id}")
     public ResponseEntity<Void> delete(@PathVariable long id) {
         Optional<Event> optionalEvent = this.eventRepository.findById(id);
@@ -244,12 +266,14 @@ public class EventsController {
         PresentationEvent presentationEvent = new PresentationEvent(
             event.getId(),
             event.getTitle(),
-            markdownToHtml(event.getDescription()),
+            descriptionHtml(event),
             event.getDate(),
             toPresentationActivities(event.getActivities()),
             event.isActive(),
             event.getImagePath(),
-            event.getLocation()
+            event.getLocation(),
+            event.getRegistrationMode(),
+            event.getLotteryDrawTime()
         );
 
         model.addAttribute("event", presentationEvent);
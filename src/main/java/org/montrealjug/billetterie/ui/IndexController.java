@@ -1,44 +1,138 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.ui;
 
-import static org.montrealjug.billetterie.ui.Utils.markdownToHtml;
-import static org.montrealjug.billetterie.ui.Utils.toPresentationActivities;
-
-import java.util.Optional;
-import org.montrealjug.billetterie.entity.Event;
-import org.montrealjug.billetterie.repository.EventRepository;
+import gg.jte.TemplateEngine;
+import gg.jte.output.Utf8ByteOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+import org.montrealjug.billetterie.service.ActiveEventService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.context.request.ServletWebRequest;
 
+/**
+ * The index page is the same for everyone, and only changes with the active event: it is rendered once per version
+ * of the active event. The requests arriving during the render wait for it, the next ones get its output.
+ * <p>
+ * The output is also compressed once with gzip, and served as is to the browsers accepting it.
+ */
 @Controller
 public class IndexController {
 
-    private final EventRepository eventRepository;
+    private static final MediaType TEXT_HTML_UTF8 = new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+
+    private record Page(byte[] html, byte[] gzippedHtml) {}
+
+    private record RenderedIndex(String version, CompletableFuture<Page> page) {}
 
-    public IndexController(EventRepository eventRepository) {
-        this.eventRepository = eventRepository;
+    private final ActiveEventService activeEventService;
+    private final TemplateEngine templateEngine;
+    // the index of the last version, rendered or being rendered
+    private final AtomicReference<RenderedIndex> rendered = new AtomicReference<>();
+
+    public IndexController(ActiveEventService activeEventService, TemplateEngine templateEngine) {
+        this.activeEventService = activeEventService;
+        this.templateEngine = templateEngine;
     }
 
     @GetMapping("/")
-    public String index(Model model) {
-        Optional<Event> optionalEvent = this.eventRepository.findByActiveIsTrue();
-
-        if (optionalEvent.isPresent()) {
-            Event event = optionalEvent.get();
-            PresentationEvent presentationEvent = new PresentationEvent(
-                event.getId(),
-                event.getTitle(),
-                markdownToHtml(event.getDescription()),
-                event.getDate(),
-                toPresentationActivities(event.getActivities()),
-                event.isActive(),
-                event.getImagePath(),
-                event.getLocation()
-            );
-            model.addAttribute("event", presentationEvent);
+    public ResponseEntity<byte[]> index(ServletWebRequest request) {
+        if (request.getResponse() != null) {
+            request.getResponse().setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        // the version is read before the snapshot, so the page is never older than its version
+        var version = activeEventService.version();
+        // a refresh gets a `304` until the active event changes
+        if (Utils.checkNotModified(request, version)) {
+            return null;
         }
+        var page = render(version);
+        if (acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return ResponseEntity
+                .ok()
+                .contentType(TEXT_HTML_UTF8)
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body(page.gzippedHtml());
+        }
+        return ResponseEntity.ok().contentType(TEXT_HTML_UTF8).body(page.html());
+    }
 
-        return "index";
+    // `gzip`, or `*` when gzip is not listed, unless refused with `q=0`
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        var anyAccepted = false;
+        for (var coding : acceptEncoding.split(",")) {
+            var parameters = coding.split(";");
+            var name = parameters[0].trim();
+            var accepted = true;
+            for (int i = 1; i < parameters.length; i++) {
+                var parameter = parameters[i].replace(" ", "");
+                if (parameter.startsWith("q=") && parameter.substring(2).matches("0(\\.0{0,3})?")) {
+                    accepted = false;
+                }
+            }
+            if (name.equalsIgnoreCase("gzip")) {
+                return accepted;
+            }
+            if (name.equals("*")) {
+                anyAccepted = accepted;
+            }
+        }
+        return anyAccepted;
+    }
+
+    private Page render(String version) {
+        while (true) {
+            var current = rendered.get();
+            if (current != null && current.version().equals(version)) {
+                return current.page().join();
+            }
+            var rendering = new RenderedIndex(version, new CompletableFuture<>());
+            // only the request setting the render does it, the others wait for it
+            if (rendered.compareAndSet(current, rendering)) {
+                try {
+                    rendering.page().complete(renderIndex());
+                } catch (RuntimeException e) {
+                    // the waiting requests fail with it, the next one renders again
+                    rendered.compareAndSet(rendering, null);
+                    rendering.page().completeExceptionally(e);
+                    throw e;
+                }
+                return rendering.page().join();
+            }
+        }
+    }
+
+    private Page renderIndex() {
+        // rendered from the snapshot of the active event, without any query
+        Map<String, Object> model = activeEventService
+            .snapshot()
+            .<Map<String, Object>>map(activeEvent -> Map.of("event", activeEvent.presentationEvent()))
+            .orElse(Map.of());
+        var output = new Utf8ByteOutput();
+        templateEngine.render("index.jte", model, output);
+        var html = output.toByteArray();
+        return new Page(html, gzip(html));
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        var compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try (var gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
     }
 }
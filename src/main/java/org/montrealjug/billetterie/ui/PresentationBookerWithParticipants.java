@@ -7,6 +7,7 @@ import org.montrealjug.billetterie.entity.ActivityParticipant;
 import org.montrealjug.billetterie.entity.Event;
 
 public record PresentationBookerWithParticipants(
+    long id,
     String firstName,
     String lastName,
     String email,
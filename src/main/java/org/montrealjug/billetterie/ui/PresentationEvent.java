@@ -3,7 +3,10 @@ package org.montrealjug.billetterie.ui;
 
 import jakarta.annotation.Nullable;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import org.montrealjug.billetterie.entity.Event.RegistrationMode;
+import org.springframework.format.annotation.DateTimeFormat;
 
 public record PresentationEvent(
     Long id,
@@ -13,5 +16,7 @@ public record PresentationEvent(
     List<PresentationActivity> activities,
     Boolean active,
     @Nullable String imagePath,
-    String location
+    String location,
+    @Nullable RegistrationMode registrationMode,
+    @Nullable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime lotteryDrawTime
 ) {}
@@ -8,9 +8,17 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.montrealjug.billetterie.config.BilletterieProperties;
 import org.montrealjug.billetterie.email.EmailModel.Email;
 import org.montrealjug.billetterie.email.EmailService;
 import org.montrealjug.billetterie.entity.*;
@@ -20,16 +28,29 @@ import org.montrealjug.billetterie.repository.ActivityRepository;
 import org.montrealjug.billetterie.repository.BookerRepository;
 import org.montrealjug.billetterie.repository.EventRepository;
 import org.montrealjug.billetterie.repository.ParticipantRepository;
+import org.montrealjug.billetterie.service.ActiveEventService;
+import org.montrealjug.billetterie.service.BookerCache;
+import org.montrealjug.billetterie.service.CheckInTokenService;
+import org.montrealjug.billetterie.service.KnownBookers;
+import org.montrealjug.billetterie.service.LotteryService;
+import org.montrealjug.billetterie.service.ParticipantUpgradeNotifier;
+import org.montrealjug.billetterie.service.ParticipantsChangesNotifier;
 import org.montrealjug.billetterie.service.QrCodeService;
+import org.montrealjug.billetterie.service.SeatReservationService;
+import org.montrealjug.billetterie.service.SeatReservationService.Reservation;
 import org.montrealjug.billetterie.service.SignatureService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.ui.Model;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @Controller
 public class RegistrationController {
@@ -44,6 +65,16 @@ public class RegistrationController {
     private final ActivityRepository activityRepository;
     private final ActivityParticipantRepository activityParticipantRepository;
     private final ParticipantRepository participantRepository;
+    private final SeatReservationService seatReservationService;
+    private final LotteryService lotteryService;
+    private final ParticipantsChangesNotifier participantsChangesNotifier;
+    private final ParticipantUpgradeNotifier participantUpgradeNotifier;
+    private final CheckInTokenService checkInTokenService;
+    private final KnownBookers knownBookers;
+    private final BookerCache bookerCache;
+    private final ActiveEventService activeEventService;
+    private final TransactionTemplate transactionTemplate;
+    private final String baseUrl;
 
     public RegistrationController(
         BookerRepository bookerRepository,
@@ -53,7 +84,17 @@ public class RegistrationController {
         EventRepository eventRepository,
         ActivityRepository activityRepository,
         ActivityParticipantRepository activityParticipantRepository,
-        ParticipantRepository participantRepository
+        ParticipantRepository participantRepository,
+        SeatReservationService seatReservationService,
+        LotteryService lotteryService,
+        ParticipantsChangesNotifier participantsChangesNotifier,
+        ParticipantUpgradeNotifier participantUpgradeNotifier,
+        CheckInTokenService checkInTokenService,
+        KnownBookers knownBookers,
+        BookerCache bookerCache,
+        ActiveEventService activeEventService,
+        TransactionTemplate transactionTemplate,
+        BilletterieProperties billetterieProperties
     ) {
         this.bookerRepository = bookerRepository;
         this.signatureService = signatureService;
@@ -63,6 +104,16 @@ public class RegistrationController {
         this.activityRepository = activityRepository;
         this.activityParticipantRepository = activityParticipantRepository;
         this.participantRepository = participantRepository;
+        this.seatReservationService = seatReservationService;
+        this.lotteryService = lotteryService;
+        this.participantsChangesNotifier = participantsChangesNotifier;
+        this.participantUpgradeNotifier = participantUpgradeNotifier;
+        this.checkInTokenService = checkInTokenService;
+        this.knownBookers = knownBookers;
+        this.bookerCache = bookerCache;
+        this.activeEventService = activeEventService;
+        this.transactionTemplate = transactionTemplate;
+        this.baseUrl = billetterieProperties.baseUrl();
     }
 
     public record BookerCheck(@NotBlank String email) {}
@@ -72,8 +123,12 @@ public class RegistrationController {
         @RequestBody @Valid BookerCheck bookerCheck,
         HttpServletRequest request
     ) {
+        var email = bookerCheck.email().toLowerCase().trim();
+        if (!knownBookers.mightExistByEmail(email)) {
+            return ResponseEntity.notFound().build();
+        }
         return bookerRepository
-            .findById(bookerCheck.email().toLowerCase().trim())
+            .findByEmail(email)
             .map(booker -> {
                 var baseUrl = retrieveBaseUrl(request);
                 // someone is trying to use a known but not confirmed email
@@ -95,7 +150,7 @@ public class RegistrationController {
         String email = booker.email().toLowerCase();
 
         // Check if email already exists in the database
-        if (bookerRepository.existsById(email)) {
+        if (bookerRepository.existsByEmail(email)) {
             // should never happen as it should be tested first via `/check-returning-booker`
             // but let's play it safe if someone tries to call this directly without using our UI
             return ResponseEntity
@@ -111,10 +166,13 @@ public class RegistrationController {
         bookerEntity.setLastName(booker.lastName());
         bookerEntity.setEmail(email);
         bookerEntity.setEmailSignature(signature);
-        bookerRepository.save(bookerEntity);
 
         var baseUrl = retrieveBaseUrl(request);
-        emailService.sendEmail(Email.afterRegistration(bookerEntity, baseUrl));
+        // the booker and its confirmation email are committed together
+        transactionTemplate.executeWithoutResult(status -> {
+            bookerRepository.save(bookerEntity);
+            emailService.sendEmail(Email.afterRegistration(bookerEntity, baseUrl));
+        });
 
         return ResponseEntity.status(HttpStatus.CREATED).body(signature);
     }
@@ -136,49 +194,29 @@ public class RegistrationController {
         LOGGER.info("Received participant registration for event " + eventId + ": " + participantSub);
 
         try {
-            // Check if the activityId matches an existing activity
-            Activity activity = activityRepository
-                .findById(participantSub.activityId())
-                .orElseThrow(() -> new EntityNotFoundException("Activity not found"));
-
             // Check if the emailSignature matches an existing booker
             Booker booker = bookerRepository
                 .findByEmailSignature(participantSub.bookerEmailSignature())
                 .orElseThrow(() -> new EntityNotFoundException("Booker not found"));
 
-            Participant participant = booker
-                .getParticipants()
-                .stream()
-                .filter(p -> isSameParticipant(p, participantSub))
-                .findFirst()
-                .orElseGet(() -> {
-                    // Create and save the participant entity
-                    Participant participantToCreate = new Participant();
-                    participantToCreate.setFirstName(participantSub.firstName());
-                    participantToCreate.setLastName(participantSub.lastName());
-                    participantToCreate.setYearOfBirth(participantSub.yearOfBirth());
-                    participantToCreate.setBooker(booker);
-                    return participantRepository.save(participantToCreate);
-                });
-
-            // Check if both regular spots and waiting queue are full
-            if (activity.getRegistrationStatus().equals(Activity.RegistrationStatus.CLOSED)) {
+            Event event = eventRepository
+                .findById(eventId)
+                .orElseThrow(() -> new EntityNotFoundException("Event not found"));
+
+            if (event.isLotteryPending()) {
+                return enterLottery(event, booker, List.of(participantSub));
+            }
+
+            Participant participant = findOrCreateParticipant(booker, participantSub);
+
+            // Take a seat, unless both regular spots and waiting queue are full
+            var reservation = seatReservationService.reserveSeat(participantSub.activityId(), participant);
+            if (reservation == Reservation.FULL) {
                 return ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
                     .body("{\"message\":\"This activity is full and the waiting queue is also" + " full\"}");
             }
 
-            // Create and save the ActivityParticipant entity
-            ActivityParticipant activityParticipant = new ActivityParticipant();
-            activityParticipant.setActivity(activity);
-            activityParticipant.setParticipant(participant);
-            activityParticipant.getActivityParticipantKey().setActivityId(activity.getId());
-            activityParticipant.getActivityParticipantKey().setParticipantId(participant.getId());
-
-            activity.getParticipants().add(activityParticipant);
-
-            activityRepository.save(activity);
-
             // Return a success response with the participant data for display
             return ResponseEntity.ok().body(participantSub);
         } catch (DataIntegrityViolationException e) {
@@ -197,8 +235,7 @@ public class RegistrationController {
     @PostMapping("/events/{eventId}/registerParticipants")
     public ResponseEntity<?> registerParticipants(
         @PathVariable Long eventId,
-        @RequestBody @Valid List<ParticipantSubmission> participantSubs,
-        HttpServletRequest request
+        @RequestBody @Valid List<ParticipantSubmission> participantSubs
     ) {
         // Log the batch registration request
         LOGGER.info(
@@ -219,68 +256,39 @@ public class RegistrationController {
             .findById(eventId)
             .orElseThrow(() -> new EntityNotFoundException("Event not found"));
         try {
-            // Process each participant
-            for (ParticipantSubmission participantSub : participantSubs) {
-                // Check if the activityId matches an existing activity
-                Activity activity = activityRepository
-                    .findById(participantSub.activityId())
-                    .orElseThrow(() -> new EntityNotFoundException("Activity not found: " + participantSub.activityId())
-                    );
-
-                // Check if both regular spots and waiting queue are full
-                if (activity.getRegistrationStatus().equals(Activity.RegistrationStatus.CLOSED)) {
-                    // Skip this participant if the activity is full
-                    LOGGER.warn(
-                        "Activity {} is full, skipping participant: {} {}",
-                        activity.getId(),
-                        participantSub.firstName(),
-                        participantSub.lastName()
-                    );
-                    continue;
-                }
-
-                Participant participant = booker
-                    .getParticipants()
-                    .stream()
-                    .filter(p -> isSameParticipant(p, participantSub))
-                    .findFirst()
-                    .orElseGet(() -> {
-                        // Create and save the participant entity
-                        Participant participantToCreate = new Participant();
-                        participantToCreate.setFirstName(participantSub.firstName());
-                        participantToCreate.setLastName(participantSub.lastName());
-                        participantToCreate.setYearOfBirth(participantSub.yearOfBirth());
-                        participantToCreate.setBooker(booker);
-                        return participantRepository.save(participantToCreate);
-                    });
-
-                // Create and save the ActivityParticipant entity
-                ActivityParticipant activityParticipant = new ActivityParticipant();
-                activityParticipant.setActivity(activity);
-                activityParticipant.setParticipant(participant);
-                activityParticipant.getActivityParticipantKey().setActivityId(activity.getId());
-                activityParticipant.getActivityParticipantKey().setParticipantId(participant.getId());
-
-                activity.getParticipants().add(activityParticipant);
-                activityRepository.save(activity);
+            if (event.isLotteryPending()) {
+                return enterLottery(event, booker, participantSubs);
             }
 
-            var participantsForEventAndBooker =
-                activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerEmail(
-                    eventId,
-                    booker.getEmail()
-                );
-            emailService.sendEmail(
-                Email.afterParticipantsChanges(
-                    booker,
-                    toPresentationActivityParticipants(participantsForEventAndBooker),
-                    event,
-                    retrieveBaseUrl(request),
-                    qrCodeService.generateQrCode(
-                        retrieveBaseUrl(request) + "/admin/bookings/" + booker.getEmailSignature()
-                    )
-                )
-            );
+            // the email is queued with the registrations
+            transactionTemplate.executeWithoutResult(status -> {
+                // the new participants are inserted together, before the first reservation
+                var participants = findOrCreateParticipants(booker, participantSubs);
+
+                // the activity rows are locked in ascending id order, so that concurrent batches can't deadlock
+                var reservationOrder = IntStream
+                    .range(0, participantSubs.size())
+                    .boxed()
+                    .sorted(Comparator.comparing(i -> participantSubs.get(i).activityId()))
+                    .toList();
+                for (int i : reservationOrder) {
+                    ParticipantSubmission participantSub = participantSubs.get(i);
+                    Participant participant = participants.get(i);
+
+                    var reservation = seatReservationService.reserveSeat(participantSub.activityId(), participant);
+                    if (reservation == Reservation.FULL) {
+                        // Skip this participant if both regular spots and waiting queue are full
+                        LOGGER.warn(
+                            "Activity {} is full, skipping participant: {} {}",
+                            participantSub.activityId(),
+                            participantSub.firstName(),
+                            participantSub.lastName()
+                        );
+                    }
+                }
+
+                participantsChangesNotifier.participantsChanged(eventId, booker.getId());
+            });
 
             // Return a success response
             return ResponseEntity.ok().body("{\"message\":\"All participants registered successfully\"}");
@@ -300,8 +308,7 @@ public class RegistrationController {
     @DeleteMapping("/events/{eventId}/removeParticipant")
     public ResponseEntity<?> removeParticipant(
         @PathVariable Long eventId,
-        @RequestBody @Valid ParticipantSubmission participantSub,
-        HttpServletRequest request
+        @RequestBody @Valid ParticipantSubmission participantSub
     ) {
         // Log the participant information
         LOGGER.info("Received participant removal request {}: {}", eventId, participantSub);
@@ -312,15 +319,8 @@ public class RegistrationController {
                 .findById(participantSub.activityId())
                 .orElseThrow(() -> new EntityNotFoundException("Activity not found"));
 
-            var lastParticipantBeforeRemoval = activity
-                .getNonWaitingParticipants()
-                .stream()
-                .toList()
-                .getLast()
-                .getParticipant();
-
-            // Check if the emailSignature matches an existing booker
-            Booker booker = bookerRepository
+            // Check if the emailSignature matches an existing booker, only read here
+            Booker booker = bookerCache
                 .findByEmailSignature(participantSub.bookerEmailSignature())
                 .orElseThrow(() -> new EntityNotFoundException("Booker not found"));
 
@@ -335,70 +335,20 @@ public class RegistrationController {
                 .findFirst()
                 .orElseThrow(() -> new EntityNotFoundException("Participant does not exist"));
 
-            //            Set<ActivityParticipant> activityParticipantSet = activity.getParticipants().stream().filter(activityParticipant ->
-            //                    !(activityParticipant.getParticipant().getId() == participant.getId())
-            //            ).collect(Collectors.toSet());
-
-            ActivityParticipant activityParticipantToRemove = activity
-                .getParticipants()
-                .stream()
-                .filter(activityParticipant -> activityParticipant.getParticipant().getId() == participant.getId())
-                .findFirst()
-                .orElseThrow();
-
-            activity.getParticipants().remove(activityParticipantToRemove);
-            //            activity.setParticipants(activityParticipantSet);
-            activityRepository.save(activity);
-
-            List<ActivityParticipant> allActivityParticipantByEventIdAndBookerEmail =
-                activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerEmail(
-                    eventId,
-                    booker.getEmail()
-                );
-
-            emailService.sendEmail(
-                Email.afterParticipantsChanges(
-                    booker,
-                    toPresentationActivityParticipants(allActivityParticipantByEventIdAndBookerEmail),
-                    event,
-                    retrieveBaseUrl(request),
-                    qrCodeService.generateQrCode(
-                        retrieveBaseUrl(request) + "/admin/bookings/" + booker.getEmailSignature()
-                    )
-                )
-            );
-
-            activity =
-                activityRepository
-                    .findById(participantSub.activityId())
-                    .orElseThrow(() -> new EntityNotFoundException("Activity not found"));
-
-            var lastParticipantAfterRemoval = activity
-                .getNonWaitingParticipants()
-                .stream()
-                .toList()
-                .getLast()
-                .getParticipant();
-
-            if (!lastParticipantBeforeRemoval.equals(lastParticipantAfterRemoval)) {
-                // this participant just got upgraded from waiting to non-waiting
-                ActivityParticipant upgradedActivityParticipant = activity.getNonWaitingParticipants().getLast();
-                Booker upgradedParticipantBooker = lastParticipantAfterRemoval.getBooker();
-                emailService.sendEmail(
-                    Email.participantUpgraded(
-                        upgradedParticipantBooker,
-                        toPresentationParticipantActivity(upgradedActivityParticipant),
-                        event,
-                        retrieveBaseUrl(request),
-                        qrCodeService.generateQrCode(
-                            retrieveBaseUrl(request) +
-                            "/admin/bookings/" +
-                            upgradedParticipantBooker.getEmailSignature()
-                        )
-                    )
-                );
+            if (event.isLotteryPending()) {
+                // no seat taken yet, just leave the lottery
+                lotteryService.withdraw(activity.getId(), participant.getId());
+                return ResponseEntity.ok().body(participantSub);
             }
 
+            // the removal and the resulting emails are committed together
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!releaseSeat(participantSub.activityId(), participant.getId())) {
+                    throw new NoSuchElementException();
+                }
+                participantsChangesNotifier.participantsChanged(eventId, booker.getId());
+            });
+
             // Return a success response with the participant data for display
             // Not really necessary as the UI gets updated by reloading the page, but leaving here just in case
             return ResponseEntity.ok().body(participantSub);
@@ -419,56 +369,48 @@ public class RegistrationController {
     }
 
     @GetMapping("/bookings/{signature}")
-    public String startBooking(@PathVariable String signature, Model model) {
-        // Find booker by email signature
-        var booker = bookerRepository.findByEmailSignature(signature).orElse(null);
+    public String startBooking(@PathVariable String signature, Model model, ServletWebRequest request) {
+        // Find booker by email signature, unknown signatures don't reach the DB
+        var booker = knownBookers.mightExistByEmailSignature(signature)
+            ? bookerCache.findByEmailSignature(signature).orElse(null)
+            : null;
 
-        // Get active event
-        var event = eventRepository.findByActiveIsTrue().orElse(null);
+        // Get the snapshot of the active event, after its version for the ETag
+        var version = activeEventService.version();
+        var activeEvent = activeEventService.snapshot().orElse(null);
 
         // we found the Booker, and there is an active Event, so Booker can register Participant(s)
-        if (booker != null && event != null) {
-            // update booker validationTime if not set yet
+        if (booker != null && activeEvent != null) {
+            // update booker validationTime if not set yet, on the entity as the cached booker is a snapshot
             if (booker.getValidationTime() == null) {
-                booker.setValidationTime(Instant.now());
-                bookerRepository.save(booker);
+                var bookerEntity = bookerRepository.findById(booker.getId()).orElseThrow();
+                bookerEntity.setValidationTime(Instant.now());
+                bookerRepository.save(bookerEntity);
+                bookerCache.invalidate(signature);
+                booker = bookerEntity;
             }
 
-            var bookerParticipants = booker.getParticipants();
-
-            // Create presentation event
-            PresentationEvent presentationEvent = new PresentationEvent(
-                event.getId(),
-                event.getTitle(),
-                markdownToHtml(event.getDescription()),
-                event.getDate(),
-                toPresentationActivitiesLimitedToBooker(event.getActivities(), bookerParticipants),
-                event.isActive(),
-                event.getImagePath(),
-                event.getLocation()
-            );
+            // the page only changes with the active event and the booker, a refresh gets a `304` until they change
+            if (checkNotModified(request, version + "-" + bookerVersion(booker))) {
+                return null;
+            }
+
+            var event = activeEvent.event();
 
             // Add attributes to model
-            model.addAttribute("event", presentationEvent);
+            model.addAttribute("event", activeEvent.limitedToBooker(booker.getParticipants()));
             model.addAttribute("booker", booker);
+            if (event.isLotteryPending()) {
+                model.addAttribute("lotteryEntries", lotteryService.findEntries(event.getId(), booker.getId()));
+            }
 
             // Return booker-activities template
             return "booker-activities";
         } else {
             // or the Booker is missing, or there is no active Event, so we go to `index`
-            if (event != null) {
+            if (activeEvent != null) {
                 // add the Event for index, if any
-                PresentationEvent presentationEvent = new PresentationEvent(
-                    event.getId(),
-                    event.getTitle(),
-                    event.getDescription(),
-                    event.getDate(),
-                    toPresentationActivities(event.getActivities()),
-                    event.isActive(),
-                    event.getImagePath(),
-                    event.getLocation()
-                );
-                model.addAttribute("event", presentationEvent);
+                model.addAttribute("event", activeEvent.presentationEvent());
             }
             if (booker == null) {
                 // set the error msg if no Booker found
@@ -478,6 +420,47 @@ public class RegistrationController {
         }
     }
 
+    // the fields of the booker and its participants shown on its page
+    private static String bookerVersion(Booker booker) {
+        var participants = booker
+            .getParticipants()
+            .stream()
+            .sorted(Comparator.comparingLong(Participant::getId))
+            .map(p -> p.getId() + ":" + p.getFirstName() + ":" + p.getLastName() + ":" + p.getYearOfBirth())
+            .toList();
+        var hash = Objects.hash(booker.getEmail(), booker.getFirstName(), booker.getLastName(), participants);
+        return Integer.toHexString(hash);
+    }
+
+    /**
+     * The QR code attached to the emails of the booker, for the web pages.
+     * <p>
+     * The image is the check-in URL of the booker for the active event, built from `app.base-url`: it changes with
+     * the active event, its date and the signing key. The browsers revalidate it on each view, and get a `304` until
+     * the URL changes, without rendering the image.
+     */
+    @GetMapping("/bookings/{signature}/qr-code.png")
+    public ResponseEntity<byte[]> bookingQrCode(@PathVariable String signature, ServletWebRequest request)
+        throws IOException {
+        if (!knownBookers.mightExistByEmailSignature(signature)) {
+            throw new EntityNotFoundException("Booker not found");
+        }
+        var booker = bookerCache
+            .findByEmailSignature(signature)
+            .orElseThrow(() -> new EntityNotFoundException("Booker not found"));
+        var event = activeEventService
+            .snapshot()
+            .orElseThrow(() -> new EntityNotFoundException("Event not found"))
+            .event();
+        var checkInUrl = checkInTokenService.checkInUrl(baseUrl, event, booker);
+        if (checkNotModified(request, DigestUtils.md5DigestAsHex(checkInUrl.getBytes(StandardCharsets.UTF_8)))) {
+            return null;
+        }
+        // from the cache of `QrCodeService` after the first email
+        var qrCode = qrCodeService.generateQrCode(checkInUrl);
+        return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG).body(qrCode);
+    }
+
     static String retrieveBaseUrl(HttpServletRequest request) {
         String requestURL = request.getRequestURL().toString();
         String requestURI = request.getRequestURI();
@@ -485,6 +468,58 @@ public class RegistrationController {
         return requestURL.substring(0, requestURL.length() - requestURI.length()) + request.getContextPath();
     }
 
+    // until the draw, registrations are only recorded as entries
+    private ResponseEntity<?> enterLottery(Event event, Booker booker, List<ParticipantSubmission> participantSubs) {
+        if (!event.isLotteryOpen(LocalDateTime.now())) {
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body("{\"message\":\"The lottery entries are closed, the results will be sent by email\"}");
+        }
+        // the draw only reads the entries of the activities of the event
+        var activityIds = event.getActivities().stream().map(Activity::getId).collect(Collectors.toSet());
+        if (!participantSubs.stream().allMatch(participantSub -> activityIds.contains(participantSub.activityId()))) {
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body("{\"message\":\"The activity is not part of the event\"}");
+        }
+        // the new participants and their entries are committed together, or not at all
+        transactionTemplate.executeWithoutResult(status -> {
+            var participants = findOrCreateParticipants(booker, participantSubs);
+            for (int i = 0; i < participants.size(); i++) {
+                lotteryService.enter(participantSubs.get(i).activityId(), participants.get(i).getId());
+            }
+        });
+        return ResponseEntity
+            .ok()
+            .body("{\"message\":\"Lottery entries recorded, the results will be sent by email after the draw\"}");
+    }
+
+    // in one transaction, so the new participants are inserted in one JDBC batch
+    private List<Participant> findOrCreateParticipants(Booker booker, List<ParticipantSubmission> participantSubs) {
+        return transactionTemplate.execute(status ->
+            participantSubs.stream().map(participantSub -> findOrCreateParticipant(booker, participantSub)).toList()
+        );
+    }
+
+    private Participant findOrCreateParticipant(Booker booker, ParticipantSubmission participantSub) {
+        return booker
+            .getParticipants()
+            .stream()
+            .filter(p -> isSameParticipant(p, participantSub))
+            .findFirst()
+            .orElseGet(() -> {
+                // Create and save the participant entity
+                Participant participantToCreate = new Participant();
+                participantToCreate.setFirstName(participantSub.firstName());
+                participantToCreate.setLastName(participantSub.lastName());
+                participantToCreate.setYearOfBirth(participantSub.yearOfBirth());
+                participantToCreate.setBooker(booker);
+                var participant = participantRepository.save(participantToCreate);
+                bookerCache.invalidate(booker.getEmailSignature());
+                return participant;
+            });
+    }
+
     static boolean isSameParticipant(Participant p, ParticipantSubmission participantSub) {
         return (
             p.getLastName().equalsIgnoreCase(participantSub.lastName()) &&
@@ -494,43 +529,15 @@ public class RegistrationController {
     }
 
     @DeleteMapping("/admin/activities/{activityId}/participants/{participantId}")
-    public ResponseEntity<?> deleteParticipant(
-        @PathVariable Long activityId,
-        @PathVariable Long participantId,
-        HttpServletRequest request
-    ) {
+    public ResponseEntity<?> deleteParticipant(@PathVariable Long activityId, @PathVariable Long participantId) {
         try {
-            Activity activity = activityRepository
-                .findById(activityId)
-                .orElseThrow(() -> new EntityNotFoundException("Activity not found"));
-
-            activity
-                .getParticipants()
-                .removeIf(activityParticipant -> activityParticipant.getParticipant().getId() == participantId);
-
-            // Save the updated activity with merge to ensure the removal is persisted
-            activityRepository.save(activity);
-
-            activity =
-                activityRepository
-                    .findById(activityId)
-                    .orElseThrow(() -> new EntityNotFoundException("Activity not found"));
-            // this participant just got upgraded from waiting to non-waiting
-            ActivityParticipant upgradedActivityParticipant = activity.getNonWaitingParticipants().getLast();
-            Participant upgradedParticipant = upgradedActivityParticipant.getParticipant();
-            Booker upgradedParticipantBooker = upgradedParticipant.getBooker();
-            var event = activity.getEvent();
-            emailService.sendEmail(
-                Email.participantUpgraded(
-                    upgradedParticipantBooker,
-                    toPresentationParticipantActivity(upgradedActivityParticipant),
-                    event,
-                    retrieveBaseUrl(request),
-                    qrCodeService.generateQrCode(
-                        retrieveBaseUrl(request) + "/admin/bookings/" + upgradedParticipantBooker.getEmailSignature()
-                    )
-                )
-            );
+            // the removal and the upgrade email are committed together
+            var removed = transactionTemplate.execute(status -> releaseSeat(activityId, participantId));
+            if (!Boolean.TRUE.equals(removed)) {
+                return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body("{\"message\":\"The participant is not registered to the activity\"}");
+            }
 
             // Return success response
             return ResponseEntity.noContent().build();
@@ -541,4 +548,23 @@ public class RegistrationController {
                 .body("{\"message\":\"An error occurred while deleting the participant from" + " the activity\"}");
         }
     }
+
+    /**
+     * Gives back the seat of the participant, and queues the upgrade email of the waiting participant who takes it.
+     * <p>
+     * To be called in a transaction: the email is rendered once the removal is committed, not while the activity row
+     * is locked.
+     *
+     * @return `false` if the participant was not registered to the activity
+     */
+    private boolean releaseSeat(long activityId, long participantId) {
+        var release = seatReservationService.releaseSeat(activityId, participantId);
+        // the renderer checks that the participant still has a seat when the email is sent
+        release
+            .upgradedParticipantId()
+            .ifPresent(upgradedParticipantId ->
+                participantUpgradeNotifier.participantUpgraded(activityId, upgradedParticipantId)
+            );
+        return release.released();
+    }
 }
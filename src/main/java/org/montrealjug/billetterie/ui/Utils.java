@@ -9,11 +9,15 @@ import org.commonmark.parser.Parser;
 import org.commonmark.renderer.html.HtmlRenderer;
 import org.montrealjug.billetterie.entity.Activity;
 import org.montrealjug.billetterie.entity.ActivityParticipant;
+import org.montrealjug.billetterie.entity.Event;
 import org.montrealjug.billetterie.entity.Participant;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
 
 public class Utils {
 
-    static List<PresentationActivity> toPresentationActivities(Set<Activity> activities) {
+    public static List<PresentationActivity> toPresentationActivities(Set<Activity> activities) {
         return activities.stream().map((Activity activity) -> toPresentationActivity(activity, true)).toList();
     }
 
@@ -27,11 +31,13 @@ public class Utils {
             .toList();
     }
 
-    static List<PresentationActivityParticipant> toPresentationActivityParticipants(List<ActivityParticipant> aps) {
+    public static List<PresentationActivityParticipant> toPresentationActivityParticipants(
+        List<ActivityParticipant> aps
+    ) {
         return aps.stream().map(Utils::toPresentationParticipantActivity).toList();
     }
 
-    static PresentationActivityParticipant toPresentationParticipantActivity(ActivityParticipant ap) {
+    public static PresentationActivityParticipant toPresentationParticipantActivity(ActivityParticipant ap) {
         return new PresentationActivityParticipant(
             toPresentationActivity(ap.getActivity(), false),
             ap.getParticipant()
@@ -42,7 +48,7 @@ public class Utils {
         return new PresentationActivity(
             activity.getId(),
             activity.getTitle(),
-            html ? markdownToHtml(activity.getDescription()) : activity.getDescription(),
+            html ? descriptionHtml(activity) : activity.getDescription(),
             activity.getMaxParticipants(),
             activity.getMaxWaitingQueue(),
             activity.getParticipants().size(),
@@ -63,7 +69,7 @@ public class Utils {
         return new PresentationActivity(
             activity.getId(),
             activity.getTitle(),
-            html ? markdownToHtml(activity.getDescription()) : activity.getDescription(),
+            html ? descriptionHtml(activity) : activity.getDescription(),
             activity.getMaxParticipants(),
             activity.getMaxWaitingQueue(),
             activity.getParticipants().size(),
@@ -87,11 +93,35 @@ public class Utils {
     private static final Parser MD_PARSER = Parser.builder().build();
     private static final HtmlRenderer HTML_RENDERER = HtmlRenderer.builder().softbreak("<br />").build();
 
-    static String markdownToHtml(String markdown) {
+    public static String markdownToHtml(String markdown) {
         Node document = MD_PARSER.parse(markdown);
         return HTML_RENDERER.render(document);
     }
 
+    // the HTML is stored when the description is saved, only the rows not backfilled yet are rendered here
+    public static String descriptionHtml(Event event) {
+        return event.getDescriptionHtml() != null ? event.getDescriptionHtml() : markdownToHtml(event.getDescription());
+    }
+
+    public static String descriptionHtml(Activity activity) {
+        return activity.getDescriptionHtml() != null
+            ? activity.getDescriptionHtml()
+            : markdownToHtml(activity.getDescription());
+    }
+
+    /**
+     * Answers a conditional GET of a page with a weak ETag of its content version: the browsers revalidate the page
+     * on each view, and get a `304` until the version changes.
+     *
+     * @return `true` if the page is not modified, and must not be rendered
+     */
+    static boolean checkNotModified(ServletWebRequest request, String version) {
+        if (request.getResponse() != null) {
+            request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        }
+        return request.checkNotModified("W/\"" + version + "\"");
+    }
+
     public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd");
     public static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
 }
@@ -0,0 +1,140 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.waitingroom;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * In-memory admission control in front of the registration endpoints.
+ * <p>
+ * At most `maxAdmitted` tickets are admitted at the same time, the others wait in FIFO order.
+ * - a newcomer always gets a waiting ticket, only admitted once it came back with it from the page of the waiting
+ *   room (`poll`): link scanners and scripts without cookies never take a slot
+ * - an admitted ticket keeps its slot as long as it is used at least once every `admissionTtl`
+ * - a waiting ticket keeps its place as long as it polls at least once every `idleTimeout`
+ * - tickets are random and only issued here, so nobody can skip the line by forging one
+ * <p>
+ * The state is local to the JVM: it works because we run a single machine.
+ */
+class WaitingRoom {
+
+    // no need to scan every ticket on each call, expired ones can stay a bit longer
+    private static final Duration PURGE_INTERVAL = Duration.ofSeconds(1);
+
+    record Admission(String ticket, boolean admitted, int position) {}
+
+    private static final class WaitingTicket {
+
+        private final long sequence;
+        private Instant lastSeen;
+        // the ticket came back from the page of the waiting room, it can be admitted
+        private boolean polled;
+
+        private WaitingTicket(long sequence, Instant lastSeen) {
+            this.sequence = sequence;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private final int maxAdmitted;
+    private final Duration admissionTtl;
+    private final Duration idleTimeout;
+    private final Clock clock;
+
+    // ticket -> expiration of the admission
+    private final Map<String, Instant> admitted = new HashMap<>();
+    // insertion order is the admission order
+    private final LinkedHashMap<String, WaitingTicket> waiting = new LinkedHashMap<>();
+    private long nextSequence;
+    private Instant lastPurge = Instant.MIN;
+
+    WaitingRoom(int maxAdmitted, Duration admissionTtl, Duration idleTimeout, Clock clock) {
+        this.maxAdmitted = maxAdmitted;
+        this.admissionTtl = admissionTtl;
+        this.idleTimeout = idleTimeout;
+        this.clock = clock;
+    }
+
+    /**
+     * Presents a ticket (or `null` for a newcomer) at the door.
+     * @return the ticket to keep for the next calls, with its admission status or its position in line
+     */
+    synchronized Admission enter(String ticket) {
+        return enter(ticket, false);
+    }
+
+    /**
+     * Presents a ticket from the page of the waiting room: a waiting ticket can be admitted from then on.
+     * @return the ticket to keep for the next calls, with its admission status or its position in line
+     */
+    synchronized Admission poll(String ticket) {
+        return enter(ticket, true);
+    }
+
+    private Admission enter(String ticket, boolean polled) {
+        var now = clock.instant();
+        purge(now);
+
+        var waitingTicket = ticket != null ? waiting.get(ticket) : null;
+        if (waitingTicket != null) {
+            waitingTicket.lastSeen = now;
+            waitingTicket.polled |= polled;
+        }
+        promote(now);
+
+        if (ticket != null && admitted.containsKey(ticket)) {
+            admitted.put(ticket, now.plus(admissionTtl));
+            return new Admission(ticket, true, 0);
+        }
+        if (waitingTicket != null) {
+            return new Admission(ticket, false, positionOf(waitingTicket));
+        }
+
+        // unknown, forged or expired ticket: waits until it comes back from the waiting room
+        var newTicket = UUID.randomUUID().toString();
+        var newWaitingTicket = new WaitingTicket(nextSequence++, now);
+        waiting.put(newTicket, newWaitingTicket);
+        return new Admission(newTicket, false, positionOf(newWaitingTicket));
+    }
+
+    synchronized int admittedCount() {
+        return admitted.size();
+    }
+
+    synchronized int waitingCount() {
+        return waiting.size();
+    }
+
+    private void purge(Instant now) {
+        if (now.isBefore(lastPurge.plus(PURGE_INTERVAL))) {
+            return;
+        }
+        lastPurge = now;
+        admitted.values().removeIf(expiration -> expiration.isBefore(now));
+        var idleLimit = now.minus(idleTimeout);
+        waiting.values().removeIf(waitingTicket -> waitingTicket.lastSeen.isBefore(idleLimit));
+    }
+
+    // the tickets which never polled don't block the line, they are dropped after `idleTimeout`
+    private void promote(Instant now) {
+        var iterator = waiting.entrySet().iterator();
+        while (admitted.size() < maxAdmitted && iterator.hasNext()) {
+            var next = iterator.next();
+            if (next.getValue().polled) {
+                iterator.remove();
+                admitted.put(next.getKey(), now.plus(admissionTtl));
+            }
+        }
+    }
+
+    // tickets dropped in between are still counted, so the position is an upper bound
+    private int positionOf(WaitingTicket waitingTicket) {
+        var head = waiting.firstEntry().getValue();
+        return (int) (waitingTicket.sequence - head.sequence) + 1;
+    }
+}
@@ -0,0 +1,76 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.waitingroom;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import java.time.Clock;
+import java.time.Duration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(WaitingRoomConfiguration.WaitingRoomProperties.class)
+@ConditionalOnProperty(prefix = "app.waiting-room", name = "enabled", havingValue = "true")
+class WaitingRoomConfiguration {
+
+    @Bean
+    WaitingRoom waitingRoom(WaitingRoomProperties waitingRoomProperties) {
+        return new WaitingRoom(
+            waitingRoomProperties.maxAdmitted(),
+            waitingRoomProperties.admissionTtl(),
+            waitingRoomProperties.idleTimeout(),
+            Clock.systemUTC()
+        );
+    }
+
+    @Bean
+    WebMvcConfigurer waitingRoomWebMvcConfigurer(WaitingRoom waitingRoom, WaitingRoomProperties waitingRoomProperties) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                // only the pages and calls hitting the DB during a registration opening
+                registry
+                    .addInterceptor(new WaitingRoomInterceptor(waitingRoom, waitingRoomProperties))
+                    .addPathPatterns(
+                        "/bookings/*",
+                        "/events/*/registerParticipant",
+                        "/events/*/registerParticipants",
+                        "/events/*/removeParticipant"
+                    );
+            }
+        };
+    }
+
+    @Bean
+    MeterBinder waitingRoomMetrics(WaitingRoom waitingRoom) {
+        return registry -> {
+            Gauge
+                .builder("billetterie.waiting.room.admitted", waitingRoom, WaitingRoom::admittedCount)
+                .description("Tickets currently admitted to the registration endpoints")
+                .register(registry);
+            Gauge
+                .builder("billetterie.waiting.room.waiting", waitingRoom, WaitingRoom::waitingCount)
+                .description("Tickets currently waiting in line")
+                .register(registry);
+        };
+    }
+
+    @Validated
+    @ConfigurationProperties(prefix = "app.waiting-room")
+    record WaitingRoomProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("50") @Min(1) int maxAdmitted,
+        @DefaultValue("10m") @NotNull Duration admissionTtl,
+        @DefaultValue("30s") @NotNull Duration idleTimeout,
+        @DefaultValue("5s") @NotNull Duration pollInterval
+    ) {}
+}
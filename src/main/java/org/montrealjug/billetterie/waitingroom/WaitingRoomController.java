@@ -0,0 +1,72 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.waitingroom;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.montrealjug.billetterie.waitingroom.WaitingRoomConfiguration.WaitingRoomProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * The waiting room itself: a page polling its status, without any access to the DB
+ */
+@Controller
+@ConditionalOnProperty(prefix = "app.waiting-room", name = "enabled", havingValue = "true")
+class WaitingRoomController {
+
+    record WaitingRoomStatus(boolean admitted, int position, long retryAfterSeconds) {}
+
+    private final WaitingRoom waitingRoom;
+    private final WaitingRoomProperties waitingRoomProperties;
+
+    WaitingRoomController(WaitingRoom waitingRoom, WaitingRoomProperties waitingRoomProperties) {
+        this.waitingRoom = waitingRoom;
+        this.waitingRoomProperties = waitingRoomProperties;
+    }
+
+    @GetMapping("/waiting-room")
+    String waitingRoom(
+        @RequestParam(defaultValue = "/") String next,
+        HttpServletRequest request,
+        HttpServletResponse response,
+        Model model
+    ) {
+        var admission = waitingRoom.enter(WaitingRoomInterceptor.readTicket(request));
+        WaitingRoomInterceptor.writeTicket(request, response, admission);
+        var safeNext = isLocalPath(next) ? next : "/";
+        if (admission.admitted()) {
+            return "redirect:" + safeNext;
+        }
+        model.addAttribute("position", admission.position());
+        model.addAttribute("next", safeNext);
+        model.addAttribute("pollIntervalSeconds", waitingRoomProperties.pollInterval().toSeconds());
+        return "waiting-room";
+    }
+
+    @GetMapping("/waiting-room/status")
+    ResponseEntity<WaitingRoomStatus> status(HttpServletRequest request, HttpServletResponse response) {
+        // the only way in: the ticket came back in the cookie, from the script of the waiting room
+        var admission = waitingRoom.poll(WaitingRoomInterceptor.readTicket(request));
+        WaitingRoomInterceptor.writeTicket(request, response, admission);
+        return ResponseEntity
+            .ok()
+            .cacheControl(CacheControl.noStore())
+            .body(
+                new WaitingRoomStatus(
+                    admission.admitted(),
+                    admission.position(),
+                    waitingRoomProperties.pollInterval().toSeconds()
+                )
+            );
+    }
+
+    // avoid an open redirect: `next` must stay on our site
+    static boolean isLocalPath(String path) {
+        return path.startsWith("/") && !path.startsWith("//") && !path.startsWith("/\\");
+    }
+}
@@ -0,0 +1,88 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.waitingroom;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.Arrays;
+import org.montrealjug.billetterie.waitingroom.WaitingRoom.Admission;
+import org.montrealjug.billetterie.waitingroom.WaitingRoomConfiguration.WaitingRoomProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Lets admitted tickets through, and sends the others (including the newcomers) to the waiting room:
+ * - pages are redirected to `/waiting-room`, which polls until the ticket is admitted
+ * - API calls get a `429` with a `Retry-After`, so the UI can do the same
+ */
+class WaitingRoomInterceptor implements HandlerInterceptor {
+
+    static final String TICKET_COOKIE_NAME = "BILLETTERIE_WAITING_ROOM";
+
+    private final WaitingRoom waitingRoom;
+    private final WaitingRoomProperties waitingRoomProperties;
+
+    WaitingRoomInterceptor(WaitingRoom waitingRoom, WaitingRoomProperties waitingRoomProperties) {
+        this.waitingRoom = waitingRoom;
+        this.waitingRoomProperties = waitingRoomProperties;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+        throws Exception {
+        var admission = waitingRoom.enter(readTicket(request));
+        writeTicket(request, response, admission);
+        if (admission.admitted()) {
+            return true;
+        }
+
+        if (HttpMethod.GET.matches(request.getMethod())) {
+            var waitingRoomUrl = UriComponentsBuilder
+                .fromPath("/waiting-room")
+                .queryParam("next", request.getRequestURI())
+                .encode()
+                .toUriString();
+            response.sendRedirect(waitingRoomUrl);
+        } else {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(
+                HttpHeaders.RETRY_AFTER,
+                String.valueOf(waitingRoomProperties.pollInterval().toSeconds())
+            );
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response
+                .getWriter()
+                .write("{\"message\":\"Too many people are registering right now, you are in line\"}");
+        }
+        return false;
+    }
+
+    static String readTicket(HttpServletRequest request) {
+        var cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        return Arrays
+            .stream(cookies)
+            .filter(cookie -> TICKET_COOKIE_NAME.equals(cookie.getName()))
+            .map(Cookie::getValue)
+            .findFirst()
+            .orElse(null);
+    }
+
+    static void writeTicket(HttpServletRequest request, HttpServletResponse response, Admission admission) {
+        // session cookie: the ticket is worthless once it expired in the `WaitingRoom` anyway
+        var cookie = new Cookie(TICKET_COOKIE_NAME, admission.ticket());
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        // not `Secure` over plain HTTP (local dev), or the browser would not send it back
+        cookie.setSecure(request.isSecure());
+        // `Lax`, as the booking links are opened from emails
+        cookie.setAttribute("SameSite", "Lax");
+        response.addCookie(cookie);
+    }
+}
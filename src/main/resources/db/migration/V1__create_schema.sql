@@ -0,0 +1,101 @@
+-- Schema of the entities, as `ddl-auto: update` created it before the migrations.
+-- The DBs created by `ddl-auto` are baselined at version 0 and run it too:
+-- the existing tables are kept, and only get the columns added since their creation.
+
+CREATE TABLE IF NOT EXISTS event (
+    id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    active boolean NOT NULL,
+    date date,
+    title varchar(255),
+    description text,
+    description_html text,
+    location varchar(255),
+    registration_mode varchar(255),
+    lottery_draw_time timestamp(6),
+    lottery_drawn_time timestamp(6) with time zone
+);
+
+CREATE TABLE IF NOT EXISTS activity (
+    id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    event_id bigint NOT NULL CONSTRAINT activity_event_fk REFERENCES event,
+    start_time timestamp(6),
+    title varchar(255),
+    description text,
+    description_html text,
+    max_participants integer NOT NULL,
+    max_waiting_queue integer NOT NULL,
+    registered_participants integer NOT NULL DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS booker (
+    email varchar(255) PRIMARY KEY,
+    email_signature varchar(255) NOT NULL,
+    first_name varchar(255),
+    last_name varchar(255),
+    creation_time timestamp(6) with time zone NOT NULL,
+    validation_time timestamp(6) with time zone
+);
+
+CREATE TABLE IF NOT EXISTS participant (
+    id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    booker_email varchar(255) NOT NULL CONSTRAINT participant_booker_fk REFERENCES booker,
+    first_name varchar(255),
+    last_name varchar(255),
+    year_of_birth integer NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS activity_participant (
+    activity_id bigint NOT NULL CONSTRAINT activity_participant_activity_fk REFERENCES activity,
+    participant_id bigint NOT NULL CONSTRAINT activity_participant_participant_fk REFERENCES participant,
+    registration_time timestamp(6) with time zone NOT NULL,
+    confirmation_time timestamp(6) with time zone,
+    check_in_time timestamp(6) with time zone,
+    PRIMARY KEY (activity_id, participant_id)
+);
+
+CREATE TABLE IF NOT EXISTS lottery_entry (
+    activity_id bigint NOT NULL CONSTRAINT lottery_entry_activity_fk REFERENCES activity ON DELETE CASCADE,
+    participant_id bigint NOT NULL CONSTRAINT lottery_entry_participant_fk REFERENCES participant ON DELETE CASCADE,
+    entry_time timestamp(6) with time zone NOT NULL,
+    PRIMARY KEY (activity_id, participant_id)
+);
+
+CREATE TABLE IF NOT EXISTS email_outbox_message (
+    id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email_type varchar(255) NOT NULL,
+    priority varchar(255),
+    recipient varchar(255) NOT NULL,
+    subject varchar(255),
+    plain_text text,
+    html text,
+    attachment bytea,
+    status varchar(255) NOT NULL,
+    attempts integer NOT NULL,
+    last_error text,
+    creation_time timestamp(6) with time zone NOT NULL,
+    next_attempt_time timestamp(6) with time zone NOT NULL,
+    sent_time timestamp(6) with time zone
+);
+
+CREATE TABLE IF NOT EXISTS reminder_campaign (
+    id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    event_id bigint NOT NULL CONSTRAINT reminder_campaign_event_fk REFERENCES event ON DELETE CASCADE,
+    segment varchar(255) NOT NULL,
+    base_url varchar(255) NOT NULL,
+    status varchar(255) NOT NULL,
+    total_bookers integer NOT NULL,
+    processed_bookers integer NOT NULL,
+    failed_bookers integer NOT NULL,
+    last_booker_email varchar(255),
+    creation_time timestamp(6) with time zone NOT NULL,
+    completion_time timestamp(6) with time zone
+);
+
+-- columns added to the tables created by older versions of `ddl-auto`
+ALTER TABLE event ADD COLUMN IF NOT EXISTS description_html text;
+ALTER TABLE event ADD COLUMN IF NOT EXISTS registration_mode varchar(255);
+ALTER TABLE event ADD COLUMN IF NOT EXISTS lottery_draw_time timestamp(6);
+ALTER TABLE event ADD COLUMN IF NOT EXISTS lottery_drawn_time timestamp(6) with time zone;
+ALTER TABLE activity ADD COLUMN IF NOT EXISTS description_html text;
+ALTER TABLE activity ADD COLUMN IF NOT EXISTS registered_participants integer NOT NULL DEFAULT 0;
+ALTER TABLE email_outbox_message ADD COLUMN IF NOT EXISTS priority varchar(255);
@@ -0,0 +1,29 @@
+-- Indexes of the lookups beyond the primary keys.
+
+-- booker pages and QR codes, by the signature in their URL
+CREATE UNIQUE INDEX IF NOT EXISTS booker_email_signature_idx ON booker (email_signature);
+
+-- participants of a booker
+CREATE INDEX IF NOT EXISTS participant_booker_email_idx ON participant (booker_email);
+
+-- activities of an event
+CREATE INDEX IF NOT EXISTS activity_event_id_idx ON activity (event_id);
+
+-- registrations of an activity, in registration order (the first ones get the seats)
+CREATE INDEX IF NOT EXISTS activity_participant_activity_id_registration_time_idx
+    ON activity_participant (activity_id, registration_time);
+
+-- registrations of a participant, and the foreign key checks on participant deletes
+CREATE INDEX IF NOT EXISTS activity_participant_participant_id_idx ON activity_participant (participant_id);
+CREATE INDEX IF NOT EXISTS lottery_entry_participant_id_idx ON lottery_entry (participant_id);
+
+-- campaigns of an event, the latest first
+CREATE INDEX IF NOT EXISTS reminder_campaign_event_id_creation_time_idx ON reminder_campaign (event_id, creation_time);
+
+-- due emails claimed by the outbox workers, the sent ones are not indexed
+CREATE INDEX IF NOT EXISTS email_outbox_message_pending_idx
+    ON email_outbox_message (priority, next_attempt_time)
+    WHERE status = 'PENDING';
+
+-- at most one active event, the one shown on the public pages
+CREATE UNIQUE INDEX IF NOT EXISTS event_single_active_idx ON event (active) WHERE active;
@@ -0,0 +1,15 @@
+-- The ids of events, activities and participants come from sequences instead of identity columns, so Hibernate can
+-- batch their inserts. Hibernate takes the ids by blocks of 50: a sequence value `n` gives the ids from `n - 49` to
+-- `n`, so the sequences start 50 above the current ids.
+
+ALTER TABLE event ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS event_seq INCREMENT BY 50;
+SELECT setval('event_seq', (SELECT coalesce(max(id), 0) + 50 FROM event), false);
+
+ALTER TABLE activity ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS activity_seq INCREMENT BY 50;
+SELECT setval('activity_seq', (SELECT coalesce(max(id), 0) + 50 FROM activity), false);
+
+ALTER TABLE participant ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS participant_seq INCREMENT BY 50;
+SELECT setval('participant_seq', (SELECT coalesce(max(id), 0) + 50 FROM participant), false);
@@ -0,0 +1,27 @@
+-- Bookers are identified by a numeric id instead of their email, so the participants reference them by a bigint, and
+-- the email can change without touching them. The existing bookers are numbered in creation order, and the sequence
+-- starts 50 above them (see V3).
+
+CREATE SEQUENCE IF NOT EXISTS booker_seq INCREMENT BY 50;
+
+ALTER TABLE booker ADD COLUMN id bigint;
+UPDATE booker
+SET id = numbered.id
+FROM (SELECT email, row_number() OVER (ORDER BY creation_time, email) AS id FROM booker) AS numbered
+WHERE booker.email = numbered.email;
+ALTER TABLE booker ALTER COLUMN id SET NOT NULL;
+SELECT setval('booker_seq', (SELECT coalesce(max(id), 0) + 50 FROM booker), false);
+
+ALTER TABLE participant ADD COLUMN booker_id bigint;
+UPDATE participant SET booker_id = booker.id FROM booker WHERE participant.booker_email = booker.email;
+ALTER TABLE participant ALTER COLUMN booker_id SET NOT NULL;
+-- drops its foreign key and index too
+ALTER TABLE participant DROP COLUMN booker_email;
+
+ALTER TABLE booker DROP CONSTRAINT booker_pkey;
+ALTER TABLE booker ADD CONSTRAINT booker_pkey PRIMARY KEY (id);
+ALTER TABLE booker ADD CONSTRAINT booker_email_key UNIQUE (email);
+
+ALTER TABLE participant ADD CONSTRAINT participant_booker_fk FOREIGN KEY (booker_id) REFERENCES booker;
+-- participants of a booker
+CREATE INDEX participant_booker_id_idx ON participant (booker_id);
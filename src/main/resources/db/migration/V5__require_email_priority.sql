@@ -0,0 +1,7 @@
+-- The outbox workers claim the messages by priority: the messages queued before the column existed get the priority of
+-- their type, otherwise they would never be claimed.
+
+UPDATE email_outbox_message
+SET priority = CASE WHEN email_type = 'LAST_REMINDER' THEN 'BULK' ELSE 'TRANSACTIONAL' END
+WHERE priority IS NULL;
+ALTER TABLE email_outbox_message ALTER COLUMN priority SET NOT NULL;
@@ -0,0 +1,11 @@
+-- Emails rendered when they are sent, from their coalescing key, such as the participants changes of a booker: they
+-- are queued in the transaction of the change, without their recipient and content.
+-- The ones not claimed yet by a worker are unique by key, so the next changes are coalesced into them, and a change
+-- after the claim queues another email.
+
+ALTER TABLE email_outbox_message ADD COLUMN coalescing_key varchar(255);
+ALTER TABLE email_outbox_message ALTER COLUMN recipient DROP NOT NULL;
+
+CREATE UNIQUE INDEX email_outbox_message_coalescing_key_idx
+    ON email_outbox_message (email_type, coalescing_key)
+    WHERE status = 'PENDING' AND attempts = 0;
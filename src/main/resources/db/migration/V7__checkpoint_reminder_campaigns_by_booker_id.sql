@@ -0,0 +1,11 @@
+-- Reminder campaigns process the bookers in the order of their id, which does not change with their email.
+-- The campaigns interrupted with an email checkpoint can't be resumed from an id: they are failed, to be started
+-- again by an admin, rather than sent twice to some bookers.
+
+ALTER TABLE reminder_campaign ADD COLUMN last_booker_id bigint;
+
+UPDATE reminder_campaign
+SET status = 'FAILED', completion_time = now()
+WHERE status = 'RUNNING' AND last_booker_email IS NOT NULL;
+
+ALTER TABLE reminder_campaign DROP COLUMN last_booker_email;
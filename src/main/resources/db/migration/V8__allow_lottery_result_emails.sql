@@ -0,0 +1,4 @@
+-- The DBs created by `ddl-auto: update` got a check constraint listing the email types of that time, which rejects the
+-- `LOTTERY_RESULT` emails: the types are validated by the application, as in the DBs created by the migrations.
+
+ALTER TABLE email_outbox_message DROP CONSTRAINT IF EXISTS email_outbox_message_email_type_check;
@@ -2,24 +2,34 @@
 package org.montrealjug.billetterie.email;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import gg.jte.TemplateEngine;
+import java.time.Duration;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EmptySource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.montrealjug.billetterie.email.EmailConfiguration.EmailProperties;
+import org.montrealjug.billetterie.repository.EmailOutboxMessageRepository;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 import org.springframework.context.support.ResourceBundleMessageSource;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.support.TransactionTemplate;
 
 public class EmailConfigurationTest {
 
+    private final EmailOutboxMessageRepository repository = mock(EmailOutboxMessageRepository.class);
+
     private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
         .withUserConfiguration(EmailConfiguration.class)
         .withBean(TemplateEngine.class, () -> mock(TemplateEngine.class))
-        .withBean(ResourceBundleMessageSource.class, () -> mock(ResourceBundleMessageSource.class));
+        .withBean(ResourceBundleMessageSource.class, () -> mock(ResourceBundleMessageSource.class))
+        .withBean(EmailOutboxMessageRepository.class, () -> repository)
+        .withBean(TransactionTemplate.class, () -> mock(TransactionTemplate.class));
 
     @Test
     void emailConfiguration_should_provide_NO_OP_EmailSender_if_no_JavaMailSender_bean_is_available() {
@@ -52,6 +62,19 @@ public class EmailConfigurationTest {
             );
     }
 
+    @Test
+    void emailConfiguration_should_provide_a_PooledSmtpEmailSender_if_JavaMailSender_is_a_JavaMailSenderImpl() {
+        contextRunner
+            .withPropertyValues(VALID_PROPERTIES)
+            .withBean(JavaMailSender.class, JavaMailSenderImpl::new)
+            .run(context ->
+                assertThat(context)
+                    .hasSingleBean(EmailSender.class)
+                    .getBean(EmailSender.class)
+                    .isInstanceOf(PooledSmtpEmailSender.class)
+            );
+    }
+
     @Test
     void emailConfiguration_should_provide_NO_OP_EmailSender_if_mode_is_NO_OP() {
         contextRunner
@@ -81,6 +104,43 @@ public class EmailConfigurationTest {
         contextRunner.withPropertyValues(invalidProperties).run(context -> assertThat(context).hasFailed());
     }
 
+    @Test
+    void emailConfiguration_should_reject_a_transactionalReserve_not_less_than_perHour() {
+        contextRunner
+            .withPropertyValues(VALID_PROPERTIES)
+            .withPropertyValues("app.mail.rate-limit.per-hour=100", "app.mail.rate-limit.transactional-reserve=100")
+            .run(context -> assertThat(context).hasFailed());
+    }
+
+    @Test
+    void emailConfiguration_should_start_the_hourly_quota_from_the_emails_sent_in_the_last_hour() {
+        when(repository.countBySentTimeAfter(any())).thenReturn(990L);
+        contextRunner
+            .withPropertyValues(VALID_PROPERTIES)
+            .run(context -> {
+                // 10 tokens left out of the default 1000 per hour, plus the refill since the start
+                var tokensPerHour = context.getBean(EmailRateLimiter.class).tokensPerHour();
+                assertThat(tokensPerHour).isGreaterThanOrEqualTo(10).isLessThan(11);
+            });
+    }
+
+    @Test
+    void emailConfiguration_should_provide_an_EmailOutbox_with_default_OutboxProperties() {
+        contextRunner
+            .withPropertyValues(VALID_PROPERTIES[0], VALID_PROPERTIES[1], VALID_PROPERTIES[2], VALID_PROPERTIES[3])
+            .run(context -> {
+                assertThat(context).hasSingleBean(EmailOutbox.class);
+                var outbox = context.getBean(EmailProperties.class).outbox();
+                assertThat(outbox.workers()).isEqualTo(2);
+                assertThat(outbox.maxAttempts()).isEqualTo(8);
+                assertThat(outbox.initialBackoff()).isEqualTo(Duration.ofSeconds(30));
+                assertThat(outbox.maxBackoff()).isEqualTo(Duration.ofHours(1));
+                var rateLimit = context.getBean(EmailProperties.class).rateLimit();
+                assertThat(rateLimit.perSecond()).isEqualTo(5);
+                assertThat(rateLimit.perHour()).isEqualTo(1000);
+            });
+    }
+
     @Test
     void valid_EmailProperties_should_have_valid_asInternetAddress() {
         contextRunner
@@ -103,5 +163,6 @@ public class EmailConfigurationTest {
         "app.mail.from.name=From Test",
         "app.mail.reply-to.address=reply-to@test.org",
         "app.mail.reply-to.name=Reply To Test",
+        "app.mail.outbox.workers=0",
     };
 }
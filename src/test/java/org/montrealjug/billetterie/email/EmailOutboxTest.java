@@ -0,0 +1,320 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.montrealjug.billetterie.email.EmailModel.Email;
+import org.montrealjug.billetterie.email.EmailModel.EmailToSend;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailModel.Priority;
+import org.montrealjug.billetterie.entity.EmailOutboxMessage;
+import org.montrealjug.billetterie.entity.EmailOutboxMessage.Status;
+import org.montrealjug.billetterie.repository.EmailOutboxMessageRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class EmailOutboxTest {
+
+    static final Instant NOW = Instant.parse("2026-03-01T10:00:00Z");
+
+    @Mock
+    EmailSender emailSender;
+
+    @Mock
+    EmailWriter emailWriter;
+
+    @Mock
+    ObjectProvider<DeferredEmailRenderer> deferredEmailRenderers;
+
+    @Mock
+    DeferredEmailRenderer renderer;
+
+    @Mock
+    EmailOutboxMessageRepository repository;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    SimpleMeterRegistry meterRegistry;
+    EmailOutbox emailOutbox;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        emailOutbox = new EmailOutbox(
+            emailSender,
+            emailWriter,
+            deferredEmailRenderers,
+            new EmailRateLimiter(10, 10, 1000, 100, 0, Clock.fixed(NOW, ZoneOffset.UTC)),
+            repository,
+            new TransactionTemplate(transactionManager),
+            EmailTestHelper.outboxProperties(),
+            meterRegistry,
+            Clock.fixed(NOW, ZoneOffset.UTC)
+        );
+    }
+
+    @Test
+    void enqueue_should_save_a_pending_message() throws Exception {
+        var emailToSend = new EmailToSend(
+            new InternetAddress("booker@test.org", "Booker"),
+            "subject",
+            "plain",
+            "<p>html</p>",
+            Optional.of(new byte[] { 1, 2 })
+        );
+
+        emailOutbox.enqueue(emailToSend, EmailType.AFTER_REGISTRATION);
+
+        var captor = ArgumentCaptor.forClass(EmailOutboxMessage.class);
+        verify(repository).save(captor.capture());
+        var message = captor.getValue();
+        assertThat(message.getStatus()).isEqualTo(Status.PENDING);
+        assertThat(message.getEmailType()).isEqualTo(EmailType.AFTER_REGISTRATION);
+        assertThat(message.getPriority()).isEqualTo(Priority.TRANSACTIONAL);
+        assertThat(message.getRecipient()).isEqualTo("Booker <booker@test.org>");
+        assertThat(message.getAttachment()).containsExactly(1, 2);
+        assertThat(message.getNextAttemptTime()).isEqualTo(NOW);
+    }
+
+    @Test
+    void enqueueDeferred_should_insert_a_message_due_at_the_send_time() {
+        emailOutbox.enqueueDeferred(EmailType.AFTER_PARTICIPANTS_CHANGES, "1:2", NOW.plusSeconds(60));
+
+        verify(repository).insertDeferredIfAbsent(
+            "AFTER_PARTICIPANTS_CHANGES",
+            "TRANSACTIONAL",
+            "1:2",
+            NOW,
+            NOW.plusSeconds(60)
+        );
+    }
+
+    @Test
+    void drain_should_render_the_deferred_messages_when_sending_them() throws Exception {
+        var email = mock(Email.class);
+        var emailToSend = new EmailToSend(
+            new InternetAddress("booker@test.org"),
+            "subject",
+            "plain",
+            "html",
+            Optional.empty()
+        );
+        when(repository.findDueForUpdate(Priority.TRANSACTIONAL, NOW, 10)).thenReturn(List.of(deferredMessage()));
+        when(deferredEmailRenderers.orderedStream()).thenReturn(Stream.of(renderer));
+        when(renderer.type()).thenReturn(EmailType.AFTER_PARTICIPANTS_CHANGES);
+        when(renderer.render("1:2")).thenReturn(Optional.of(email));
+        when(emailWriter.write(email)).thenReturn(emailToSend);
+        when(emailSender.sendAll(List.of(emailToSend))).thenReturn(Map.of());
+
+        assertThat(emailOutbox.drain()).isEqualTo(1);
+
+        verify(repository).markSent(List.of(42L), NOW);
+    }
+
+    @Test
+    void drain_should_close_the_deferred_messages_with_nothing_to_send() {
+        when(repository.findDueForUpdate(Priority.TRANSACTIONAL, NOW, 10)).thenReturn(List.of(deferredMessage()));
+        when(deferredEmailRenderers.orderedStream()).thenReturn(Stream.of(renderer));
+        when(renderer.type()).thenReturn(EmailType.AFTER_PARTICIPANTS_CHANGES);
+        when(renderer.render("1:2")).thenReturn(Optional.empty());
+
+        assertThat(emailOutbox.drain()).isEqualTo(1);
+
+        verify(repository).markSent(List.of(42L), NOW);
+        verify(emailSender).sendAll(List.of());
+    }
+
+    @Test
+    void drain_should_retry_the_deferred_messages_failing_to_render() {
+        when(repository.findDueForUpdate(Priority.TRANSACTIONAL, NOW, 10)).thenReturn(List.of(deferredMessage()));
+        when(deferredEmailRenderers.orderedStream()).thenReturn(Stream.of(renderer));
+        when(renderer.type()).thenReturn(EmailType.AFTER_PARTICIPANTS_CHANGES);
+        when(renderer.render("1:2")).thenThrow(new IllegalStateException("DB down"));
+
+        emailOutbox.drain();
+
+        verify(repository, never()).markSent(any(), any());
+        verify(repository).markFailed(
+            eq(42L),
+            eq(Status.PENDING),
+            eq(NOW.plus(Duration.ofSeconds(30))),
+            eq("java.lang.IllegalStateException: DB down")
+        );
+    }
+
+    @Test
+    void drain_should_send_due_messages_and_mark_them_sent() throws Exception {
+        var message = message(0);
+        when(repository.findDueForUpdate(Priority.TRANSACTIONAL, NOW, 10)).thenReturn(List.of(message));
+        when(emailSender.sendAll(any())).thenReturn(Map.of());
+
+        assertThat(emailOutbox.drain()).isEqualTo(1);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EmailToSend>> captor = ArgumentCaptor.forClass(List.class);
+        verify(emailSender).sendAll(captor.capture());
+        assertThat(captor.getValue())
+            .singleElement()
+            .satisfies(email -> assertThat(email.to().getAddress()).isEqualTo("booker@test.org"))
+            .satisfies(email -> assertThat(email.attachment()).isEmpty());
+        verify(repository).markSent(List.of(42L), NOW);
+        var queueWait = meterRegistry.get("billetterie.mail.queue.wait").tag("priority", "TRANSACTIONAL").timer();
+        assertThat(queueWait.count()).isEqualTo(1);
+        assertThat(queueWait.totalTime(TimeUnit.SECONDS)).isEqualTo(90);
+        // claimed with a lease
+        assertThat(message.getAttempts()).isEqualTo(1);
+        assertThat(message.getNextAttemptTime()).isEqualTo(NOW.plus(Duration.ofMinutes(5)));
+    }
+
+    @Test
+    void drain_should_retry_failed_messages_with_an_exponential_backoff() throws Exception {
+        when(repository.findDueForUpdate(Priority.TRANSACTIONAL, NOW, 10)).thenReturn(List.of(message(1)));
+        when(emailSender.sendAll(any())).thenReturn(Map.of(0, new MessagingException("SMTP down")));
+
+        emailOutbox.drain();
+
+        verify(repository, never()).markSent(any(), any());
+        verify(repository).markFailed(
+            eq(42L),
+            eq(Status.PENDING),
+            eq(NOW.plus(Duration.ofMinutes(1))),
+            eq("jakarta.mail.MessagingException: SMTP down")
+        );
+    }
+
+    @Test
+    void drain_should_mark_messages_dead_after_max_attempts() throws Exception {
+        when(repository.findDueForUpdate(Priority.TRANSACTIONAL, NOW, 10)).thenReturn(List.of(message(2)));
+        when(emailSender.sendAll(any())).thenReturn(Map.of(0, new MessagingException("SMTP down")));
+
+        emailOutbox.drain();
+
+        verify(repository).markFailed(eq(42L), eq(Status.DEAD), eq(NOW), any());
+    }
+
+    @Test
+    void drain_should_only_send_the_messages_with_a_valid_recipient() {
+        var invalid = message(0);
+        invalid.setId(43);
+        invalid.setRecipient("not an <address");
+        when(repository.findDueForUpdate(Priority.TRANSACTIONAL, NOW, 10)).thenReturn(List.of(invalid, message(0)));
+        when(emailSender.sendAll(any())).thenReturn(Map.of());
+
+        assertThat(emailOutbox.drain()).isEqualTo(2);
+
+        verify(repository).markSent(List.of(42L), NOW);
+        verify(repository).markFailed(eq(43L), eq(Status.PENDING), any(), any());
+    }
+
+    @Test
+    void drain_should_claim_bulk_messages_with_the_tokens_left_by_transactional_ones() {
+        var bulk = message(0);
+        bulk.setId(43);
+        bulk.setPriority(Priority.BULK);
+        when(repository.findDueForUpdate(Priority.TRANSACTIONAL, NOW, 10)).thenReturn(List.of(message(0)));
+        when(repository.findDueForUpdate(Priority.BULK, NOW, 9)).thenReturn(List.of(bulk));
+        when(emailSender.sendAll(any())).thenReturn(Map.of());
+
+        assertThat(emailOutbox.drain()).isEqualTo(2);
+
+        verify(repository).markSent(List.of(42L, 43L), NOW);
+    }
+
+    @Test
+    void drain_should_only_claim_the_given_priorities() {
+        when(repository.findDueForUpdate(Priority.TRANSACTIONAL, NOW, 10)).thenReturn(List.of());
+
+        assertThat(emailOutbox.drain(List.of(Priority.TRANSACTIONAL))).isZero();
+
+        verify(repository, never()).findDueForUpdate(eq(Priority.BULK), any(), anyInt());
+    }
+
+    @Test
+    void awaitBulkCapacity_should_not_wait_without_running_workers() throws Exception {
+        when(repository.countByStatusAndPriority(Status.PENDING, Priority.BULK)).thenReturn(1_000L);
+
+        emailOutbox.awaitBulkCapacity();
+    }
+
+    @Test
+    void drain_should_not_claim_messages_without_tokens() {
+        emailOutbox = new EmailOutbox(
+            emailSender,
+            emailWriter,
+            deferredEmailRenderers,
+            // the hourly tokens left after the emails sent in the last hour are all in the transactional reserve
+            new EmailRateLimiter(10, 10, 1000, 100, 900, Clock.fixed(NOW, ZoneOffset.UTC)),
+            repository,
+            new TransactionTemplate(transactionManager),
+            EmailTestHelper.outboxProperties(),
+            meterRegistry,
+            Clock.fixed(NOW, ZoneOffset.UTC)
+        );
+        when(repository.findDueForUpdate(Priority.TRANSACTIONAL, NOW, 10)).thenReturn(List.of());
+
+        assertThat(emailOutbox.drain()).isZero();
+
+        verify(repository, never()).findDueForUpdate(eq(Priority.BULK), any(), anyInt());
+    }
+
+    @Test
+    void backoff_should_double_at_each_attempt_up_to_max_backoff() {
+        assertThat(emailOutbox.backoff(1)).isEqualTo(Duration.ofSeconds(30));
+        assertThat(emailOutbox.backoff(2)).isEqualTo(Duration.ofMinutes(1));
+        assertThat(emailOutbox.backoff(3)).isEqualTo(Duration.ofMinutes(1));
+        assertThat(emailOutbox.backoff(100)).isEqualTo(Duration.ofMinutes(1));
+    }
+
+    // as inserted by `enqueueDeferred`, then claimed
+    private static EmailOutboxMessage deferredMessage() {
+        var message = new EmailOutboxMessage();
+        message.setId(42);
+        message.setEmailType(EmailType.AFTER_PARTICIPANTS_CHANGES);
+        message.setPriority(Priority.TRANSACTIONAL);
+        message.setCreationTime(NOW.minusSeconds(90));
+        message.setCoalescingKey("1:2");
+        return message;
+    }
+
+    private static EmailOutboxMessage message(int attempts) {
+        var message = new EmailOutboxMessage();
+        message.setId(42);
+        message.setEmailType(EmailType.AFTER_BOOKING);
+        message.setPriority(Priority.TRANSACTIONAL);
+        message.setCreationTime(NOW.minusSeconds(90));
+        message.setRecipient("booker@test.org");
+        message.setSubject("subject");
+        message.setPlainText("plain");
+        message.setHtml("<p>html</p>");
+        message.setAttempts(attempts);
+        return message;
+    }
+}
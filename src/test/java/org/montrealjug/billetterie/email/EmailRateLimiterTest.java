@@ -0,0 +1,103 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.montrealjug.billetterie.email.EmailModel.Priority;
+
+class EmailRateLimiterTest {
+
+    static final class MutableClock extends Clock {
+
+        private Instant instant = Instant.parse("2026-03-01T10:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    MutableClock clock;
+    EmailRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock();
+        // burst of 10, 5 per second, 60 per hour with 20 kept for transactional emails
+        rateLimiter = new EmailRateLimiter(10, 5, 60, 20, 0, clock);
+    }
+
+    @Test
+    void acquireUpTo_should_allow_a_burst_then_refill_at_the_rate_per_second() {
+        assertThat(rateLimiter.acquireUpTo(Priority.TRANSACTIONAL, 15)).isEqualTo(10);
+        assertThat(rateLimiter.acquireUpTo(Priority.TRANSACTIONAL, 15)).isZero();
+
+        clock.advance(Duration.ofMillis(600));
+        assertThat(rateLimiter.acquireUpTo(Priority.TRANSACTIONAL, 15)).isEqualTo(3);
+
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(rateLimiter.acquireUpTo(Priority.TRANSACTIONAL, 15)).isEqualTo(10);
+    }
+
+    @Test
+    void acquireUpTo_should_keep_the_transactional_reserve_from_bulk_emails() {
+        var bulk = 0;
+        for (int i = 0; i < 20; i++) {
+            bulk += rateLimiter.acquireUpTo(Priority.BULK, 10);
+            clock.advance(Duration.ofSeconds(2));
+        }
+
+        // the hourly bucket barely refilled in 40s
+        assertThat(bulk).isEqualTo(40);
+        assertThat(rateLimiter.acquireUpTo(Priority.BULK, 10)).isZero();
+        assertThat(rateLimiter.acquireUpTo(Priority.TRANSACTIONAL, 10)).isEqualTo(10);
+    }
+
+    @Test
+    void acquireUpTo_should_not_count_the_emails_sent_in_the_last_hour_again() {
+        // restarted after 50 emails sent in the last hour
+        rateLimiter = new EmailRateLimiter(10, 5, 60, 20, 50, clock);
+
+        assertThat(rateLimiter.tokensPerHour()).isEqualTo(10);
+        assertThat(rateLimiter.acquireUpTo(Priority.BULK, 10)).isZero();
+        assertThat(rateLimiter.acquireUpTo(Priority.TRANSACTIONAL, 15)).isEqualTo(10);
+
+        // more emails than the quota were sent, e.g. with another configuration
+        rateLimiter = new EmailRateLimiter(10, 5, 60, 20, 100, clock);
+
+        assertThat(rateLimiter.tokensPerHour()).isZero();
+        assertThat(rateLimiter.acquireUpTo(Priority.TRANSACTIONAL, 10)).isZero();
+    }
+
+    @Test
+    void release_should_give_back_unused_tokens() {
+        assertThat(rateLimiter.acquireUpTo(Priority.TRANSACTIONAL, 10)).isEqualTo(10);
+
+        rateLimiter.release(4);
+
+        assertThat(rateLimiter.tokensPerSecond()).isEqualTo(4);
+        assertThat(rateLimiter.tokensPerHour()).isEqualTo(54);
+        assertThat(rateLimiter.acquireUpTo(Priority.TRANSACTIONAL, 10)).isEqualTo(4);
+    }
+}
@@ -1,8 +1,9 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.email;
 
-import static org.assertj.core.api.Assertions.assertThatCode;
-import static org.mockito.Mockito.doThrow;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -13,12 +14,13 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.montrealjug.billetterie.email.EmailModel.Email;
 import org.montrealjug.billetterie.email.EmailModel.EmailToSend;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
 
 @ExtendWith(MockitoExtension.class)
 class EmailServiceTest {
 
     @Mock
-    SmtpEmailSender emailSender;
+    EmailOutbox emailOutbox;
 
     @Mock
     EmailWriter emailWriter;
@@ -33,33 +35,26 @@ class EmailServiceTest {
 
     @BeforeEach
     void setUp() {
-        emailService = new EmailService(emailSender, emailWriter);
+        emailService = new EmailService(emailWriter, emailOutbox);
     }
 
     @Test
-    void sendEmail_should_call_emailSender_send_with_the_result_of_emailWriter_write() throws Exception {
+    void sendEmail_should_enqueue_the_result_of_emailWriter_write() {
         when(emailWriter.write(email)).thenReturn(emailToSend);
+        when(email.type()).thenReturn(EmailType.AFTER_BOOKING);
 
         emailService.sendEmail(email);
 
         verify(emailWriter).write(email);
-        verify(emailSender).send(emailToSend);
+        verify(emailOutbox).enqueue(emailToSend, EmailType.AFTER_BOOKING);
     }
 
     @Test
-    void sendEmail_should_catch_any_exception_thrown_by_emailWriter() {
+    void sendEmail_should_throw_any_exception_thrown_by_emailWriter() {
         var exception = new NullPointerException("...null?");
         when(emailWriter.write(email)).thenThrow(exception);
 
-        assertThatCode(() -> emailService.sendEmail(email)).doesNotThrowAnyException();
-    }
-
-    @Test
-    void sendEmail_should_catch_any_exception_thrown_by_emailSender() throws Exception {
-        when(emailWriter.write(email)).thenReturn(emailToSend);
-        var exception = new NullPointerException("...null?");
-        doThrow(exception).when(emailSender).send(emailToSend);
-
-        assertThatCode(() -> emailService.sendEmail(email)).doesNotThrowAnyException();
+        assertThatThrownBy(() -> emailService.sendEmail(email)).isSameAs(exception);
+        verify(emailOutbox, never()).enqueue(any(), any());
     }
 }
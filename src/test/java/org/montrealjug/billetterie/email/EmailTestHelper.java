@@ -4,16 +4,42 @@ package org.montrealjug.billetterie.email;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import org.montrealjug.billetterie.email.EmailConfiguration.EmailAddress;
 import org.montrealjug.billetterie.email.EmailConfiguration.EmailMode;
 import org.montrealjug.billetterie.email.EmailConfiguration.EmailProperties;
+import org.montrealjug.billetterie.email.EmailConfiguration.OutboxProperties;
+import org.montrealjug.billetterie.email.EmailConfiguration.RateLimitProperties;
+import org.montrealjug.billetterie.email.EmailConfiguration.SmtpPoolProperties;
 
 class EmailTestHelper {
 
     static EmailProperties emailProperties() {
         var from = new EmailAddress("from@test.org", "From Test");
         var replyTo = new EmailAddress("reply-to@test.org", "Reply To Test");
-        return new EmailProperties(EmailMode.NO_OP, from, replyTo);
+        return new EmailProperties(
+            EmailMode.NO_OP,
+            from,
+            replyTo,
+            outboxProperties(),
+            new SmtpPoolProperties(2, 100),
+            new RateLimitProperties(10, 5, 1000, 200)
+        );
+    }
+
+    static OutboxProperties outboxProperties() {
+        return new OutboxProperties(
+            2,
+            1,
+            10,
+            Duration.ofSeconds(1),
+            3,
+            Duration.ofSeconds(30),
+            Duration.ofMinutes(1),
+            Duration.ofMinutes(5),
+            Duration.ofDays(30),
+            500
+        );
     }
 
     static String loadResourceContent(String resourceName) {
@@ -0,0 +1,135 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.email;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process SMTP server, accepting everything, to test SMTP senders without a network.
+ * <p>
+ * `handshakeDelay` simulates the cost of opening a session (TLS, AUTH...) on a real server, and `roundTrip` the
+ * network latency of each reply.
+ */
+class FakeSmtpServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Duration handshakeDelay;
+    private final int maxMessagesPerConnection;
+    private final Duration roundTrip;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger messages = new AtomicInteger();
+    private final AtomicInteger noops = new AtomicInteger();
+
+    /**
+     * @param maxMessagesPerConnection the connection is dropped, without reply, on the next message after this count
+     */
+    FakeSmtpServer(Duration handshakeDelay, int maxMessagesPerConnection) throws IOException {
+        this(handshakeDelay, maxMessagesPerConnection, Duration.ZERO);
+    }
+
+    FakeSmtpServer(Duration handshakeDelay, int maxMessagesPerConnection, Duration roundTrip) throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.handshakeDelay = handshakeDelay;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.roundTrip = roundTrip;
+        executor.execute(this::accept);
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    int messages() {
+        return messages.get();
+    }
+
+    int noops() {
+        return noops.get();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                var socket = serverSocket.accept();
+                connections.incrementAndGet();
+                executor.execute(() -> handle(socket));
+            } catch (IOException e) {
+                // closed
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (
+            socket;
+            var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            var out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII)
+        ) {
+            Thread.sleep(handshakeDelay);
+            reply(out, "220 localhost fake SMTP");
+            var received = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                var command = line.length() < 4 ? line.toUpperCase() : line.substring(0, 4).toUpperCase();
+                switch (command) {
+                    case "EHLO", "HELO" -> reply(out, "250 localhost");
+                    case "MAIL" -> {
+                        if (received >= maxMessagesPerConnection) {
+                            return;
+                        }
+                        reply(out, "250 OK");
+                    }
+                    case "DATA" -> {
+                        reply(out, "354 end with .");
+                        while (!".".equals(in.readLine())) {
+                            // skip the content
+                        }
+                        received++;
+                        messages.incrementAndGet();
+                        reply(out, "250 OK");
+                    }
+                    case "QUIT" -> {
+                        reply(out, "221 bye");
+                        return;
+                    }
+                    case "NOOP" -> {
+                        noops.incrementAndGet();
+                        reply(out, "250 OK");
+                    }
+                    default -> reply(out, "250 OK"); // RCPT, RSET...
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reply(PrintWriter out, String reply) throws InterruptedException {
+        Thread.sleep(roundTrip);
+        out.print(reply + "\r\n");
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+}
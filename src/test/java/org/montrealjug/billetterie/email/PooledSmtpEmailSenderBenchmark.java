@@ -0,0 +1,92 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.email;
+
+import jakarta.mail.internet.InternetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.montrealjug.billetterie.email.EmailConfiguration.SmtpPoolProperties;
+import org.montrealjug.billetterie.email.EmailModel.EmailToSend;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+/**
+ * Throughput of `PooledSmtpEmailSender` on one connection to a `FakeSmtpServer` replying after `ROUND_TRIP`,
+ * depending on how often the connection is checked with a NOOP. Checking an idle connection before each email, as
+ * it was done before, is the same as batches of one email checked whatever their idle time.
+ * <p>
+ * Not a test, run its `main` from the IDE, or with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     org.montrealjug.billetterie.email.PooledSmtpEmailSenderBenchmark
+ * </pre>
+ */
+class PooledSmtpEmailSenderBenchmark {
+
+    private static final Duration ROUND_TRIP = Duration.ofMillis(2);
+    private static final int EMAILS = 500;
+    // as `outbox.batch-size`
+    private static final int BATCH_SIZE = 10;
+
+    public static void main(String[] args) throws Exception {
+        run("noop per email", 1, Duration.ZERO);
+        run("noop per batch", BATCH_SIZE, Duration.ZERO);
+        run("noop when idle", BATCH_SIZE, PooledSmtpEmailSender.IDLE_CHECK);
+    }
+
+    private static void run(String name, int batchSize, Duration idleCheck) throws Exception {
+        var emails = emails();
+        try (
+            var server = new FakeSmtpServer(Duration.ZERO, Integer.MAX_VALUE, ROUND_TRIP);
+            var sender = new PooledSmtpEmailSender(
+                javaMailSender(server),
+                EmailTestHelper.emailProperties(),
+                new SmtpPoolProperties(1, Integer.MAX_VALUE),
+                idleCheck
+            )
+        ) {
+            // opens the connection
+            sender.sendAll(emails.subList(0, 1));
+            var noopsBefore = server.noops();
+            var start = System.nanoTime();
+            for (int from = 0; from < emails.size(); from += batchSize) {
+                var failures = sender.sendAll(emails.subList(from, Math.min(from + batchSize, emails.size())));
+                if (!failures.isEmpty()) {
+                    throw new IllegalStateException("failed to send " + failures);
+                }
+            }
+            var elapsed = System.nanoTime() - start;
+            System.out.printf(
+                "%-15s %6.2f ms/email %5d NOOPs for %d emails%n",
+                name,
+                elapsed / 1e6 / emails.size(),
+                server.noops() - noopsBefore,
+                emails.size()
+            );
+        }
+    }
+
+    private static JavaMailSenderImpl javaMailSender(FakeSmtpServer server) {
+        var javaMailSender = new JavaMailSenderImpl();
+        javaMailSender.setHost("localhost");
+        javaMailSender.setPort(server.port());
+        return javaMailSender;
+    }
+
+    private static List<EmailToSend> emails() throws Exception {
+        var emails = new ArrayList<EmailToSend>();
+        for (int i = 0; i < EMAILS; i++) {
+            emails.add(
+                new EmailToSend(
+                    new InternetAddress("booker" + i + "@test.org"),
+                    "Subject " + i,
+                    "plain text",
+                    "<p>html</p>",
+                    Optional.empty()
+                )
+            );
+        }
+        return emails;
+    }
+}
@@ -0,0 +1,211 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.montrealjug.billetterie.email.EmailConfiguration.SmtpPoolProperties;
+import org.montrealjug.billetterie.email.EmailModel.EmailToSend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+class PooledSmtpEmailSenderTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledSmtpEmailSenderTest.class);
+
+    @Test
+    void sendAll_should_reuse_connections() throws Exception {
+        try (
+            var server = new FakeSmtpServer(Duration.ZERO, Integer.MAX_VALUE);
+            var sender = pooledSender(server, 2, 100)
+        ) {
+            var failures = sender.sendAll(emails(20));
+            sender.send(emails(1).getFirst());
+
+            assertThat(failures).isEmpty();
+            assertThat(server.messages()).isEqualTo(21);
+            assertThat(server.connections()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void sendAll_should_only_check_a_connection_idle_for_IDLE_CHECK() throws Exception {
+        try (
+            var server = new FakeSmtpServer(Duration.ZERO, Integer.MAX_VALUE);
+            var sender = pooledSender(server, 1, 100)
+        ) {
+            assertThat(sender.sendAll(emails(10))).isEmpty();
+            assertThat(sender.sendAll(emails(10))).isEmpty();
+
+            assertThat(server.messages()).isEqualTo(20);
+            assertThat(server.noops()).isZero();
+        }
+    }
+
+    @Test
+    void sendAll_should_check_an_idle_connection_once_per_batch() throws Exception {
+        try (
+            var server = new FakeSmtpServer(Duration.ZERO, Integer.MAX_VALUE);
+            var sender = new PooledSmtpEmailSender(
+                javaMailSender(server),
+                EmailTestHelper.emailProperties(),
+                new SmtpPoolProperties(1, 100),
+                Duration.ZERO
+            )
+        ) {
+            assertThat(sender.sendAll(emails(10))).isEmpty();
+            assertThat(sender.sendAll(emails(10))).isEmpty();
+
+            assertThat(server.messages()).isEqualTo(20);
+            // the first batch opens the connection
+            assertThat(server.noops()).isEqualTo(1);
+            assertThat(server.connections()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void sendAll_should_recycle_connections_after_maxMessagesPerConnection() throws Exception {
+        try (
+            var server = new FakeSmtpServer(Duration.ZERO, Integer.MAX_VALUE);
+            var sender = pooledSender(server, 1, 5)
+        ) {
+            assertThat(sender.sendAll(emails(12))).isEmpty();
+
+            assertThat(server.messages()).isEqualTo(12);
+            assertThat(server.connections()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void sendAll_should_recycle_connections_on_error() throws Exception {
+        // the server drops the connection on the 4th message
+        try (var server = new FakeSmtpServer(Duration.ZERO, 3); var sender = pooledSender(server, 1, 100)) {
+            var failures = sender.sendAll(emails(6));
+
+            assertThat(failures).containsOnlyKeys(3);
+            assertThat(server.messages()).isEqualTo(5);
+            assertThat(server.connections()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void send_should_fail_when_interrupted_while_waiting_for_a_connection() throws Exception {
+        try (
+            var server = new FakeSmtpServer(Duration.ofSeconds(1), Integer.MAX_VALUE);
+            var sender = pooledSender(server, 1, 100)
+        ) {
+            // holds the only connection during the handshake
+            var busy = CompletableFuture.supplyAsync(() -> sender.sendAll(emails(1)));
+            await().until(() -> server.connections() == 1);
+            var failure = new AtomicReference<Exception>();
+            var waiting = Thread.ofPlatform().start(() -> {
+                try {
+                    sender.send(emails(1).getFirst());
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            });
+            await().until(() -> waiting.getState() == Thread.State.WAITING);
+
+            waiting.interrupt();
+            waiting.join();
+
+            assertThat(failure.get())
+                .isInstanceOf(MessagingException.class)
+                .hasCauseInstanceOf(InterruptedException.class);
+            assertThat(busy.get()).isEmpty();
+            assertThat(server.messages()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void pooled_connections_should_improve_throughput_over_a_connection_per_email() throws Exception {
+        var handshakeDelay = Duration.ofMillis(20);
+        var emailCount = 40;
+        long pooledMillis;
+        long unpooledMillis;
+
+        try (
+            var server = new FakeSmtpServer(handshakeDelay, Integer.MAX_VALUE);
+            var sender = pooledSender(server, 2, 100)
+        ) {
+            pooledMillis = timeConcurrentSends(sender, emailCount);
+            assertThat(server.messages()).isEqualTo(emailCount);
+            assertThat(server.connections()).isLessThanOrEqualTo(2);
+        }
+        try (var server = new FakeSmtpServer(handshakeDelay, Integer.MAX_VALUE)) {
+            var sender = new SmtpEmailSender(javaMailSender(server), EmailTestHelper.emailProperties());
+            unpooledMillis = timeConcurrentSends(sender, emailCount);
+            assertThat(server.messages()).isEqualTo(emailCount);
+            assertThat(server.connections()).isEqualTo(emailCount);
+        }
+
+        LOGGER.info("{} emails sent in {} ms pooled, {} ms unpooled", emailCount, pooledMillis, unpooledMillis);
+        assertThat(pooledMillis).isLessThan(unpooledMillis);
+    }
+
+    // as the outbox workers do
+    private static long timeConcurrentSends(EmailSender sender, int emailCount) throws Exception {
+        var start = System.nanoTime();
+        try (var executor = Executors.newFixedThreadPool(2)) {
+            var tasks = new ArrayList<Callable<Void>>();
+            for (var email : emails(emailCount)) {
+                tasks.add(() -> {
+                    sender.send(email);
+                    return null;
+                });
+            }
+            for (var future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        }
+        return Duration.ofNanos(System.nanoTime() - start).toMillis();
+    }
+
+    private static PooledSmtpEmailSender pooledSender(FakeSmtpServer server, int size, int maxMessagesPerConnection) {
+        return new PooledSmtpEmailSender(
+            javaMailSender(server),
+            EmailTestHelper.emailProperties(),
+            new SmtpPoolProperties(size, maxMessagesPerConnection)
+        );
+    }
+
+    private static JavaMailSenderImpl javaMailSender(FakeSmtpServer server) {
+        var javaMailSender = new JavaMailSenderImpl();
+        javaMailSender.setHost("localhost");
+        javaMailSender.setPort(server.port());
+        return javaMailSender;
+    }
+
+    private static List<EmailToSend> emails(int count) {
+        return IntStream
+            .range(0, count)
+            .mapToObj(i -> {
+                try {
+                    return new EmailToSend(
+                        new InternetAddress("booker" + i + "@test.org"),
+                        "Subject " + i,
+                        "plain text",
+                        "<p>html</p>",
+                        Optional.of(new byte[] { 1, 2, 3 })
+                    );
+                } catch (Exception e) {
+                    throw new IllegalArgumentException(e);
+                }
+            })
+            .toList();
+    }
+}
@@ -193,7 +193,7 @@ class SmtpEmailSenderTest {
         var attachmentContent = attachmentPart.getContent();
         assertThat(attachmentContent).isInstanceOf(ByteArrayInputStream.class);
         var attachmentBytes = ((ByteArrayInputStream) attachmentContent).readAllBytes();
-        var expectedBytes = EmailTestHelper.loadResourceBinaryContent("email/qr_code.jpg");
+        var expectedBytes = EmailTestHelper.loadResourceBinaryContent("email/qr_code.png");
         assertThat(attachmentBytes).isEqualTo(expectedBytes);
     }
 
@@ -211,7 +211,7 @@ class SmtpEmailSenderTest {
 
     private static EmailToSend testDataWithAttachment() {
         var withoutAttachment = testData();
-        var attachment = EmailTestHelper.loadResourceBinaryContent("email/qr_code.jpg");
+        var attachment = EmailTestHelper.loadResourceBinaryContent("email/qr_code.png");
         return new EmailToSend(
             withoutAttachment.to(),
             withoutAttachment.subject(),
@@ -2,20 +2,29 @@
 package org.montrealjug.billetterie.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import jakarta.persistence.PersistenceException;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.montrealjug.billetterie.entity.Activity;
 import org.montrealjug.billetterie.entity.ActivityParticipant;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailModel.Priority;
 import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.EmailOutboxMessage;
 import org.montrealjug.billetterie.entity.Event;
 import org.montrealjug.billetterie.entity.Participant;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 
 @DataJpaTest(showSql = false)
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
@@ -36,6 +45,12 @@ public class RepositoryITTest {
     @Autowired
     ParticipantRepository participantRepository;
 
+    @Autowired
+    EmailOutboxMessageRepository emailOutboxMessageRepository;
+
+    @Autowired
+    TestEntityManager entityManager;
+
     @Test
     void registration_of_activity_participants_should_be_ordered_by_registration_time() {
         // create first booker with 2 participants
@@ -136,7 +151,7 @@ public class RepositoryITTest {
     }
 
     @Test
-    void should_find_all_activity_participants_by_event_id_and_booker_email() {
+    void should_find_all_activity_participants_by_event_id_and_booker_id() {
         // create first booker with 2 participants
         var firstBooker = new Booker();
         firstBooker.setFirstName("First");
@@ -218,9 +233,9 @@ public class RepositoryITTest {
 
         // Test the finder method for first booker
         List<ActivityParticipant> firstBookerParticipants =
-            activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerEmail(
+            activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(
                 event.getId(),
-                firstBooker.getEmail()
+                firstBooker.getId()
             );
 
         assertThat(firstBookerParticipants).hasSize(2);
@@ -229,14 +244,19 @@ public class RepositoryITTest {
 
         // Test the finder method for second booker
         List<ActivityParticipant> secondBookerParticipants =
-            activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerEmail(
+            activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(
                 event.getId(),
-                secondBooker.getEmail()
+                secondBooker.getId()
             );
 
         assertThat(secondBookerParticipants).hasSize(1);
         assertThat(secondBookerParticipants.stream().map(ap -> ap.getParticipant().getId()).toList())
             .containsExactly(thirdPart.getId());
+
+        // Test the finder method for all the bookers, grouped by booker
+        assertThat(activityParticipantRepository.findAllActivityParticipantByEventId(event.getId()))
+            .extracting(ap -> ap.getParticipant().getBooker().getEmail())
+            .containsExactly(firstBooker.getEmail(), firstBooker.getEmail(), secondBooker.getEmail());
     }
 
     @Test
@@ -269,7 +289,7 @@ public class RepositoryITTest {
         // creating a Booker if none exists for the email (the info should be from the front)
         var email = "registration_test@test.org";
         var booker = bookerRepository
-            .findById(email)
+            .findByEmail(email)
             .orElseGet(() -> {
                 var newBooker = new Booker();
                 newBooker.setEmail(email);
@@ -325,4 +345,225 @@ public class RepositoryITTest {
             .anySatisfy(ap -> assertThat(ap.getParticipant().getFirstName()).isEqualTo("SecondChild"))
             .anySatisfy(ap -> assertThat(ap.getParticipant().getFirstName()).isEqualTo("ThirdChild"));
     }
+
+    @Test
+    void reserving_seats_should_never_exceed_max_participants_and_waiting_queue() {
+        var event = new Event();
+        event.setDate(LocalDate.now().plusDays(2L));
+        event.setDescription("Description");
+        event.setTitle("Title");
+        event = eventRepository.save(event);
+
+        var activity = new Activity();
+        activity.setTitle("Title");
+        activity.setDescription("Description");
+        activity.setMaxParticipants(1);
+        activity.setMaxWaitingQueue(1);
+        activity.setStartTime(LocalDateTime.now().plusDays(2L));
+        activity.setEvent(event);
+        activity = activityRepository.save(activity);
+        long activityId = activity.getId();
+
+        assertThat(activityRepository.reserveSeat(activityId)).isEqualTo(1);
+        assertThat(activityRepository.reserveSeat(activityId)).isEqualTo(1);
+        // one regular spot and one in the waiting queue, nothing left
+        assertThat(activityRepository.reserveSeat(activityId)).isZero();
+
+        assertThat(activityRepository.releaseSeat(activityId)).isEqualTo(1);
+        assertThat(activityRepository.reserveSeat(activityId)).isEqualTo(1);
+        assertThat(activityRepository.reserveSeat(activityId)).isZero();
+
+        // bulk updates bypass the persistence context
+        entityManager.clear();
+        assertThat(activityRepository.findById(activityId))
+            .get()
+            .extracting(Activity::getRegisteredParticipants)
+            .isEqualTo(2);
+
+        // no `ActivityParticipant` was inserted, so resyncing brings the counter back to 0
+        activityRepository.resyncRegisteredParticipants();
+        entityManager.clear();
+        assertThat(activityRepository.findById(activityId))
+            .get()
+            .extracting(Activity::getRegisteredParticipants)
+            .isEqualTo(0);
+    }
+
+    @Test
+    void inserting_an_activity_participant_twice_should_be_ignored() {
+        var booker = new Booker();
+        booker.setFirstName("First");
+        booker.setLastName("Booker");
+        booker.setEmail("insert_twice@test.org");
+        booker.setEmailSignature("paf");
+        booker = bookerRepository.save(booker);
+
+        var participant = new Participant();
+        participant.setFirstName("First");
+        participant.setLastName("Participant");
+        participant.setBooker(booker);
+        participant = participantRepository.save(participant);
+
+        var event = new Event();
+        event.setDate(LocalDate.now().plusDays(2L));
+        event.setDescription("Description");
+        event.setTitle("Title");
+        event = eventRepository.save(event);
+
+        var activity = new Activity();
+        activity.setTitle("Title");
+        activity.setDescription("Description");
+        activity.setMaxParticipants(12);
+        activity.setMaxWaitingQueue(12);
+        activity.setStartTime(LocalDateTime.now().plusDays(2L));
+        activity.setEvent(event);
+        activity = activityRepository.save(activity);
+        // the native insert needs the rows to be in the DB
+        entityManager.flush();
+
+        long activityId = activity.getId();
+        long participantId = participant.getId();
+        var now = Instant.now();
+        assertThat(activityParticipantRepository.insertIfAbsent(activityId, participantId, now)).isEqualTo(1);
+        assertThat(activityParticipantRepository.insertIfAbsent(activityId, participantId, now)).isZero();
+
+        assertThat(activityParticipantRepository.deleteByActivityIdAndParticipantId(activityId, participantId))
+            .isEqualTo(1);
+        assertThat(activityParticipantRepository.deleteByActivityIdAndParticipantId(activityId, participantId))
+            .isZero();
+    }
+
+    @Test
+    void only_due_pending_outbox_messages_should_be_claimed() {
+        var now = Instant.now();
+        var due = outboxMessage(EmailOutboxMessage.Status.PENDING, now.minusSeconds(1));
+        var notDue = outboxMessage(EmailOutboxMessage.Status.PENDING, now.plusSeconds(60));
+        var sent = outboxMessage(EmailOutboxMessage.Status.SENT, now.minusSeconds(1));
+        var dead = outboxMessage(EmailOutboxMessage.Status.DEAD, now.minusSeconds(1));
+        var bulk = outboxMessage(EmailOutboxMessage.Status.PENDING, now.minusSeconds(1));
+        bulk.setPriority(Priority.BULK);
+        emailOutboxMessageRepository.saveAll(List.of(due, notDue, sent, dead, bulk));
+        entityManager.flush();
+
+        assertThat(emailOutboxMessageRepository.findDueForUpdate(Priority.TRANSACTIONAL, now, 10))
+            .extracting(EmailOutboxMessage::getId)
+            .containsExactly(due.getId());
+
+        assertThat(emailOutboxMessageRepository.markSent(List.of(due.getId()), now)).isEqualTo(1);
+        entityManager.clear();
+        assertThat(emailOutboxMessageRepository.findDueForUpdate(Priority.TRANSACTIONAL, now, 10)).isEmpty();
+        assertThat(emailOutboxMessageRepository.findById(due.getId()))
+            .get()
+            .extracting(EmailOutboxMessage::getStatus)
+            .isEqualTo(EmailOutboxMessage.Status.SENT);
+    }
+
+    @Test
+    void deferred_outbox_messages_should_be_coalesced_until_claimed() {
+        var now = Instant.now();
+        var key = "test:" + now.toEpochMilli();
+        var type = EmailType.AFTER_PARTICIPANTS_CHANGES.name();
+        var priority = Priority.TRANSACTIONAL.name();
+
+        assertThat(emailOutboxMessageRepository.insertDeferredIfAbsent(type, priority, key, now, now)).isEqualTo(1);
+        assertThat(emailOutboxMessageRepository.insertDeferredIfAbsent(type, priority, key, now, now)).isZero();
+        assertThat(emailOutboxMessageRepository.insertDeferredIfAbsent(type, priority, key + ":other", now, now))
+            .isEqualTo(1);
+
+        // claimed by a worker: the next change queues another email
+        var claimed = emailOutboxMessageRepository
+            .findDueForUpdate(Priority.TRANSACTIONAL, now, Integer.MAX_VALUE)
+            .stream()
+            .filter(message -> key.equals(message.getCoalescingKey()))
+            .findFirst()
+            .orElseThrow();
+        assertThat(claimed.getRecipient()).isNull();
+        claimed.setAttempts(1);
+        entityManager.flush();
+        assertThat(emailOutboxMessageRepository.insertDeferredIfAbsent(type, priority, key, now, now)).isEqualTo(1);
+    }
+
+    @Test
+    void a_second_active_event_should_be_rejected() {
+        eventRepository.save(activeEvent("First"));
+
+        assertThatThrownBy(() -> {
+                eventRepository.save(activeEvent("Second"));
+                entityManager.flush();
+            })
+            .isInstanceOf(PersistenceException.class)
+            .hasStackTraceContaining("event_single_active_idx");
+    }
+
+    @Test
+    void descriptions_html_should_be_rendered_when_saved() {
+        var event = new Event();
+        event.setDate(LocalDate.now().plusDays(2L));
+        event.setTitle("Described");
+        event.setDescription("**Event**");
+        var activity = new Activity();
+        activity.setTitle("Described");
+        activity.setDescription("*Activity*");
+        activity.setStartTime(LocalDateTime.now().plusDays(2L));
+        activity.setEvent(event);
+        event.getActivities().add(activity);
+        var eventId = eventRepository.save(event).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        var saved = eventRepository.findById(eventId).orElseThrow();
+        assertThat(saved.getDescriptionHtml()).isEqualTo("<p><strong>Event</strong></p>\n");
+        assertThat(saved.getActivities().first().getDescriptionHtml()).isEqualTo("<p><em>Activity</em></p>\n");
+
+        saved.setDescription("Updated");
+        saved.getActivities().first().setDescription("Updated too");
+        entityManager.flush();
+        entityManager.clear();
+
+        var updated = eventRepository.findById(eventId).orElseThrow();
+        assertThat(updated.getDescriptionHtml()).isEqualTo("<p>Updated</p>\n");
+        assertThat(updated.getActivities().first().getDescriptionHtml()).isEqualTo("<p>Updated too</p>\n");
+    }
+
+    @Test
+    void bookers_should_be_equal_by_id_and_keep_their_hash_when_persisted() {
+        var booker = new Booker();
+        booker.setFirstName("Equal");
+        booker.setLastName("Booker");
+        booker.setEmail("equal-booker@test.org");
+        booker.setEmailSignature("equal");
+        var other = new Booker();
+        other.setEmail("other-booker@test.org");
+        // transient bookers are only equal to themselves
+        assertThat(booker).isNotEqualTo(other);
+        var bookers = new HashSet<>(Set.of(booker));
+
+        bookerRepository.save(booker);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(bookers).contains(booker);
+        var reloaded = bookerRepository.findById(booker.getId()).orElseThrow();
+        reloaded.setEmail("changed-booker@test.org");
+        assertThat(reloaded).isEqualTo(booker).hasSameHashCodeAs(booker);
+    }
+
+    private static Event activeEvent(String title) {
+        var event = new Event();
+        event.setDate(LocalDate.now().plusDays(2L));
+        event.setTitle(title);
+        event.setActive(true);
+        return event;
+    }
+
+    private static EmailOutboxMessage outboxMessage(EmailOutboxMessage.Status status, Instant nextAttemptTime) {
+        var message = new EmailOutboxMessage();
+        message.setEmailType(EmailType.AFTER_BOOKING);
+        message.setPriority(EmailType.AFTER_BOOKING.priority());
+        message.setRecipient("outbox@test.org");
+        message.setSubject("Subject");
+        message.setStatus(status);
+        message.setNextAttemptTime(nextAttemptTime);
+        return message;
+    }
 }
@@ -0,0 +1,224 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.montrealjug.billetterie.entity.Activity;
+import org.montrealjug.billetterie.entity.ActivityParticipant;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.entity.Participant;
+import org.montrealjug.billetterie.repository.BookerRepository;
+import org.montrealjug.billetterie.repository.EventRepository;
+import org.montrealjug.billetterie.repository.ParticipantRepository;
+import org.montrealjug.billetterie.service.ActiveEventService.Snapshot;
+import org.montrealjug.billetterie.ui.PresentationActivity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest
+class ActiveEventServiceTest {
+
+    @Autowired
+    ActiveEventService activeEventService;
+
+    @Autowired
+    SeatReservationService seatReservationService;
+
+    @Autowired
+    EventRepository eventRepository;
+
+    @Autowired
+    BookerRepository bookerRepository;
+
+    @Autowired
+    ParticipantRepository participantRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    long eventId;
+    boolean eventCreated;
+    List<Long> activityIds;
+    Booker booker;
+
+    @BeforeEach
+    void setUp() {
+        // the active event of the local dev DB, if any, gets two more activities
+        transactionTemplate.executeWithoutResult(status -> {
+            var event = eventRepository
+                .findByActiveIsTrue()
+                .orElseGet(() -> {
+                    var activeEvent = new Event();
+                    activeEvent.setTitle("Snapshot Event");
+                    activeEvent.setDescription("Snapshot Description");
+                    activeEvent.setActive(true);
+                    activeEvent.setDate(LocalDate.now());
+                    eventCreated = true;
+                    return activeEvent;
+                });
+            var existingActivityIds = event.getActivities().stream().map(Activity::getId).toList();
+            // the activities are sorted by id, so they are added once saved
+            for (int i = 0; i < 2; i++) {
+                var activity = new Activity();
+                activity.setTitle("Snapshot Activity " + i);
+                activity.setDescription("Snapshot Description");
+                activity.setEvent(event);
+                activity.setStartTime(LocalDateTime.now().plusDays(1L));
+                activity.setMaxParticipants(3);
+                activity.setMaxWaitingQueue(2);
+                event.getActivities().add(activity);
+                event = eventRepository.save(event);
+            }
+            eventId = event.getId();
+            activityIds = event
+                .getActivities()
+                .stream()
+                .map(Activity::getId)
+                .filter(id -> !existingActivityIds.contains(id))
+                .toList();
+        });
+
+        booker = new Booker();
+        booker.setFirstName("Snapshot");
+        booker.setLastName("Booker");
+        booker.setEmail("snapshot-writes@test.org");
+        booker.setEmailSignature("snapshot-writes");
+        booker = bookerRepository.save(booker);
+    }
+
+    @AfterEach
+    void tearDown() {
+        // the activities first, as they cascade to the registrations of the participants
+        transactionTemplate.executeWithoutResult(status -> {
+            if (eventCreated) {
+                eventRepository.deleteById(eventId);
+            } else {
+                eventRepository
+                    .findById(eventId)
+                    .orElseThrow()
+                    .getActivities()
+                    .removeIf(activity -> activityIds.contains(activity.getId()));
+            }
+        });
+        bookerRepository.deleteById(booker.getId());
+    }
+
+    @Test
+    void registrations_should_patch_the_snapshot_without_building_it_again() {
+        var snapshot = activeEventService.snapshot().orElseThrow();
+        var participant = participant("Patched");
+
+        seatReservationService.reserveSeat(activityIds.getFirst(), participant);
+
+        var patched = activeEventService.snapshot().orElseThrow();
+        assertThat(patched).isNotSameAs(snapshot);
+        assertThat(patched.event()).isSameAs(snapshot.event());
+        assertThat(activity(patched, activityIds.getFirst()))
+            .satisfies(activity -> {
+                assertThat(activity.totalParticipants()).isEqualTo(1);
+                assertThat(activity.registrationStatus()).isSameAs(Activity.RegistrationStatus.OPEN);
+                assertThat(activity.participants())
+                    .extracting(registration -> registration.getParticipant().getFirstName())
+                    .containsExactly("Patched");
+            });
+
+        seatReservationService.releaseSeat(activityIds.getFirst(), participant.getId());
+
+        assertThat(activity(activeEventService.snapshot().orElseThrow(), activityIds.getFirst()).participants())
+            .isEmpty();
+    }
+
+    @Test
+    void snapshot_should_be_the_state_of_the_DB_after_concurrent_registrations() throws Exception {
+        var participants = new ArrayList<Participant>();
+        for (int i = 0; i < 16; i++) {
+            participants.add(participant("Concurrent" + i));
+        }
+        activeEventService.snapshot();
+
+        var writes = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < participants.size(); i++) {
+            var participant = participants.get(i);
+            var activityId = activityIds.get(i % 2);
+            var leaves = i % 4 == 0;
+            var adminEdit = i == 8;
+            writes.add(() -> {
+                seatReservationService.reserveSeat(activityId, participant);
+                if (leaves) {
+                    seatReservationService.releaseSeat(activityId, participant.getId());
+                }
+                if (adminEdit) {
+                    activeEventService.invalidate();
+                }
+                return null;
+            });
+        }
+        var writing = new AtomicBoolean(true);
+        try (var executor = Executors.newFixedThreadPool(9)) {
+            // reads during the writes, to build snapshots concurrently with the patches
+            Future<?> reader = executor.submit(() -> {
+                while (writing.get()) {
+                    activeEventService.snapshot();
+                }
+            });
+            try {
+                for (var write : executor.invokeAll(writes)) {
+                    write.get();
+                }
+            } finally {
+                writing.set(false);
+            }
+            reader.get();
+        }
+
+        var patched = activeEventService.snapshot().orElseThrow();
+        activeEventService.invalidate();
+        var built = activeEventService.snapshot().orElseThrow();
+        for (var activityId : activityIds) {
+            var patchedActivity = activity(patched, activityId);
+            var builtActivity = activity(built, activityId);
+            assertThat(patchedActivity.totalParticipants()).isEqualTo(builtActivity.totalParticipants());
+            assertThat(patchedActivity.registrationStatus()).isSameAs(builtActivity.registrationStatus());
+            assertThat(participantIds(patchedActivity.participants()))
+                .containsExactlyElementsOf(participantIds(builtActivity.participants()));
+            assertThat(participantIds(patchedActivity.waitingParticipants()))
+                .containsExactlyElementsOf(participantIds(builtActivity.waitingParticipants()));
+        }
+    }
+
+    private Participant participant(String firstName) {
+        var participant = new Participant();
+        participant.setFirstName(firstName);
+        participant.setLastName("Child");
+        participant.setYearOfBirth(2015);
+        participant.setBooker(booker);
+        return participantRepository.save(participant);
+    }
+
+    private static PresentationActivity activity(Snapshot snapshot, long activityId) {
+        return snapshot
+            .presentationEvent()
+            .activities()
+            .stream()
+            .filter(activity -> activity.id() == activityId)
+            .findFirst()
+            .orElseThrow();
+    }
+
+    private static List<Long> participantIds(List<ActivityParticipant> registrations) {
+        return registrations.stream().map(registration -> registration.getParticipant().getId()).toList();
+    }
+}
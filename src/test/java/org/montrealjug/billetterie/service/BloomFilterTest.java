@@ -0,0 +1,36 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTest {
+
+    @Test
+    void mightContain_should_never_miss_added_values() {
+        var filter = new BloomFilter(10_000, 0.01);
+        var values = IntStream.range(0, 10_000).mapToObj(i -> "booker" + i + "@test.org").toList();
+
+        values.forEach(filter::add);
+
+        assertThat(values).allMatch(filter::mightContain);
+        assertThat(filter.size()).isEqualTo(10_000);
+    }
+
+    @Test
+    void mightContain_should_stay_close_to_the_false_positive_rate() {
+        var filter = new BloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> filter.add(UUID.randomUUID().toString()));
+
+        var falsePositives = IntStream
+            .range(0, 100_000)
+            .filter(i -> filter.mightContain(UUID.randomUUID().toString()))
+            .count();
+
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+        assertThat(filter.expectedFalsePositiveRate()).isBetween(0.005, 0.015);
+    }
+}
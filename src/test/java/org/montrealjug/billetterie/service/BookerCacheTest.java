@@ -0,0 +1,173 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.Participant;
+import org.montrealjug.billetterie.repository.BookerRepository;
+
+@ExtendWith(MockitoExtension.class)
+class BookerCacheTest {
+
+    static final class MutableClock extends Clock {
+
+        private Instant instant = Instant.parse("2026-03-01T10:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    @Mock
+    BookerRepository bookerRepository;
+
+    MutableClock clock;
+    BookerCache bookerCache;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock();
+        bookerCache = new BookerCache(bookerRepository, 2, clock);
+    }
+
+    @Test
+    void findByEmailSignature_should_read_through_the_cache() {
+        when(bookerRepository.findByEmailSignature("signature")).thenReturn(Optional.of(booker("signature")));
+        var registry = new SimpleMeterRegistry();
+        bookerCache.bindTo(registry);
+
+        var first = bookerCache.findByEmailSignature("signature").orElseThrow();
+        var second = bookerCache.findByEmailSignature("signature").orElseThrow();
+
+        verify(bookerRepository, times(1)).findByEmailSignature("signature");
+        assertThat(second).isSameAs(first);
+        assertThat(first.getEmail()).isEqualTo("signature@test.org");
+        assertThat(first.getParticipants()).extracting(Participant::getFirstName).containsExactly("First");
+        assertThat(first.getParticipants().iterator().next().getBooker()).isSameAs(first);
+        assertThat(cacheCount(registry, "hit")).isEqualTo(1);
+        assertThat(cacheCount(registry, "miss")).isEqualTo(1);
+    }
+
+    @Test
+    void findByEmailSignature_should_reload_expired_and_invalidated_bookers() {
+        when(bookerRepository.findByEmailSignature("signature")).thenReturn(Optional.of(booker("signature")));
+
+        bookerCache.findByEmailSignature("signature");
+        clock.advance(BookerCache.TTL);
+        bookerCache.findByEmailSignature("signature");
+        bookerCache.invalidate("signature");
+        bookerCache.findByEmailSignature("signature");
+
+        verify(bookerRepository, times(3)).findByEmailSignature("signature");
+    }
+
+    @Test
+    void findByEmailSignature_should_not_cache_a_booker_invalidated_during_its_read() {
+        when(bookerRepository.findByEmailSignature("signature"))
+            .thenAnswer(invocation -> {
+                // a write commits while the booker is read
+                bookerCache.invalidate("signature");
+                return Optional.of(booker("signature"));
+            })
+            .thenReturn(Optional.of(booker("signature")));
+
+        bookerCache.findByEmailSignature("signature");
+        bookerCache.findByEmailSignature("signature");
+        bookerCache.findByEmailSignature("signature");
+
+        verify(bookerRepository, times(2)).findByEmailSignature("signature");
+    }
+
+    @Test
+    void findByEmailSignature_should_not_cache_a_booker_invalidated_during_its_read_then_dropped() {
+        when(bookerRepository.findByEmailSignature("signature"))
+            .thenAnswer(invocation -> {
+                bookerCache.invalidate("signature");
+                // more invalidations than `maxEntries`, the generation of the booker is dropped
+                bookerCache.invalidate("a");
+                bookerCache.invalidate("b");
+                return Optional.of(booker("signature"));
+            })
+            .thenReturn(Optional.of(booker("signature")));
+
+        bookerCache.findByEmailSignature("signature");
+        bookerCache.findByEmailSignature("signature");
+        bookerCache.findByEmailSignature("signature");
+
+        verify(bookerRepository, times(2)).findByEmailSignature("signature");
+    }
+
+    @Test
+    void findByEmailSignature_should_evict_the_least_recently_used_bookers() {
+        for (var signature : new String[] { "a", "b", "c" }) {
+            when(bookerRepository.findByEmailSignature(signature)).thenReturn(Optional.of(booker(signature)));
+        }
+
+        bookerCache.findByEmailSignature("a");
+        bookerCache.findByEmailSignature("b");
+        bookerCache.findByEmailSignature("a");
+        bookerCache.findByEmailSignature("c");
+        bookerCache.findByEmailSignature("a");
+        bookerCache.findByEmailSignature("b");
+
+        verify(bookerRepository, times(1)).findByEmailSignature("a");
+        verify(bookerRepository, times(2)).findByEmailSignature("b");
+    }
+
+    @Test
+    void findByEmailSignature_should_not_cache_unknown_bookers() {
+        when(bookerRepository.findByEmailSignature("unknown")).thenReturn(Optional.empty());
+
+        assertThat(bookerCache.findByEmailSignature("unknown")).isEmpty();
+        assertThat(bookerCache.findByEmailSignature("unknown")).isEmpty();
+
+        verify(bookerRepository, times(2)).findByEmailSignature("unknown");
+    }
+
+    private static double cacheCount(SimpleMeterRegistry registry, String result) {
+        return registry.get("billetterie.booker.cache").tag("result", result).functionCounter().count();
+    }
+
+    private static Booker booker(String signature) {
+        var booker = new Booker();
+        booker.setEmail(signature + "@test.org");
+        booker.setEmailSignature(signature);
+        var participant = new Participant();
+        participant.setId(1L);
+        participant.setFirstName("First");
+        participant.setBooker(booker);
+        booker.getParticipants().add(participant);
+        return booker;
+    }
+}
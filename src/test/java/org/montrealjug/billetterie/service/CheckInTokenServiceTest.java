@@ -0,0 +1,116 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.montrealjug.billetterie.config.BilletterieProperties;
+import org.montrealjug.billetterie.config.BilletterieProperties.CheckInProperties;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.service.CheckInTokenService.CheckInToken;
+
+class CheckInTokenServiceTest {
+
+    private static final String KEY_1 = "dGVzdC1jaGVjay1pbi1rZXktMzItYnl0ZXMtbG9uZyE=";
+    private static final String KEY_2 = "YW5vdGhlci1jaGVjay1pbi1rZXktMzItYnl0ZXMtISE=";
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-05-01T10:00:00Z"), ZoneOffset.UTC);
+
+    @Test
+    void verify_should_accept_issued_tokens() {
+        var service = service("k1", Map.of("k1", KEY_1), CLOCK);
+
+        var token = service.issue(event(LocalDate.of(2026, 5, 2)), booker());
+
+        assertThat(token).startsWith("k1.42.");
+        assertThat(service.verify(token)).contains(new CheckInToken(42L, 7L));
+        assertThat(service.checkInUrl("https://test.org", event(LocalDate.of(2026, 5, 2)), booker())).isEqualTo(
+            "https://test.org/admin/check-in/" + token
+        );
+    }
+
+    @Test
+    void verify_should_reject_tampered_tokens() {
+        var service = service("k1", Map.of("k1", KEY_1), CLOCK);
+        var token = service.issue(event(LocalDate.of(2026, 5, 2)), booker());
+
+        assertThat(service.verify(token.replace("k1.42.", "k1.43."))).isEmpty();
+        assertThat(service.verify(token.replace(".7.", ".8."))).isEmpty();
+        var lastChar = token.charAt(token.length() - 1) == 'A' ? "B" : "A";
+        assertThat(service.verify(token.substring(0, token.length() - 1) + lastChar)).isEmpty();
+        assertThat(service.verify(token.replace("k1.", "k2."))).isEmpty();
+        assertThat(service.verify("not-a-token")).isEmpty();
+    }
+
+    @Test
+    void verify_should_reject_expired_tokens() {
+        var service = service("k1", Map.of("k1", KEY_1), CLOCK);
+
+        assertThat(service.verify(service.issue(event(LocalDate.of(2026, 4, 29)), booker()))).isEmpty();
+        // valid the day after the event
+        assertThat(service.verify(service.issue(event(LocalDate.of(2026, 4, 30)), booker()))).isPresent();
+    }
+
+    @Test
+    void issue_should_give_a_fixed_validity_to_the_tokens_of_an_event_without_a_date() {
+        var service = service("k1", Map.of("k1", KEY_1), CLOCK);
+
+        var token = service.issue(event(null), booker());
+
+        assertThat(service.verify(token)).contains(new CheckInToken(42L, 7L));
+        // stable for the day
+        assertThat(service.issue(event(null), booker())).isEqualTo(token);
+        var later = Clock.offset(CLOCK, Duration.ofDays(31));
+        assertThat(service("k1", Map.of("k1", KEY_1), later).verify(token)).isEmpty();
+    }
+
+    @Test
+    void verify_should_accept_tokens_of_the_previous_key_after_a_rotation() {
+        var token = service("k1", Map.of("k1", KEY_1), CLOCK).issue(event(LocalDate.of(2026, 5, 2)), booker());
+
+        var rotated = service("k2", Map.of("k1", KEY_1, "k2", KEY_2), CLOCK);
+
+        assertThat(rotated.verify(token)).isPresent();
+        assertThat(rotated.issue(event(LocalDate.of(2026, 5, 2)), booker())).startsWith("k2.");
+        assertThat(service("k2", Map.of("k2", KEY_2), CLOCK).verify(token)).isEmpty();
+    }
+
+    @Test
+    void unset_key_should_fall_back_to_an_ephemeral_key() {
+        // `CHECK_IN_KEY` has no default, so an unset secret is a blank key
+        var service = service("k1", Map.of("k1", ""), CLOCK);
+
+        var token = service.issue(event(LocalDate.of(2026, 5, 2)), booker());
+
+        assertThat(token).startsWith("ephemeral.");
+        assertThat(service.verify(token)).isPresent();
+    }
+
+    private static CheckInTokenService service(String keyId, Map<String, String> keys, Clock clock) {
+        return new CheckInTokenService(
+            new BilletterieProperties(null, null, null, 0.01, new CheckInProperties(keyId, keys)),
+            clock
+        );
+    }
+
+    private static Event event(LocalDate date) {
+        var event = new Event();
+        event.setId(42L);
+        event.setDate(date);
+        return event;
+    }
+
+    private static Booker booker() {
+        var booker = new Booker();
+        booker.setId(7L);
+        booker.setEmail("booker@test.org");
+        booker.setEmailSignature("signature");
+        return booker;
+    }
+}
@@ -0,0 +1,134 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.montrealjug.billetterie.config.BilletterieProperties;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailService;
+import org.montrealjug.billetterie.entity.Activity;
+import org.montrealjug.billetterie.entity.ActivityParticipant;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.entity.Participant;
+import org.montrealjug.billetterie.repository.ActivityRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class ParticipantUpgradeNotifierTest {
+
+    static final String BOOKER_EMAIL = "booker@test.org";
+
+    @Mock
+    ActivityRepository activityRepository;
+
+    @Mock
+    EmailService emailService;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    ParticipantUpgradeNotifier notifier;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new BilletterieProperties(
+            null,
+            "https://billetterie.test",
+            Duration.ofMinutes(1),
+            0.01,
+            new BilletterieProperties.CheckInProperties(null, Map.of())
+        );
+        notifier = new ParticipantUpgradeNotifier(
+            activityRepository,
+            emailService,
+            new QrCodeService(),
+            new CheckInTokenService(properties),
+            new TransactionTemplate(transactionManager),
+            properties
+        );
+    }
+
+    @Test
+    void participantUpgraded_should_queue_a_deferred_email() {
+        notifier.participantUpgraded(1L, 2L);
+
+        verify(emailService).sendLater(eq(EmailType.PARTICIPANT_UPGRADED), eq("1:2"), any(Instant.class));
+    }
+
+    @Test
+    void render_should_render_the_email_of_a_participant_with_a_seat() {
+        when(activityRepository.findById(1L)).thenReturn(Optional.of(activity(2L, 3L)));
+
+        assertThat(notifier.render("1:2"))
+            .hasValueSatisfying(email -> {
+                assertThat(email.type()).isSameAs(EmailType.PARTICIPANT_UPGRADED);
+                assertThat(email.to().getAddress()).isEqualTo(BOOKER_EMAIL);
+                assertThat(email.qrCode()).isPresent();
+            });
+    }
+
+    @Test
+    void render_should_have_nothing_to_send_for_a_participant_back_in_the_waiting_queue() {
+        when(activityRepository.findById(1L)).thenReturn(Optional.of(activity(3L, 2L)));
+
+        assertThat(notifier.render("1:2")).isEmpty();
+    }
+
+    @Test
+    void render_should_have_nothing_to_send_for_a_deleted_activity() {
+        when(activityRepository.findById(1L)).thenReturn(Optional.empty());
+
+        assertThat(notifier.render("1:2")).isEmpty();
+    }
+
+    // one seat, taken by the first participant
+    private static Activity activity(long... participantIds) {
+        var event = new Event();
+        event.setId(1L);
+        event.setDate(LocalDate.now());
+        event.setTitle("Event");
+        var activity = new Activity();
+        activity.setId(1L);
+        activity.setTitle("Activity");
+        activity.setDescription("Description");
+        activity.setStartTime(LocalDateTime.now());
+        activity.setMaxParticipants(1);
+        activity.setMaxWaitingQueue(1);
+        activity.setEvent(event);
+        var registrationTime = Instant.now();
+        for (var participantId : participantIds) {
+            var booker = new Booker();
+            booker.setEmail(BOOKER_EMAIL);
+            booker.setEmailSignature("signature");
+            var participant = new Participant();
+            participant.setId(participantId);
+            participant.setBooker(booker);
+            var activityParticipant = new ActivityParticipant();
+            activityParticipant.getActivityParticipantKey().setActivityId(activity.getId());
+            activityParticipant.getActivityParticipantKey().setParticipantId(participantId);
+            activityParticipant.setActivity(activity);
+            activityParticipant.setParticipant(participant);
+            activityParticipant.setRegistrationTime(registrationTime);
+            registrationTime = registrationTime.plusSeconds(1);
+            activity.getParticipants().add(activityParticipant);
+        }
+        return activity;
+    }
+}
@@ -0,0 +1,117 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.montrealjug.billetterie.config.BilletterieProperties;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailService;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.repository.ActivityParticipantRepository;
+import org.montrealjug.billetterie.repository.BookerRepository;
+import org.montrealjug.billetterie.repository.EventRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class ParticipantsChangesNotifierTest {
+
+    static final String BOOKER_EMAIL = "booker@test.org";
+    static final long BOOKER_ID = 1L;
+
+    @Mock
+    EventRepository eventRepository;
+
+    @Mock
+    BookerRepository bookerRepository;
+
+    @Mock
+    ActivityParticipantRepository activityParticipantRepository;
+
+    @Mock
+    EmailService emailService;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    ParticipantsChangesNotifier notifier;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new BilletterieProperties(
+            null,
+            "https://billetterie.test",
+            Duration.ofMinutes(1),
+            0.01,
+            new BilletterieProperties.CheckInProperties(null, Map.of())
+        );
+        notifier = new ParticipantsChangesNotifier(
+            eventRepository,
+            bookerRepository,
+            activityParticipantRepository,
+            emailService,
+            new QrCodeService(),
+            new CheckInTokenService(properties),
+            new TransactionTemplate(transactionManager),
+            properties
+        );
+    }
+
+    @Test
+    void participantsChanged_should_queue_a_deferred_email_after_the_delay() {
+        var before = Instant.now();
+
+        notifier.participantsChanged(1L, BOOKER_ID);
+
+        var sendTime = ArgumentCaptor.forClass(Instant.class);
+        verify(emailService).sendLater(eq(EmailType.AFTER_PARTICIPANTS_CHANGES), eq("1:1"), sendTime.capture());
+        assertThat(sendTime.getValue()).isBetween(before.plus(Duration.ofMinutes(1)), Instant.now().plusSeconds(60));
+    }
+
+    @Test
+    void render_should_render_the_registrations_at_the_sending_time() {
+        var event = new Event();
+        event.setId(1L);
+        event.setDate(LocalDate.now());
+        event.setTitle("Event");
+        var booker = new Booker();
+        booker.setId(BOOKER_ID);
+        booker.setEmail(BOOKER_EMAIL);
+        booker.setEmailSignature("signature");
+        when(eventRepository.findById(1L)).thenReturn(Optional.of(event));
+        when(bookerRepository.findById(BOOKER_ID)).thenReturn(Optional.of(booker));
+        when(activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(1L, BOOKER_ID))
+            .thenReturn(List.of());
+
+        assertThat(notifier.render("1:1"))
+            .hasValueSatisfying(email -> {
+                assertThat(email.type()).isSameAs(EmailType.AFTER_PARTICIPANTS_CHANGES);
+                assertThat(email.to().getAddress()).isEqualTo(BOOKER_EMAIL);
+                assertThat(email.qrCode()).isPresent();
+            });
+    }
+
+    @Test
+    void render_should_have_nothing_to_send_for_a_deleted_booker() {
+        when(eventRepository.findById(1L)).thenReturn(Optional.of(new Event()));
+        when(bookerRepository.findById(BOOKER_ID)).thenReturn(Optional.empty());
+
+        assertThat(notifier.render("1:1")).isEmpty();
+    }
+}
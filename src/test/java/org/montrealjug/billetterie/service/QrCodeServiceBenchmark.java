@@ -0,0 +1,95 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import javax.imageio.ImageIO;
+import uk.org.okapibarcode.backend.QrCode;
+import uk.org.okapibarcode.graphics.Color;
+import uk.org.okapibarcode.output.Java2DRenderer;
+
+/**
+ * Latency and allocations of `QrCodeService` without its cache, against the previous rendering: modules drawn with
+ * AWT, rescaled with `getScaledInstance` and encoded as JPEG.
+ * <p>
+ * Not a test, run its `main` from the IDE, or with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     org.montrealjug.billetterie.service.QrCodeServiceBenchmark
+ * </pre>
+ */
+class QrCodeServiceBenchmark {
+
+    // the length of a check-in URL
+    private static final String CHECK_IN_URL =
+        "https://billetterie.devoxx4kids.montreal-jug.org/admin/check-in/k1.42.1767225600.";
+    private static final String MAC = "x".repeat(43);
+    private static final int URLS = 1_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+
+    interface Encoder {
+        byte[] encode(String text) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        var urls = new String[URLS];
+        for (int i = 0; i < URLS; i++) {
+            urls[i] = CHECK_IN_URL + i + "." + MAC;
+        }
+        var qrCodeService = new QrCodeService(0);
+        run("awt+jpeg", urls, QrCodeServiceBenchmark::awtJpeg);
+        run("monochrome png", urls, qrCodeService::generateQrCode);
+    }
+
+    private static void run(String name, String[] urls, Encoder encoder) throws IOException {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var threadId = Thread.currentThread().threadId();
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (var url : urls) {
+                encoder.encode(url);
+            }
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytes = 0;
+            var allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            var start = System.nanoTime();
+            for (var url : urls) {
+                bytes += encoder.encode(url).length;
+            }
+            var elapsed = System.nanoTime() - start;
+            var allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            System.out.printf(
+                "%-15s %6.2f ms/op %8.1f KB allocated/op %6.1f KB/image%n",
+                name,
+                elapsed / 1e6 / urls.length,
+                allocated / 1024.0 / urls.length,
+                bytes / 1024.0 / urls.length
+            );
+        }
+    }
+
+    // the rendering replaced by `MonochromeImage`
+    private static byte[] awtJpeg(String text) throws IOException {
+        var qrCode = new QrCode();
+        qrCode.setContent(text);
+        var image = new BufferedImage(qrCode.getWidth(), qrCode.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        new Java2DRenderer(image.createGraphics(), 1, Color.WHITE, Color.BLACK).render(qrCode);
+
+        var scaled = image.getScaledInstance(QrCodeService.SIZE - 20, QrCodeService.SIZE - 20, Image.SCALE_DEFAULT);
+        var resized = new BufferedImage(QrCodeService.SIZE, QrCodeService.SIZE, image.getType());
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setColor(java.awt.Color.WHITE);
+        graphics.fillRect(0, 0, QrCodeService.SIZE, QrCodeService.SIZE);
+        graphics.drawImage(scaled, 10, 10, null);
+
+        var os = new ByteArrayOutputStream();
+        ImageIO.write(resized, "jpeg", os);
+        return os.toByteArray();
+    }
+}
@@ -3,10 +3,17 @@ package org.montrealjug.billetterie.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import javax.imageio.ImageIO;
 import org.junit.jupiter.api.Test;
+import uk.org.okapibarcode.backend.QrCode;
+import uk.org.okapibarcode.graphics.Color;
+import uk.org.okapibarcode.output.Java2DRenderer;
 
 class QrCodeServiceTest {
 
@@ -16,7 +23,89 @@ class QrCodeServiceTest {
     void generateQrCode() throws IOException {
         var url = "https://qrcode.test.org";
         var imageBytes = qrCodeService.generateQrCode(url);
-        var expectedBytes = Files.readAllBytes(Paths.get("src/test/resources/qrcode/expected-qr-code.jpg"));
+        var expectedBytes = Files.readAllBytes(Paths.get("src/test/resources/qrcode/expected-qr-code.png"));
         assertThat(imageBytes).isEqualTo(expectedBytes);
     }
+
+    @Test
+    void generateQrCode_should_draw_the_modules_rendered_by_okapibarcode() throws IOException {
+        var url = "https://billetterie.devoxx4kids.montreal-jug.org/admin/bookings/a-booker-signature";
+        var image = ImageIO.read(new ByteArrayInputStream(qrCodeService.generateQrCode(url)));
+
+        // one pixel per module with the AWT renderer of okapibarcode
+        var qrCode = new QrCode();
+        qrCode.setContent(url);
+        var modules = qrCode.getWidth();
+        var expected = new BufferedImage(modules, modules, BufferedImage.TYPE_BYTE_GRAY);
+        new Java2DRenderer(expected.createGraphics(), 1, Color.WHITE, Color.BLACK).render(qrCode);
+
+        var scale = image.getWidth() / (modules + 2 * QrCodeService.QUIET_ZONE);
+        assertThat(image.getHeight()).isEqualTo(image.getWidth());
+        assertThat(image.getWidth()).isLessThanOrEqualTo(QrCodeService.SIZE);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                var moduleX = x / scale - QrCodeService.QUIET_ZONE;
+                var moduleY = y / scale - QrCodeService.QUIET_ZONE;
+                var inQuietZone = moduleX < 0 || moduleY < 0 || moduleX >= modules || moduleY >= modules;
+                var expectedRgb = inQuietZone ? 0xffffffff : expected.getRGB(moduleX, moduleY);
+                assertThat(image.getRGB(x, y)).as("pixel %d,%d", x, y).isEqualTo(expectedRgb);
+            }
+        }
+    }
+
+    @Test
+    void generateSvgQrCode_should_draw_the_modules_with_a_quiet_zone() {
+        var url = "https://billetterie.devoxx4kids.montreal-jug.org/admin/bookings/a-booker-signature";
+        var qrCode = new QrCode();
+        qrCode.setContent(url);
+        var size = qrCode.getWidth() + 2 * QrCodeService.QUIET_ZONE;
+
+        var svg = qrCodeService.generateSvgQrCode(url);
+
+        assertThat(svg).startsWith("<svg ").endsWith("</svg>").contains("viewBox=\"0 0 " + size + " " + size + "\"");
+        // the top left module of the finder pattern is after the quiet zone
+        assertThat(svg).contains("d=\"M4 4h");
+        assertThat(svg.chars().filter(c -> c == 'M').count()).isEqualTo(qrCode.getRectangles().size());
+    }
+
+    @Test
+    void generateQrCode_should_reuse_cached_images() throws IOException {
+        var meterRegistry = new SimpleMeterRegistry();
+        qrCodeService.bindTo(meterRegistry);
+
+        var first = qrCodeService.generateQrCode("https://qrcode.test.org/first");
+        var second = qrCodeService.generateQrCode("https://qrcode.test.org/second");
+        var firstAgain = qrCodeService.generateQrCode("https://qrcode.test.org/first");
+
+        assertThat(firstAgain).isEqualTo(first).isNotSameAs(first);
+        assertThat(qrCodeService.cacheBytes()).isEqualTo(first.length + second.length);
+        assertThat(meterRegistry.get("billetterie.qr.code.cache").tag("result", "hit").functionCounter().count())
+            .isEqualTo(1);
+        assertThat(meterRegistry.get("billetterie.qr.code.cache").tag("result", "miss").functionCounter().count())
+            .isEqualTo(2);
+    }
+
+    @Test
+    void generateQrCode_should_evict_the_least_recently_used_images() throws IOException {
+        var meterRegistry = new SimpleMeterRegistry();
+        var size = qrCodeService.generateQrCode("https://qrcode.test.org/first").length;
+        // room for about two images
+        var maxCacheBytes = 2 * size + size / 2;
+        var smallCacheService = new QrCodeService(maxCacheBytes);
+        smallCacheService.bindTo(meterRegistry);
+
+        smallCacheService.generateQrCode("https://qrcode.test.org/first");
+        smallCacheService.generateQrCode("https://qrcode.test.org/second");
+        smallCacheService.generateQrCode("https://qrcode.test.org/first");
+        smallCacheService.generateQrCode("https://qrcode.test.org/third");
+        // `second` was the least recently used
+        smallCacheService.generateQrCode("https://qrcode.test.org/first");
+        smallCacheService.generateQrCode("https://qrcode.test.org/second");
+
+        assertThat(smallCacheService.cacheBytes()).isLessThanOrEqualTo(maxCacheBytes);
+        assertThat(meterRegistry.get("billetterie.qr.code.cache").tag("result", "hit").functionCounter().count())
+            .isEqualTo(2);
+        assertThat(meterRegistry.get("billetterie.qr.code.cache").tag("result", "miss").functionCounter().count())
+            .isEqualTo(4);
+    }
 }
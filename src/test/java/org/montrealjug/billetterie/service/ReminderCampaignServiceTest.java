@@ -0,0 +1,268 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.montrealjug.billetterie.email.EmailModel.Email;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailService;
+import org.montrealjug.billetterie.entity.Activity;
+import org.montrealjug.billetterie.entity.ActivityParticipant;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.entity.Participant;
+import org.montrealjug.billetterie.entity.ReminderCampaign;
+import org.montrealjug.billetterie.entity.ReminderCampaign.Segment;
+import org.montrealjug.billetterie.entity.ReminderCampaign.Status;
+import org.montrealjug.billetterie.repository.BookerRepository;
+import org.montrealjug.billetterie.repository.EventRepository;
+import org.montrealjug.billetterie.repository.ParticipantRepository;
+import org.montrealjug.billetterie.repository.ReminderCampaignRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+@SpringBootTest
+class ReminderCampaignServiceTest {
+
+    private static final String BASE_URL = "https://billetterie.test";
+
+    @Autowired
+    ReminderCampaignService reminderCampaignService;
+
+    @Autowired
+    ReminderCampaignRepository reminderCampaignRepository;
+
+    @Autowired
+    SeatReservationService seatReservationService;
+
+    @Autowired
+    EventRepository eventRepository;
+
+    @Autowired
+    BookerRepository bookerRepository;
+
+    @Autowired
+    ParticipantRepository participantRepository;
+
+    @MockitoBean
+    EmailService emailService;
+
+    @MockitoSpyBean
+    QrCodeService qrCodeService;
+
+    long eventId;
+    long activityId;
+    // in the order of their id, as processed by the campaigns
+    List<Booker> bookers = new ArrayList<>();
+    List<Long> participantIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        var event = new Event();
+        event.setTitle("Reminder Event");
+        event.setDescription("Reminder Description");
+        event.setDate(LocalDate.now().plusDays(7L));
+        var activity = new Activity();
+        activity.setTitle("Reminder Activity");
+        activity.setDescription("Reminder Description");
+        activity.setEvent(event);
+        activity.setStartTime(LocalDateTime.now().plusDays(7L));
+        activity.setMaxParticipants(10);
+        activity.setMaxWaitingQueue(0);
+        event.getActivities().add(activity);
+        event = eventRepository.save(event);
+        eventId = event.getId();
+        activityId = event.getActivities().first().getId();
+
+        for (int i = 0; i < 3; i++) {
+            var booker = new Booker();
+            booker.setFirstName("Reminder");
+            booker.setLastName("Booker " + i);
+            booker.setEmail("reminder-booker-" + i + "@test.org");
+            booker.setEmailSignature("reminder-booker-" + i);
+            booker = bookerRepository.save(booker);
+            bookers.add(booker);
+            var participant = new Participant();
+            participant.setFirstName("Reminder");
+            participant.setLastName("Child " + i);
+            participant.setYearOfBirth(2015);
+            participant.setBooker(booker);
+            participant = participantRepository.save(participant);
+            participantIds.add(participant.getId());
+            seatReservationService.reserveSeat(activityId, participant);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        // the event cascades to its campaigns, and its activities to the registrations of the participants
+        eventRepository.deleteById(eventId);
+        bookerRepository.deleteAll(bookers);
+    }
+
+    @Test
+    void run_should_queue_the_emails_and_checkpoint_the_campaign() throws Exception {
+        var campaign = campaign(null, 0);
+
+        reminderCampaignService.run(campaign.getId());
+
+        assertThat(reminderCampaignRepository.findById(campaign.getId()))
+            .hasValueSatisfying(completed -> {
+                assertThat(completed.getStatus()).isSameAs(Status.COMPLETED);
+                assertThat(completed.getCompletionTime()).isNotNull();
+                assertThat(completed.getTotalBookers()).isEqualTo(3);
+                assertThat(completed.getProcessedBookers()).isEqualTo(3);
+                assertThat(completed.getFailedBookers()).isZero();
+                assertThat(completed.getLastBookerId()).isEqualTo(bookers.getLast().getId());
+            });
+        assertThat(sentEmailAddresses()).containsExactly(
+            "reminder-booker-0@test.org",
+            "reminder-booker-1@test.org",
+            "reminder-booker-2@test.org"
+        );
+    }
+
+    @Test
+    void resumeRunningCampaigns_should_resume_a_campaign_after_its_checkpoint() {
+        // interrupted by a restart after its first booker
+        var campaign = campaign(bookers.getFirst().getId(), 1);
+
+        reminderCampaignService.resumeRunningCampaigns();
+
+        await()
+            .atMost(Duration.ofSeconds(30))
+            .untilAsserted(() ->
+                assertThat(reminderCampaignRepository.findById(campaign.getId()))
+                    .hasValueSatisfying(resumed -> assertThat(resumed.getStatus()).isSameAs(Status.COMPLETED))
+            );
+        var resumed = reminderCampaignRepository.findById(campaign.getId()).orElseThrow();
+        assertThat(resumed.getTotalBookers()).isEqualTo(3);
+        assertThat(resumed.getProcessedBookers()).isEqualTo(3);
+        assertThat(sentEmailAddresses()).containsExactly("reminder-booker-1@test.org", "reminder-booker-2@test.org");
+    }
+
+    @Test
+    void start_should_not_start_a_campaign_while_another_one_is_running() {
+        var running = campaign(null, 0);
+
+        assertThat(reminderCampaignService.start(eventId, Segment.ALL, BASE_URL)).isEmpty();
+
+        assertThat(reminderCampaignService.findLatest(eventId))
+            .hasValueSatisfying(latest -> assertThat(latest.getId()).isEqualTo(running.getId()));
+    }
+
+    @Test
+    void run_should_count_and_defer_the_emails_failing_to_render() throws Exception {
+        var failingBookerId = bookers.get(1).getId();
+        doThrow(new IOException("rendering failure"))
+            .when(qrCodeService)
+            .generateQrCode(argThat(checkInUrl -> checkInUrl != null && bookerId(checkInUrl) == failingBookerId));
+        var campaign = campaign(null, 0);
+
+        reminderCampaignService.run(campaign.getId());
+
+        var completed = reminderCampaignRepository.findById(campaign.getId()).orElseThrow();
+        assertThat(completed.getStatus()).isSameAs(Status.COMPLETED);
+        assertThat(completed.getProcessedBookers()).isEqualTo(3);
+        assertThat(completed.getFailedBookers()).isEqualTo(1);
+        assertThat(sentEmailAddresses()).containsExactly("reminder-booker-0@test.org", "reminder-booker-2@test.org");
+        // retried by the outbox, which renders it again
+        var key = campaign.getId() + ":" + failingBookerId;
+        verify(emailService).sendLater(eq(EmailType.LAST_REMINDER), eq(key), any(Instant.class));
+        reset(qrCodeService);
+        assertThat(reminderCampaignService.render(key))
+            .hasValueSatisfying(email -> {
+                assertThat(email.type()).isSameAs(EmailType.LAST_REMINDER);
+                assertThat(email.to().getAddress()).isEqualTo("reminder-booker-1@test.org");
+            });
+    }
+
+    @Test
+    void render_should_not_send_anything_to_a_booker_without_bookings_anymore() throws Exception {
+        var campaign = campaign(null, 0);
+        seatReservationService.releaseSeat(activityId, participantIds.get(1));
+
+        assertThat(reminderCampaignService.render(campaign.getId() + ":" + bookers.get(1).getId())).isEmpty();
+        verify(qrCodeService, never()).generateQrCode(any());
+    }
+
+    @Test
+    void isInSegment_should_select_bookers_by_waiting_list_and_check_in() {
+        var activity = new Activity();
+        activity.setId(1L);
+        activity.setMaxParticipants(1);
+        activity.setMaxWaitingQueue(5);
+        var seated = booking(activity, 10L, Instant.parse("2026-03-01T10:00:00Z"));
+        var waiting = booking(activity, 11L, Instant.parse("2026-03-01T10:00:01Z"));
+        seated.setCheckInTime(Instant.parse("2026-03-02T10:00:00Z"));
+
+        assertThat(ReminderCampaignService.isInSegment(List.of(seated), Segment.ALL)).isTrue();
+        assertThat(ReminderCampaignService.isInSegment(List.of(seated), Segment.WAITING_LIST_ONLY)).isFalse();
+        assertThat(ReminderCampaignService.isInSegment(List.of(waiting), Segment.WAITING_LIST_ONLY)).isTrue();
+        assertThat(ReminderCampaignService.isInSegment(List.of(seated), Segment.NOT_CHECKED_IN)).isFalse();
+        assertThat(ReminderCampaignService.isInSegment(List.of(seated, waiting), Segment.NOT_CHECKED_IN)).isTrue();
+    }
+
+    private ReminderCampaign campaign(Long lastBookerId, int processedBookers) {
+        var campaign = new ReminderCampaign();
+        campaign.setEvent(eventRepository.findById(eventId).orElseThrow());
+        campaign.setSegment(Segment.ALL);
+        campaign.setBaseUrl(BASE_URL);
+        campaign.setLastBookerId(lastBookerId);
+        campaign.setProcessedBookers(processedBookers);
+        campaign.setTotalBookers(lastBookerId != null ? 3 : 0);
+        return reminderCampaignRepository.save(campaign);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> sentEmailAddresses() {
+        ArgumentCaptor<Collection<Email>> emails = ArgumentCaptor.forClass(Collection.class);
+        verify(emailService, atLeastOnce()).sendEmails(emails.capture());
+        return emails
+            .getAllValues()
+            .stream()
+            .flatMap(Collection::stream)
+            .map(email -> email.to().getAddress())
+            .toList();
+    }
+
+    // `keyId.eventId.expiry.bookerId.mac`, at the end of the check-in URL
+    private static long bookerId(String checkInUrl) {
+        var parts = checkInUrl.split("\\.");
+        return Long.parseLong(parts[parts.length - 2]);
+    }
+
+    private static ActivityParticipant booking(Activity activity, long participantId, Instant registrationTime) {
+        var booking = new ActivityParticipant();
+        booking.getActivityParticipantKey().setActivityId(activity.getId());
+        booking.getActivityParticipantKey().setParticipantId(participantId);
+        // before `setActivity`, as the sorted participants of the activity use it
+        booking.setRegistrationTime(registrationTime);
+        booking.setActivity(activity);
+        activity.getParticipants().add(booking);
+        return booking;
+    }
+}
@@ -1,7 +1,9 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.montrealjug.billetterie.service;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
@@ -10,7 +12,12 @@ import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -108,6 +115,50 @@ class SignatureServiceTest {
         assertTrue(verifySignature(content, originalSignature));
     }
 
+    @Test
+    void signAllAndTrim_shouldReturnTheSignaturesInOrder() throws Exception {
+        // Given
+        var contents = IntStream.range(0, 20).mapToObj(i -> "booker" + i + "@test.org").toList();
+
+        // When
+        var signatures = signatureService.signAllAndTrim(contents);
+
+        // Then
+        assertEquals(contents.size(), signatures.size());
+        for (int i = 0; i < contents.size(); i++) {
+            assertEquals(signatureService.signAndTrim(contents.get(i)), signatures.get(i));
+        }
+    }
+
+    @Test
+    void sign_shouldBeThreadSafe() throws Exception {
+        // Given
+        var tasks = new ArrayList<Callable<Boolean>>();
+        for (int i = 0; i < 40; i++) {
+            var content = "content " + i;
+            tasks.add(() -> verifySignature(content, signatureService.sign(content)));
+        }
+
+        // When
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            // Then
+            for (var future : executor.invokeAll(tasks)) {
+                assertTrue(future.get());
+            }
+        }
+    }
+
+    @Test
+    void sign_shouldFailWithAnInvalidKey() {
+        // Given
+        when(properties.rsaKey()).thenReturn("hello");
+        var invalidKeySignatureService = new SignatureService(properties);
+
+        // When / Then
+        assertThrows(Exception.class, () -> invalidKeySignatureService.sign("content"));
+        assertThrows(Exception.class, () -> invalidKeySignatureService.signAllAndTrim(List.of("content")));
+    }
+
     private boolean verifySignature(String content, String signatureBase64) throws Exception {
         // Decode the Base64 encoded signature
         byte[] signatureBytes = Base64.getDecoder().decode(signatureBase64);
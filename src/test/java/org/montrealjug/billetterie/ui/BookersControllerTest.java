@@ -0,0 +1,176 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.ui;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.montrealjug.billetterie.config.BilletterieProperties;
+import org.montrealjug.billetterie.email.EmailModel.Email;
+import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailService;
+import org.montrealjug.billetterie.entity.Booker;
+import org.montrealjug.billetterie.entity.Event;
+import org.montrealjug.billetterie.entity.Participant;
+import org.montrealjug.billetterie.entity.ReminderCampaign.Segment;
+import org.montrealjug.billetterie.repository.ActivityParticipantRepository;
+import org.montrealjug.billetterie.repository.BookerRepository;
+import org.montrealjug.billetterie.repository.EventRepository;
+import org.montrealjug.billetterie.service.BookerCache;
+import org.montrealjug.billetterie.service.ReminderCampaignService;
+import org.montrealjug.billetterie.service.SignatureService;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class BookersControllerTest {
+
+    @Mock
+    BookerRepository bookerRepository;
+
+    @Mock
+    SignatureService signatureService;
+
+    @Mock
+    EventRepository eventRepository;
+
+    @Mock
+    ActivityParticipantRepository activityParticipantRepository;
+
+    @Mock
+    ReminderCampaignService reminderCampaignService;
+
+    @Mock
+    BookerCache bookerCache;
+
+    @Mock
+    EmailService emailService;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    BookersController bookersController;
+    Booker booker;
+
+    @BeforeEach
+    void setUp() {
+        bookersController = new BookersController(
+            bookerRepository,
+            signatureService,
+            eventRepository,
+            activityParticipantRepository,
+            reminderCampaignService,
+            bookerCache,
+            emailService,
+            new TransactionTemplate(transactionManager),
+            new BilletterieProperties(
+                null,
+                "https://billetterie.test",
+                null,
+                0.01,
+                new BilletterieProperties.CheckInProperties(null, Map.of())
+            )
+        );
+        booker = new Booker();
+        booker.setId(7L);
+        booker.setEmail("old@test.org");
+        booker.setEmailSignature("old-signature");
+        var participant = new Participant();
+        participant.setBooker(booker);
+        booker.getParticipants().add(participant);
+        lenient().when(bookerRepository.findById(7L)).thenReturn(Optional.of(booker));
+    }
+
+    @Test
+    void updateBooker_should_change_the_email_and_its_signature() throws Exception {
+        when(signatureService.signAndTrim("new@test.org")).thenReturn("new-signature");
+
+        var response = bookersController.updateBooker(7L, new PresentationBooker("First", "Last", "New@Test.org "));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FOUND);
+        assertThat(booker.getEmail()).isEqualTo("new@test.org");
+        assertThat(booker.getEmailSignature()).isEqualTo("new-signature");
+        assertThat(booker.getValidationTime()).isNotNull();
+        assertThat(booker.getFirstName()).isEqualTo("First");
+        // the participants reference the booker by its id, they are kept as is
+        assertThat(booker.getParticipants()).singleElement().extracting(Participant::getBooker).isSameAs(booker);
+        verify(bookerRepository).save(booker);
+        verify(bookerCache).invalidate("old-signature");
+        verify(bookerCache).invalidate("new-signature");
+        // the new booking link is sent to the new email
+        var email = ArgumentCaptor.forClass(Email.class);
+        verify(emailService).sendEmail(email.capture());
+        assertThat(email.getValue().type()).isSameAs(EmailType.RETURNING_BOOKER);
+        assertThat(email.getValue().to().getAddress()).isEqualTo("new@test.org");
+    }
+
+    @Test
+    void updateBooker_should_not_send_any_email_if_the_email_is_unchanged() throws Exception {
+        bookersController.updateBooker(7L, new PresentationBooker("First", "Last", "old@test.org"));
+
+        assertThat(booker.getEmailSignature()).isEqualTo("old-signature");
+        verify(bookerRepository).save(booker);
+        verifyNoInteractions(emailService);
+    }
+
+    @Test
+    void updateBooker_should_reject_an_email_taken_after_the_check() throws Exception {
+        when(signatureService.signAndTrim("taken@test.org")).thenReturn("taken-signature");
+        when(bookerRepository.save(booker)).thenThrow(new DataIntegrityViolationException("booker_email_key"));
+
+        assertThatThrownBy(() ->
+                bookersController.updateBooker(7L, new PresentationBooker("First", "Last", "taken@test.org"))
+            )
+            .isInstanceOf(RuntimeException.class)
+            .hasMessage("User with this email already exists");
+
+        verifyNoInteractions(emailService);
+    }
+
+    @Test
+    void updateBooker_should_keep_the_email_of_another_booker() throws Exception {
+        when(bookerRepository.existsByEmail("taken@test.org")).thenReturn(true);
+
+        assertThatThrownBy(() ->
+                bookersController.updateBooker(7L, new PresentationBooker("First", "Last", "taken@test.org"))
+            )
+            .isInstanceOf(RuntimeException.class);
+
+        assertThat(booker.getEmail()).isEqualTo("old@test.org");
+        assertThat(booker.getEmailSignature()).isEqualTo("old-signature");
+        verify(bookerRepository, never()).save(any());
+        verifyNoInteractions(emailService);
+    }
+
+    @Test
+    void sendReminderEmail_should_return_a_409_if_a_campaign_is_already_running() {
+        var event = new Event();
+        event.setId(42L);
+        when(eventRepository.findByActiveIsTrue()).thenReturn(Optional.of(event));
+        when(reminderCampaignService.start(eq(42L), eq(Segment.ALL), any())).thenReturn(Optional.empty());
+
+        var response = bookersController.sendReminderEmail(Segment.ALL, new MockHttpServletRequest());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        assertThat(response.getBody()).isEqualTo(
+            "{\"message\":\"A reminder campaign is already running for this event\"}"
+        );
+    }
+}
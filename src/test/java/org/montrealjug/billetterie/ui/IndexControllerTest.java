@@ -0,0 +1,182 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.ui;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import gg.jte.TemplateEngine;
+import gg.jte.TemplateOutput;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.montrealjug.billetterie.service.ActiveEventService;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+@ExtendWith(MockitoExtension.class)
+class IndexControllerTest {
+
+    @Mock
+    ActiveEventService activeEventService;
+
+    @Mock
+    TemplateEngine templateEngine;
+
+    IndexController indexController;
+    AtomicInteger renders;
+
+    @BeforeEach
+    void setUp() {
+        indexController = new IndexController(activeEventService, templateEngine);
+        renders = new AtomicInteger();
+    }
+
+    @Test
+    void index_should_be_rendered_once_per_version() {
+        renderIndexAs(() -> "<html>" + renders.incrementAndGet() + "</html>");
+        when(activeEventService.version()).thenReturn("v-1");
+
+        var first = indexController.index(request());
+        var second = indexController.index(request());
+
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(second.getBody()).isSameAs(first.getBody());
+        assertThat(new String(first.getBody())).isEqualTo("<html>1</html>");
+
+        when(activeEventService.version()).thenReturn("v-2");
+
+        assertThat(new String(indexController.index(request()).getBody())).isEqualTo("<html>2</html>");
+        verify(templateEngine, times(2)).render(eq("index.jte"), anyMap(), any(TemplateOutput.class));
+    }
+
+    @Test
+    void concurrent_requests_should_share_the_render_in_progress() throws Exception {
+        var rendering = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        renderIndexAs(() -> {
+            rendering.countDown();
+            release.await();
+            return "<html>" + renders.incrementAndGet() + "</html>";
+        });
+        when(activeEventService.version()).thenReturn("v-1");
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var responses = new ArrayList<Future<byte[]>>();
+            responses.add(executor.submit(() -> indexController.index(request()).getBody()));
+            assertThat(rendering.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 10; i++) {
+                responses.add(executor.submit(() -> indexController.index(request()).getBody()));
+            }
+            release.countDown();
+
+            for (var response : responses) {
+                assertThat(new String(response.get(5, TimeUnit.SECONDS))).isEqualTo("<html>1</html>");
+            }
+        }
+        assertThat(renders).hasValue(1);
+    }
+
+    @Test
+    void index_should_be_served_gzipped_to_the_browsers_accepting_it() throws Exception {
+        renderIndexAs(() -> "<html>" + renders.incrementAndGet() + "</html>");
+        when(activeEventService.version()).thenReturn("v-1");
+        var request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("Accept-Encoding", "gzip, deflate, br");
+        var response = new MockHttpServletResponse();
+
+        var gzipped = indexController.index(new ServletWebRequest(request, response));
+        var plain = indexController.index(request());
+
+        assertThat(gzipped.getHeaders().getFirst("Content-Encoding")).isEqualTo("gzip");
+        assertThat(response.getHeader("Vary")).isEqualTo("Accept-Encoding");
+        try (var html = new GZIPInputStream(new ByteArrayInputStream(gzipped.getBody()))) {
+            assertThat(new String(html.readAllBytes())).isEqualTo("<html>1</html>");
+        }
+        assertThat(plain.getHeaders().containsKey("Content-Encoding")).isFalse();
+        assertThat(new String(plain.getBody())).isEqualTo("<html>1</html>");
+        assertThat(renders).hasValue(1);
+    }
+
+    @Test
+    void acceptsGzip_should_honor_the_quality_values() {
+        assertThat(IndexController.acceptsGzip("gzip")).isTrue();
+        assertThat(IndexController.acceptsGzip("br;q=1.0, GZIP;q=0.5")).isTrue();
+        assertThat(IndexController.acceptsGzip("*")).isTrue();
+        assertThat(IndexController.acceptsGzip(null)).isFalse();
+        assertThat(IndexController.acceptsGzip("identity")).isFalse();
+        assertThat(IndexController.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(IndexController.acceptsGzip("*, gzip; q=0.000")).isFalse();
+        assertThat(IndexController.acceptsGzip("*;q=0, gzip")).isTrue();
+    }
+
+    @Test
+    void failed_render_should_be_retried_by_the_next_request() {
+        when(activeEventService.version()).thenReturn("v-1");
+        renderIndexAs(() -> {
+            if (renders.incrementAndGet() == 1) {
+                throw new IllegalStateException("render failed");
+            }
+            return "<html>ok</html>";
+        });
+
+        assertThatThrownBy(() -> indexController.index(request()))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("render failed");
+
+        // the next request renders it again
+
+        assertThat(new String(indexController.index(request()).getBody())).isEqualTo("<html>ok</html>");
+    }
+
+    @Test
+    void index_should_not_be_rendered_for_a_matching_etag() {
+        when(activeEventService.version()).thenReturn("v-1");
+        var request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("If-None-Match", "W/\"v-1\"");
+        var response = new MockHttpServletResponse();
+
+        assertThat(indexController.index(new ServletWebRequest(request, response))).isNull();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(response.getHeader("Cache-Control")).isEqualTo("no-cache");
+        verify(activeEventService, never()).snapshot();
+    }
+
+    interface Render {
+        String html() throws Exception;
+    }
+
+    private void renderIndexAs(Render render) {
+        when(activeEventService.snapshot()).thenReturn(Optional.empty());
+        doAnswer(invocation -> {
+                invocation.getArgument(2, TemplateOutput.class).writeContent(render.html());
+                return null;
+            })
+            .when(templateEngine)
+            .render(eq("index.jte"), anyMap(), any(TemplateOutput.class));
+    }
+
+    private static ServletWebRequest request() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/"), new MockHttpServletResponse());
+    }
+}
@@ -6,6 +6,9 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -20,7 +23,9 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -29,13 +34,19 @@ import org.mockito.Captor;
 import org.mockito.Mockito;
 import org.montrealjug.billetterie.email.EmailModel.Email;
 import org.montrealjug.billetterie.email.EmailModel.EmailType;
+import org.montrealjug.billetterie.email.EmailModel.LotteryResultEmail;
 import org.montrealjug.billetterie.email.EmailService;
 import org.montrealjug.billetterie.entity.Activity;
+import org.montrealjug.billetterie.entity.ActivityParticipant;
 import org.montrealjug.billetterie.entity.Booker;
 import org.montrealjug.billetterie.entity.Event;
 import org.montrealjug.billetterie.entity.Participant;
+import org.montrealjug.billetterie.repository.ActivityParticipantRepository;
 import org.montrealjug.billetterie.repository.BookerRepository;
 import org.montrealjug.billetterie.repository.EventRepository;
+import org.montrealjug.billetterie.service.ActiveEventService;
+import org.montrealjug.billetterie.service.KnownBookers;
+import org.montrealjug.billetterie.service.LotteryService;
 import org.montrealjug.billetterie.service.SignatureService;
 import org.montrealjug.billetterie.ui.RegistrationController.BookerCheck;
 import org.montrealjug.billetterie.ui.RegistrationController.ParticipantSubmission;
@@ -43,8 +54,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @SpringBootTest(webEnvironment = RANDOM_PORT)
 class RegistrationControllerTest {
@@ -64,13 +77,14 @@ class RegistrationControllerTest {
         // we can't use spring's @Transactional because the transaction
         // won't be committed and the data won't be available in the web layer
         // that shouldn't be done, but it will ease dev life
-        bookerRepository.deleteAllById(CREATED_BOOKER_IDS);
+        // events first, as their activities cascade to the registrations of the bookers' participants
         eventRepository.deleteAllById(CREATED_EVENT_IDS);
+        bookerRepository.deleteAllById(CREATED_BOOKER_IDS);
         CREATED_BOOKER_IDS.clear();
         CREATED_EVENT_IDS.clear();
     }
 
-    static final Set<String> CREATED_BOOKER_IDS = new HashSet<>();
+    static final Set<Long> CREATED_BOOKER_IDS = new HashSet<>();
     static final Set<Long> CREATED_EVENT_IDS = new HashSet<>();
 
     @Autowired
@@ -79,6 +93,24 @@ class RegistrationControllerTest {
     @Autowired
     EventRepository eventRepository;
 
+    @Autowired
+    ActivityParticipantRepository activityParticipantRepository;
+
+    @Autowired
+    LotteryService lotteryService;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    KnownBookers knownBookers;
+
+    @Autowired
+    ActiveEventService activeEventService;
+
+    @Autowired
+    RegistrationController registrationController;
+
     @MockitoBean
     SignatureService signatureService;
 
@@ -223,7 +255,6 @@ class RegistrationControllerTest {
         var email = "registration-booker@test.org";
         when(signatureService.signAndTrim(email)).thenReturn(SIGNATURE);
         var booker = new PresentationBooker("New", "Booker", email);
-        CREATED_BOOKER_IDS.add(email);
 
         given()
             .contentType(ContentType.JSON)
@@ -233,7 +264,8 @@ class RegistrationControllerTest {
             .then()
             .statusCode(HttpStatus.CREATED.value());
 
-        var savedBooker = bookerRepository.findById(email);
+        var savedBooker = bookerRepository.findByEmail(email);
+        savedBooker.map(Booker::getId).ifPresent(CREATED_BOOKER_IDS::add);
         assertThat(savedBooker)
             .hasValueSatisfying(b -> {
                 assertThat(b.getFirstName()).isEqualTo(booker.firstName());
@@ -287,7 +319,7 @@ class RegistrationControllerTest {
         assertThat((String) htmlPath.get("html.head.title")).isEqualTo("Event Activities");
         // check that booker validationTime has been updated
         var validatedBooker = bookerRepository
-            .findById(email)
+            .findByEmail(email)
             .orElseThrow(() -> new IllegalStateException("Booker not found"));
         assertThat(validatedBooker.getValidationTime()).isBetween(beforeCall, Instant.now());
     }
@@ -315,13 +347,72 @@ class RegistrationControllerTest {
         assertThat((String) htmlPath.get("html.head.title")).isEqualTo("Event Activities");
         // check that booker validationTime has been updated
         var validatedBooker = bookerRepository
-            .findById(email)
+            .findByEmail(email)
             .orElseThrow(() -> new IllegalStateException("Booker not found"));
         // compare with millis, because we lose precision in the DB
         assertThat(validatedBooker.getValidationTime().truncatedTo(ChronoUnit.MILLIS))
             .isEqualTo(booker.getValidationTime().truncatedTo(ChronoUnit.MILLIS));
     }
 
+    @Test
+    void bookingQrCode_should_be_revalidated() {
+        createBooker("qr-code@test.org", true);
+        getOrCreateActiveEvent();
+
+        var etag = given()
+            .pathParam("signature", SIGNATURE)
+            .when()
+            .get("/bookings/{signature}/qr-code.png")
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .contentType("image/png")
+            .header("Cache-Control", "no-cache")
+            .extract()
+            .header("ETag");
+
+        assertThat(etag).startsWith("W/\"");
+        // the check-in URL is built from `app.base-url`, not from the request
+        given()
+            .pathParam("signature", SIGNATURE)
+            .header("Host", "other.example")
+            .when()
+            .get("/bookings/{signature}/qr-code.png")
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .header("ETag", etag);
+        given()
+            .pathParam("signature", SIGNATURE)
+            .header("If-None-Match", etag)
+            .when()
+            .get("/bookings/{signature}/qr-code.png")
+            .then()
+            .statusCode(HttpStatus.NOT_MODIFIED.value());
+        given()
+            .pathParam("signature", "unknown")
+            .when()
+            .get("/bookings/{signature}/qr-code.png")
+            .then()
+            .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    void knownBookers_should_reject_unknown_bookers_without_querying_the_DB() {
+        var email = "known-booker@test.org";
+        createBooker(email, true);
+
+        // added after the commit of the booker
+        assertThat(knownBookers.mightExistByEmail(email)).isTrue();
+        assertThat(knownBookers.mightExistByEmailSignature(SIGNATURE)).isTrue();
+        assertThat(knownBookers.mightExistByEmail("unknown-booker@test.org")).isFalse();
+        given()
+            .contentType(ContentType.JSON)
+            .body(new BookerCheck("unknown-booker@test.org"))
+            .when()
+            .post("/check-returning-booker")
+            .then()
+            .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
     @Test
     void startBooking_should_display_index_if_no_Booker_found_while_displaying_an_error_message() {
         // create an already validated Booker
@@ -384,6 +475,308 @@ class RegistrationControllerTest {
         }
     }
 
+    @Test
+    void activeEventSnapshot_should_be_shared_until_a_registration() {
+        createBooker("snapshot-booker@test.org", true);
+        var event = getOrCreateActiveEvent();
+        var activityId = event.getActivities().first().getId();
+
+        var snapshot = activeEventService.snapshot().orElseThrow();
+        assertThat(activeEventService.snapshot()).containsSame(snapshot);
+
+        given()
+            .contentType(ContentType.JSON)
+            .body(new ParticipantSubmission("Snapshot", "Child", 2015, activityId, SIGNATURE))
+            .when()
+            .post("/events/{eventId}/registerParticipant", event.getId())
+            .then()
+            .statusCode(HttpStatus.OK.value());
+
+        var rebuilt = activeEventService.snapshot().orElseThrow();
+        assertThat(rebuilt).isNotSameAs(snapshot);
+        assertThat(rebuilt.presentationEvent().activities())
+            .filteredOn(activity -> activity.id() == activityId)
+            .singleElement()
+            .satisfies(activity ->
+                assertThat(activity.participants())
+                    .extracting(registration -> registration.getParticipant().getFirstName())
+                    .contains("Snapshot")
+            );
+    }
+
+    @Test
+    void publicPages_should_not_be_modified_until_a_registration() {
+        createBooker("etag-booker@test.org", true);
+        var event = getOrCreateActiveEvent();
+        var activityId = event.getActivities().first().getId();
+
+        var indexETag = given()
+            .when()
+            .get("/")
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .header("Cache-Control", "no-cache")
+            .extract()
+            .header("ETag");
+        var bookingETag = given()
+            .pathParam("signature", SIGNATURE)
+            .when()
+            .get("/bookings/{signature}")
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .extract()
+            .header("ETag");
+
+        assertThat(indexETag).startsWith("W/\"");
+        assertThat(bookingETag).startsWith(indexETag.substring(0, indexETag.length() - 1));
+        given().header("If-None-Match", indexETag).when().get("/").then().statusCode(HttpStatus.NOT_MODIFIED.value());
+        given()
+            .pathParam("signature", SIGNATURE)
+            .header("If-None-Match", bookingETag)
+            .when()
+            .get("/bookings/{signature}")
+            .then()
+            .statusCode(HttpStatus.NOT_MODIFIED.value());
+
+        given()
+            .contentType(ContentType.JSON)
+            .body(new ParticipantSubmission("ETag", "Child", 2015, activityId, SIGNATURE))
+            .when()
+            .post("/events/{eventId}/registerParticipant", event.getId())
+            .then()
+            .statusCode(HttpStatus.OK.value());
+
+        given().header("If-None-Match", indexETag).when().get("/").then().statusCode(HttpStatus.OK.value());
+        var bookingPage = given()
+            .pathParam("signature", SIGNATURE)
+            .header("If-None-Match", bookingETag)
+            .when()
+            .get("/bookings/{signature}")
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .extract()
+            .asString();
+        assertThat(bookingPage).contains("ETag");
+    }
+
+    @Test
+    void registerParticipants_should_only_record_lottery_entries_until_the_draw() {
+        var bookerId = createBooker("lottery-booker@test.org", true).getId();
+        var savedEvent = createLotteryEvent();
+        var eventId = savedEvent.getId();
+        var activityId = savedEvent.getActivities().first().getId();
+        var participantSubs = List.of(
+            new ParticipantSubmission("First", "Child", 2015, activityId, SIGNATURE),
+            new ParticipantSubmission("Second", "Child", 2016, activityId, SIGNATURE)
+        );
+
+        given()
+            .contentType(ContentType.JSON)
+            .body(participantSubs)
+            .when()
+            .post("/events/{eventId}/registerParticipants", eventId)
+            .then()
+            .statusCode(HttpStatus.OK.value());
+
+        // no seat taken before the draw
+        assertThat(activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(eventId, bookerId))
+            .isEmpty();
+        assertThat(lotteryService.findEntries(eventId, bookerId)).hasSize(2);
+        verifyNoInteractions(emailService);
+
+        // the entry window is over
+        savedEvent.setLotteryDrawTime(LocalDateTime.now().minusMinutes(1L));
+        eventRepository.save(savedEvent);
+        lotteryService.drawDueLotteries();
+
+        // only one seat for two entries
+        assertThat(activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(eventId, bookerId))
+            .hasSize(1);
+        // the entry without a seat is kept for the result email
+        assertThat(lotteryService.findEntries(eventId, bookerId)).hasSize(1);
+        assertThat(eventRepository.findById(eventId))
+            .hasValueSatisfying(e -> assertThat(e.getLotteryDrawnTime()).isNotNull());
+        var key = eventId + ":" + bookerId;
+        verify(emailService).sendLater(eq(EmailType.LOTTERY_RESULT), eq(key), any(Instant.class));
+        assertThat(lotteryService.render(key))
+            .hasValueSatisfying(email -> {
+                var result = (LotteryResultEmail) email;
+                assertThat(result.participants()).hasSize(1);
+                assertThat(result.lostEntries()).hasSize(1);
+                assertThat(result.lostEntries().getFirst().getParticipant().getId())
+                    .isNotEqualTo(result.participants().getFirst().participant().getId());
+                assertThat(result.qrCode()).isPresent();
+            });
+    }
+
+    @Test
+    void registerParticipants_should_reject_lottery_entries_for_the_activity_of_another_event() {
+        var bookerId = createBooker("lottery-booker@test.org", true).getId();
+        var eventId = createLotteryEvent().getId();
+        var otherActivityId = createLotteryEvent().getActivities().first().getId();
+        var participantSubs = List.of(new ParticipantSubmission("First", "Child", 2015, otherActivityId, SIGNATURE));
+
+        given()
+            .contentType(ContentType.JSON)
+            .body(participantSubs)
+            .when()
+            .post("/events/{eventId}/registerParticipants", eventId)
+            .then()
+            .statusCode(HttpStatus.BAD_REQUEST.value());
+
+        assertThat(lotteryService.findEntries(eventId, bookerId)).isEmpty();
+        // the participants are only created with their entries
+        var participants = transactionTemplate.execute(status ->
+            bookerRepository.findById(bookerId).orElseThrow().getParticipants().size()
+        );
+        assertThat(participants).isZero();
+    }
+
+    @Test
+    void deleteParticipant_should_only_queue_an_email_for_an_upgraded_waiting_participant() {
+        var bookerId = createBooker("delete-booker@test.org", true).getId();
+        var event = new Event();
+        event.setTitle("Delete Event");
+        event.setDescription("Delete Description");
+        event.setDate(LocalDate.now().plusDays(7L));
+        var activity = new Activity();
+        activity.setTitle("Delete Activity");
+        activity.setDescription("Delete Description");
+        activity.setEvent(event);
+        activity.setStartTime(LocalDateTime.now().plusDays(7L));
+        activity.setMaxParticipants(1);
+        activity.setMaxWaitingQueue(2);
+        event.getActivities().add(activity);
+        var savedEvent = eventRepository.save(event);
+        var eventId = savedEvent.getId();
+        CREATED_EVENT_IDS.add(eventId);
+        var activityId = savedEvent.getActivities().first().getId();
+        for (var firstName : List.of("Seated", "Waiting")) {
+            given()
+                .contentType(ContentType.JSON)
+                .body(new ParticipantSubmission(firstName, "Child", 2015, activityId, SIGNATURE))
+                .when()
+                .post("/events/{eventId}/registerParticipant", eventId)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+        }
+        var registrations = activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(
+            eventId,
+            bookerId
+        );
+        var seatedId = participantId(registrations, "Seated");
+        var waitingId = participantId(registrations, "Waiting");
+        Mockito.clearInvocations(emailService);
+
+        // nobody gets a seat when a waiting participant leaves
+        assertThat(registrationController.deleteParticipant(activityId, waitingId))
+            .returns(HttpStatus.NO_CONTENT, ResponseEntity::getStatusCode);
+        verifyNoInteractions(emailService);
+
+        // nothing left to remove
+        assertThat(registrationController.deleteParticipant(activityId, waitingId))
+            .returns(HttpStatus.NOT_FOUND, ResponseEntity::getStatusCode);
+        verifyNoInteractions(emailService);
+
+        given()
+            .contentType(ContentType.JSON)
+            .body(new ParticipantSubmission("Waiting", "Child", 2015, activityId, SIGNATURE))
+            .when()
+            .post("/events/{eventId}/registerParticipant", eventId)
+            .then()
+            .statusCode(HttpStatus.OK.value());
+        Mockito.clearInvocations(emailService);
+
+        // the waiting participant takes the seat of the removed one
+        assertThat(registrationController.deleteParticipant(activityId, seatedId))
+            .returns(HttpStatus.NO_CONTENT, ResponseEntity::getStatusCode);
+        // rendered by the outbox once the removal is committed
+        verify(emailService).sendLater(eq(EmailType.PARTICIPANT_UPGRADED), eq(activityId + ":" + waitingId), any());
+        verify(emailService, never()).sendEmail(any());
+    }
+
+    @Test
+    void deleteParticipant_should_upgrade_a_different_waiting_participant_for_each_concurrent_removal() {
+        var bookerId = createBooker("concurrent-delete-booker@test.org", true).getId();
+        var event = new Event();
+        event.setTitle("Concurrent Delete Event");
+        event.setDescription("Concurrent Delete Description");
+        event.setDate(LocalDate.now().plusDays(7L));
+        var activity = new Activity();
+        activity.setTitle("Concurrent Delete Activity");
+        activity.setDescription("Concurrent Delete Description");
+        activity.setEvent(event);
+        activity.setStartTime(LocalDateTime.now().plusDays(7L));
+        activity.setMaxParticipants(2);
+        activity.setMaxWaitingQueue(2);
+        event.getActivities().add(activity);
+        var savedEvent = eventRepository.save(event);
+        var eventId = savedEvent.getId();
+        CREATED_EVENT_IDS.add(eventId);
+        var activityId = savedEvent.getActivities().first().getId();
+        var firstNames = List.of("FirstSeated", "SecondSeated", "FirstWaiting", "SecondWaiting");
+        for (var firstName : firstNames) {
+            given()
+                .contentType(ContentType.JSON)
+                .body(new ParticipantSubmission(firstName, "Child", 2015, activityId, SIGNATURE))
+                .when()
+                .post("/events/{eventId}/registerParticipant", eventId)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+        }
+        var registrations = activityParticipantRepository.findAllActivityParticipantByEventIdAndBookerId(
+            eventId,
+            bookerId
+        );
+        Mockito.clearInvocations(emailService);
+
+        // each removal sees the roster left by the other one
+        var removals = List.of("FirstSeated", "SecondSeated")
+            .stream()
+            .map(firstName -> participantId(registrations, firstName))
+            .map(seatedId ->
+                CompletableFuture.supplyAsync(() -> registrationController.deleteParticipant(activityId, seatedId))
+            )
+            .toList();
+        assertThat(removals)
+            .allSatisfy(removal -> assertThat(removal.join().getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT));
+
+        for (var firstName : List.of("FirstWaiting", "SecondWaiting")) {
+            var waitingId = participantId(registrations, firstName);
+            verify(emailService).sendLater(eq(EmailType.PARTICIPANT_UPGRADED), eq(activityId + ":" + waitingId), any());
+        }
+    }
+
+    private static long participantId(List<ActivityParticipant> registrations, String firstName) {
+        return registrations
+            .stream()
+            .map(ActivityParticipant::getParticipant)
+            .filter(participant -> participant.getFirstName().equals(firstName))
+            .findFirst()
+            .orElseThrow()
+            .getId();
+    }
+
+    private Event createLotteryEvent() {
+        var event = new Event();
+        event.setTitle("Lottery Event");
+        event.setDescription("Lottery Description");
+        event.setDate(LocalDate.now().plusDays(7L));
+        event.setRegistrationMode(Event.RegistrationMode.LOTTERY);
+        event.setLotteryDrawTime(LocalDateTime.now().plusDays(1L));
+        var activity = new Activity();
+        activity.setTitle("Lottery Activity");
+        activity.setDescription("Lottery Description");
+        activity.setEvent(event);
+        activity.setStartTime(LocalDateTime.now().plusDays(7L));
+        activity.setMaxParticipants(1);
+        activity.setMaxWaitingQueue(0);
+        event.getActivities().add(activity);
+        var savedEvent = eventRepository.save(event);
+        CREATED_EVENT_IDS.add(savedEvent.getId());
+        return savedEvent;
+    }
+
     private Event getOrCreateActiveEvent() {
         var activeEvent = eventRepository
             .findByActiveIsTrue()
@@ -424,7 +817,8 @@ class RegistrationControllerTest {
         if (verified) {
             booker.setValidationTime(Instant.now());
         }
-        CREATED_BOOKER_IDS.add(email);
-        return bookerRepository.save(booker);
+        var savedBooker = bookerRepository.save(booker);
+        CREATED_BOOKER_IDS.add(savedBooker.getId());
+        return savedBooker;
     }
 }
@@ -74,4 +74,18 @@ public class UtilsTest {
         assertThat(presentationActivity.waitingParticipants().size()).isEqualTo(2);
         assertThat(presentationActivity.registrationStatus()).isEqualTo(Activity.RegistrationStatus.WAITING_LIST);
     }
+
+    @Test
+    void toPresentationActivities_should_use_the_stored_description_html() {
+        Activity activity = new Activity();
+        activity.setId(1L);
+        activity.setDescription("Test Description");
+        activity.setDescriptionHtml("<p>Stored Description</p>\n");
+        activity.setStartTime(LocalDateTime.now());
+
+        var result = Utils.toPresentationActivities(Set.of(activity));
+
+        assertThat(result.getFirst().description()).isEqualTo("<p>Stored Description</p>\n");
+        assertThat(Utils.toPresentationActivity(activity, false).description()).isEqualTo("Test Description");
+    }
 }
@@ -0,0 +1,133 @@
+// SPDX-License-Identifier: Apache-2.0
+package org.montrealjug.billetterie.waitingroom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WaitingRoomTest {
+
+    static final class MutableClock extends Clock {
+
+        private Instant instant = Instant.parse("2026-03-01T10:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    MutableClock clock;
+    WaitingRoom waitingRoom;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock();
+        waitingRoom = new WaitingRoom(2, Duration.ofMinutes(10), Duration.ofSeconds(30), clock);
+    }
+
+    @Test
+    void poll_should_admit_newcomers_until_full_and_then_queue_them_in_order() {
+        var first = arrive();
+        var second = arrive();
+        var third = arrive();
+        var fourth = arrive();
+
+        assertThat(first.admitted()).isTrue();
+        assertThat(second.admitted()).isTrue();
+        assertThat(third.admitted()).isFalse();
+        assertThat(third.position()).isEqualTo(1);
+        assertThat(fourth.admitted()).isFalse();
+        assertThat(fourth.position()).isEqualTo(2);
+        assertThat(waitingRoom.admittedCount()).isEqualTo(2);
+        assertThat(waitingRoom.waitingCount()).isEqualTo(2);
+
+        // an admitted ticket stays admitted
+        assertThat(waitingRoom.enter(first.ticket()).admitted()).isTrue();
+    }
+
+    @Test
+    void enter_should_not_admit_a_newcomer_until_it_comes_back_from_the_waiting_room() {
+        // a link scanner, or a script without cookies
+        var scanned = waitingRoom.enter(null);
+        var newcomer = waitingRoom.enter(null);
+
+        assertThat(scanned.admitted()).isFalse();
+        assertThat(newcomer.admitted()).isFalse();
+        assertThat(waitingRoom.admittedCount()).isZero();
+
+        // admitted with the ticket of its cookie, even behind a ticket which never came back
+        assertThat(waitingRoom.poll(newcomer.ticket()).admitted()).isTrue();
+        assertThat(waitingRoom.poll(null).admitted()).isFalse();
+        assertThat(waitingRoom.admittedCount()).isEqualTo(1);
+
+        // the tickets which never came back are dropped
+        clock.advance(Duration.ofSeconds(31));
+        waitingRoom.enter(newcomer.ticket());
+        assertThat(waitingRoom.waitingCount()).isZero();
+        assertThat(waitingRoom.admittedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void enter_should_not_let_a_newcomer_skip_the_line() {
+        var first = arrive();
+        var second = arrive();
+        var third = arrive();
+
+        // `first` and `third` keep polling, while the admission of `second` expires
+        for (int i = 0; i < 31; i++) {
+            clock.advance(Duration.ofSeconds(20));
+            waitingRoom.enter(first.ticket());
+            waitingRoom.poll(third.ticket());
+        }
+
+        // the freed slot went to the head of the line, not to a forged or expired ticket
+        assertThat(waitingRoom.enter(third.ticket()).admitted()).isTrue();
+        assertThat(waitingRoom.poll("forged").admitted()).isFalse();
+        assertThat(waitingRoom.poll(second.ticket()).admitted()).isFalse();
+    }
+
+    @Test
+    void enter_should_drop_waiting_tickets_which_stopped_polling() {
+        var first = arrive();
+        arrive();
+        var third = arrive();
+        var fourth = arrive();
+
+        clock.advance(Duration.ofSeconds(20));
+        waitingRoom.poll(fourth.ticket());
+        clock.advance(Duration.ofSeconds(20));
+        waitingRoom.enter(first.ticket());
+
+        // `third` did not poll for 40s and lost its place
+        assertThat(waitingRoom.waitingCount()).isEqualTo(1);
+        var thirdAgain = waitingRoom.poll(third.ticket());
+        assertThat(thirdAgain.ticket()).isNotEqualTo(third.ticket());
+        assertThat(thirdAgain.position()).isEqualTo(2);
+    }
+
+    // a newcomer redirected to the waiting room, polling its status with its new ticket
+    private WaitingRoom.Admission arrive() {
+        return waitingRoom.poll(waitingRoom.enter(null).ticket());
+    }
+}